@@ -0,0 +1,252 @@
+package battleship;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary protocol for bot players, offered alongside the text protocol on the non-blocking transport.
+ * A connection switches to it by sending HELLO_LINE as its first line; the server answers with the same bytes and from then on both sides exchange frames.
+ * Anything the server sent before its answer is text and should be skipped by the player.
+ *
+ * Each frame is a two byte big-endian length followed by that many bytes: a one byte message type and its fields.
+ * Rows, columns, headings and ship types are single unsigned bytes (HEADING and SHIPTYPES ordinals); text is UTF-8 running to the end of the frame.
+ *
+ * Player to server:
+ *   NAME text, cut to Client.MAX_NAME_LENGTH characters; PLACE row, column, heading, ship name; FIRE row, column; CHAT text; DRAW; AUTO_PLACE, placing the rest of the fleet at random.
+ * Server to player:
+ *   NAME_REQUEST; SHIP_REQUEST ship type; PLACEMENT_REJECTED ship type; OPPONENT_NOT_READY; COMMAND_REQUEST;
+ *   BOARDS rows, columns, then each cell of the player's board and of the target board as its drawn character, row by row;
+ *   SHOT_RESULT row, column, ship type hit or NO_SHIP; INCOMING_SHOT row, column, ship type hit or NO_SHIP;
+ *   SHIP_SUNK whose (OWN_SHIP or OPPONENT_SHIP), ship type; CHAT text; GAME_OVER won (1 or 0), winner's name; ERROR text;
+ *   SESSION token, which resumes the player's game on a new connection when sent as the text of a NAME frame after PlayerLobby.RESUME_COMMAND and a space;
+ *   CHANGED_CELLS, sent on resuming, for the player's board and then the target board: a two byte count and the row, column and drawn character of each cell changed since the player was last told.
+ *
+ * Players fire in turn, starting with the first to join: COMMAND_REQUEST is only sent on the player's turn, and a FIRE sent out of turn is answered with ERROR.
+ *
+ * An instance writes the server's frames for one player.
+ */
+public class BinaryProtocol {
+
+	/**
+	 * Line a player sends, in place of their name, to switch their connection to this protocol. Starts with a NUL so it cannot be typed as a name.
+	 */
+	protected static final String HELLO_LINE = "\u0000BIN1";
+
+	/**
+	 * Bytes the server sends to confirm the switch: HELLO_LINE and a line feed.
+	 */
+	private static final byte[] HELLO_REPLY = (HELLO_LINE + "\n").getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Longest frame accepted or sent, excluding its length prefix.
+	 */
+	protected static final int MAX_FRAME_LENGTH = 0xFFFF;
+
+	//Message types sent by players.
+	protected static final byte NAME = 0x01;
+	protected static final byte PLACE = 0x02;
+	protected static final byte FIRE = 0x03;
+	protected static final byte CHAT = 0x04;
+	protected static final byte DRAW = 0x05;
+	protected static final byte AUTO_PLACE = 0x06;
+
+	//Message types sent by the server. CHAT is shared with players.
+	protected static final byte NAME_REQUEST = 0x41;
+	protected static final byte SHIP_REQUEST = 0x42;
+	protected static final byte PLACEMENT_REJECTED = 0x43;
+	protected static final byte OPPONENT_NOT_READY = 0x44;
+	protected static final byte COMMAND_REQUEST = 0x45;
+	protected static final byte BOARDS = 0x46;
+	protected static final byte SHOT_RESULT = 0x47;
+	protected static final byte INCOMING_SHOT = 0x48;
+	protected static final byte SHIP_SUNK = 0x49;
+	protected static final byte GAME_OVER = 0x4A;
+	protected static final byte ERROR = 0x4B;
+	protected static final byte SESSION = 0x4C;
+	protected static final byte CHANGED_CELLS = 0x4D;
+
+	/**
+	 * Ship type field value meaning no ship was hit.
+	 */
+	protected static final byte NO_SHIP = (byte) 0xFF;
+
+	//Values of the SHIP_SUNK whose field.
+	protected static final byte OWN_SHIP = 0;
+	protected static final byte OPPONENT_SHIP = 1;
+
+	/**
+	 * Stream to the player.
+	 */
+	private OutputStream playerOutput;
+
+	/**
+	 * Frame being built, reused for every frame sent to this player. Guarded by this object's lock, as the opponent's thread also sends to the player.
+	 */
+	private ByteBuffer frame;
+
+	/**
+	 * Creates a writer of server frames for one player.
+	 * @param playerOutput Stream to the player.
+	 */
+	protected BinaryProtocol(OutputStream playerOutput) {
+		this.playerOutput = playerOutput;
+		frame = ByteBuffer.allocate(256);
+	}
+
+	/**
+	 * Confirms the switch to the binary protocol.
+	 */
+	protected synchronized void sendHello() {
+		try {
+			playerOutput.write(HELLO_REPLY);
+		}
+		catch(IOException error) {
+			//The transport notices the broken connection itself.
+		}
+	}
+
+	/**
+	 * Sends a frame holding only its message type.
+	 * @param messageType Type of message.
+	 */
+	protected synchronized void sendMessage(byte messageType) {
+		this.startFrame(messageType, 0);
+		this.sendFrame();
+	}
+
+	/**
+	 * Sends a frame holding a message type and one byte field.
+	 * @param messageType Type of message.
+	 * @param field Field value.
+	 */
+	protected synchronized void sendMessage(byte messageType, int field) {
+		this.startFrame(messageType, 1);
+		frame.put((byte) field);
+		this.sendFrame();
+	}
+
+	/**
+	 * Sends a frame holding a message type and text.
+	 * @param messageType Type of message.
+	 * @param text Text of the message.
+	 */
+	protected synchronized void sendText(byte messageType, String text) {
+		byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+		this.startFrame(messageType, textBytes.length);
+		frame.put(textBytes);
+		this.sendFrame();
+	}
+
+	/**
+	 * Sends the result of one of the player's shots, or of an opponent's shot at the player.
+	 * @param messageType SHOT_RESULT or INCOMING_SHOT.
+	 * @param row Row attacked.
+	 * @param column Column attacked.
+	 * @param shipHit Ship that was hit, null if the shot missed.
+	 */
+	protected synchronized void sendShot(byte messageType, int row, int column, Ship shipHit) {
+		this.startFrame(messageType, 3);
+		frame.put((byte) row).put((byte) column).put(shipHit == null ? NO_SHIP : (byte) shipHit.type.ordinal());
+		this.sendFrame();
+	}
+
+	/**
+	 * Tells the player one of the ships in the game has been sunk.
+	 * @param whose OWN_SHIP or OPPONENT_SHIP.
+	 * @param sunkShip Ship that was sunk.
+	 */
+	protected synchronized void sendShipSunk(byte whose, Ship sunkShip) {
+		this.startFrame(SHIP_SUNK, 2);
+		frame.put(whose).put((byte) sunkShip.type.ordinal());
+		this.sendFrame();
+	}
+
+	/**
+	 * Tells the player the game is over.
+	 * @param won True if the player won.
+	 * @param winnerName Name of the winner.
+	 */
+	protected synchronized void sendGameOver(boolean won, String winnerName) {
+		byte[] nameBytes = winnerName.getBytes(StandardCharsets.UTF_8);
+		//The won flag and message type take two bytes of the frame; a name too long for the rest is cut short rather than failing the end of the game.
+		int nameLength = utf8Prefix(nameBytes, MAX_FRAME_LENGTH - 2);
+		this.startFrame(GAME_OVER, 1 + nameLength);
+		frame.put((byte) (won ? 1 : 0)).put(nameBytes, 0, nameLength);
+		this.sendFrame();
+	}
+
+	/**
+	 * Finds how much of some UTF-8 text fits a number of bytes without splitting a character.
+	 * @param textBytes Text encoded as UTF-8.
+	 * @param maxLength Most bytes the text may take.
+	 * @return Length of the longest prefix of whole characters no longer than maxLength.
+	 */
+	protected static int utf8Prefix(byte[] textBytes, int maxLength) {
+		if(textBytes.length <= maxLength)
+			return textBytes.length;
+		int length = maxLength;
+		//Back off over continuation bytes to the start of the character that does not fit.
+		while(length > 0 && (textBytes[length] & 0xC0) == 0x80)
+			length--;
+		return length;
+	}
+
+	/**
+	 * Sends the player's board and their view of the target board.
+	 * @param ownBoard Player's board.
+	 * @param targetBoard Player's view of the opponent's board, the same size as ownBoard.
+	 */
+	protected synchronized void sendBoards(GameBoard ownBoard, GameBoard targetBoard) {
+		int numCells = ownBoard.getNumRows() * ownBoard.getNumColumns();
+		this.startFrame(BOARDS, 2 + 2 * numCells);
+		frame.put((byte) ownBoard.getNumRows()).put((byte) ownBoard.getNumColumns());
+		ownBoard.writeCells(frame);
+		targetBoard.writeCells(frame);
+		this.sendFrame();
+	}
+
+	/**
+	 * Sends the cells of the player's board and of their view of the target board which changed since the player was last told, in one frame.
+	 * @param ownBoard Player's board.
+	 * @param targetBoard Player's view of the opponent's board, the same size as ownBoard.
+	 */
+	protected synchronized void sendChangedCells(GameBoard ownBoard, GameBoard targetBoard) {
+		//Room for every cell of both boards; the length prefix is corrected once the changes have been written.
+		int numCells = ownBoard.getNumRows() * ownBoard.getNumColumns();
+		this.startFrame(CHANGED_CELLS, 4 + 6 * numCells);
+		ownBoard.writeChangedCells(frame);
+		targetBoard.writeChangedCells(frame);
+		frame.putShort(0, (short) (frame.position() - 2));
+		this.sendFrame();
+	}
+
+	/**
+	 * Begins a frame, making sure the reusable buffer can hold it.
+	 * @param messageType Type of message.
+	 * @param fieldsLength Bytes of fields following the message type.
+	 */
+	private void startFrame(byte messageType, int fieldsLength) {
+		int frameLength = 1 + fieldsLength;
+		if(frameLength > MAX_FRAME_LENGTH)
+			throw new IllegalArgumentException("Frame of " + frameLength + " bytes is too long.");
+		if(frame.capacity() < 2 + frameLength)
+			frame = ByteBuffer.allocate(2 + frameLength);
+
+		frame.clear();
+		frame.putShort((short) frameLength).put(messageType);
+	}
+
+	/**
+	 * Writes the frame built since startFrame() to the player.
+	 */
+	private void sendFrame() {
+		try {
+			playerOutput.write(frame.array(), 0, frame.position());
+		}
+		catch(IOException error) {
+			//The transport notices the broken connection itself.
+		}
+	}
+}
@@ -0,0 +1,263 @@
+package battleship;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.lang.StringBuilder;
+
+/**
+ * Alternative game board keeping occupancy, shots and hits as bitsets rather than a grid of Cell objects.
+ * Cell (row, column) is bit row * numColumns + column; a 10x10 board fits in two longs per bitset.
+ * Offers the same operations as GameBoard, with the same results.
+ */
+public class BitBoard {
+
+	/**
+	 * Array of ships holding the ships that have been placed on the board.
+	 */
+	protected ArrayList<Ship> boardShips;
+
+	/**
+	 * Cells covered by each ship, in the same order as boardShips.
+	 */
+	private ArrayList<long[]> shipCells;
+
+	/**
+	 * Cells covered by any ship.
+	 */
+	private long[] occupiedCells;
+
+	/**
+	 * Cells that have been attacked.
+	 */
+	private long[] attackedCells;
+
+	/**
+	 * Cells covered by a ship that have been attacked.
+	 */
+	private long[] hitCells;
+
+	/**
+	 * Scratch bitset used by addShip() to build a candidate placement without allocating.
+	 */
+	private long[] candidateCells;
+
+	/**
+	 * New line character, set based on current environment.
+	 */
+	protected static final String NEW_LINE_CHARACTER = System.getProperty("line.separator");
+
+	/**
+	 * Number of columns on game board.
+	 */
+	private int numColumns;
+
+	/**
+	 * Number of rows on game board.
+	 */
+	private int numRows;
+
+	/**
+	 * Initializes empty bitsets large enough for numRows * numColumns cells.
+	 * @param numRows Number of rows on the board.
+	 * @param numColumns Number of columns on the board.
+	 */
+	protected BitBoard(int numRows, int numColumns) {
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+
+		int numWords = (numRows * numColumns + Long.SIZE - 1) / Long.SIZE;
+		occupiedCells = new long[numWords];
+		attackedCells = new long[numWords];
+		hitCells = new long[numWords];
+		candidateCells = new long[numWords];
+
+		boardShips = new ArrayList<Ship>();
+		shipCells = new ArrayList<long[]>();
+	}
+
+	/**
+	 * Draws the board exactly as GameBoard.drawBoard() does.
+	 * @return Textual representation of the board.
+	 */
+	protected StringBuilder drawBoard() {
+		StringBuilder gameBoard = new StringBuilder();
+
+		gameBoard.append("+");
+		for (int index = 0; index < numColumns; index++)
+			gameBoard.append("-");
+		gameBoard.append("+").append(NEW_LINE_CHARACTER);
+
+		for(int row = 0; row < numRows; row++) {
+			gameBoard.append("+");
+			for(int column = 0; column < numColumns; column++)
+				gameBoard.append(drawCell(row * numColumns + column));
+			gameBoard.append("+").append(NEW_LINE_CHARACTER);
+		}
+
+		gameBoard.append("+");
+		for (int index = 0; index < numColumns; index++)
+			gameBoard.append("-");
+		gameBoard.append("+").append(NEW_LINE_CHARACTER);
+
+		return gameBoard;
+	}
+
+	/**
+	 * Draws the character representing a single cell, matching Cell.draw().
+	 * @param cellIndex Bit index of the cell.
+	 * @return Character representing the cell.
+	 */
+	private char drawCell(int cellIndex) {
+		boolean cellAttacked = isSet(attackedCells, cellIndex);
+		Ship ship = shipAt(cellIndex);
+
+		if(ship == null) {
+			if(cellAttacked)
+				return 'x';
+			return ' ';
+		}
+		return ship.drawShipStatusAtCell(cellAttacked);
+	}
+
+	/**
+	 * Adds ship to game board.
+	 * Accepts and rejects exactly the placements GameBoard.addShip() does, including its bounds rules.
+	 * @param ship Ship to be added to the board.
+	 * @param sternPosition Position of the ship's stern.
+	 * @param shipHeading Direction in which the ship is facing.
+	 * @return True if ship successfully added to board, false otherwise.
+	 */
+	protected boolean addShip(Ship ship, Position sternPosition, HEADING shipHeading) {
+		int shipLength = ship.getLength();
+		int sternRow = sternPosition.getRow();
+		int sternColumn = sternPosition.getColumn();
+
+		if(sternRow < 0 || sternColumn < 0 || sternRow > this.numRows - 1 || sternColumn > this.numColumns - 1)
+			return false;
+
+		//Step between consecutive cells of the ship, and the same fit checks as GameBoard.
+		int cellStep;
+		switch (shipHeading) {
+			case NORTH:
+				if(sternRow - shipLength < 0)
+					return false;
+				cellStep = -numColumns;
+				break;
+			case SOUTH:
+				if(sternRow + shipLength > this.numRows - 1)
+					return false;
+				cellStep = numColumns;
+				break;
+			case EAST:
+				if(sternColumn + shipLength > this.numColumns - 1)
+					return false;
+				cellStep = 1;
+				break;
+			default:
+				if(sternColumn - shipLength < 0)
+					return false;
+				cellStep = -1;
+		}
+
+		//GameBoard walks WEST ships with ListIterator.previous(), so they start one column short of the stern.
+		int firstCell = sternRow * numColumns + sternColumn;
+		if(shipHeading == HEADING.WEST)
+			firstCell--;
+
+		//Build the placement in the scratch bitset, then reject it if it overlaps any ship.
+		Arrays.fill(candidateCells, 0L);
+		for(int cellIndex = firstCell, remaining = shipLength; remaining > 0; cellIndex += cellStep, remaining--)
+			candidateCells[cellIndex >>> 6] |= 1L << cellIndex;
+
+		for(int word = 0; word < occupiedCells.length; word++)
+			if((occupiedCells[word] & candidateCells[word]) != 0)
+				return false;
+
+		for(int word = 0; word < occupiedCells.length; word++)
+			occupiedCells[word] |= candidateCells[word];
+
+		boardShips.add(ship);
+		shipCells.add(candidateCells.clone());
+		return true;
+	}
+
+	/**
+	 * Processes a missile fired at a certain cell
+	 * @param cellAttacked Position that as been attacked.
+	 * @return Reference to the ship that was hit, null if no ship hit.
+	 */
+	protected Ship fireMissile(Position cellAttacked) {
+		int rowAttacked = cellAttacked.getRow();
+		int columnAttacked = cellAttacked.getColumn();
+
+		if(rowAttacked < 0 || rowAttacked > this.numRows - 1 || columnAttacked < 0 || columnAttacked > this.numColumns - 1)
+			//Cell attacked is off the board; return null
+			return null;
+
+		int cellIndex = rowAttacked * numColumns + columnAttacked;
+		int word = cellIndex >>> 6;
+		long cellBit = 1L << cellIndex;
+
+		if((occupiedCells[word] & cellBit) == 0) {
+			attackedCells[word] |= cellBit;
+			return null;
+		}
+
+		Ship shipHit = shipAt(cellIndex);
+
+		//Only the first strike on a cell damages the ship, as with Cell.missileAttack().
+		if((attackedCells[word] & cellBit) == 0) {
+			attackedCells[word] |= cellBit;
+			hitCells[word] |= cellBit;
+			shipHit.missileStrike();
+		}
+		return shipHit;
+	}
+
+	/**
+	 * Removes every ship and missile from the board so it can be reused, as GameBoard.clear() does.
+	 */
+	protected void clear() {
+		Arrays.fill(occupiedCells, 0L);
+		Arrays.fill(attackedCells, 0L);
+		Arrays.fill(hitCells, 0L);
+		boardShips.clear();
+		shipCells.clear();
+	}
+
+	/**
+	 * Simple method to test and see if any ships are still alive on the board.
+	 * @return Returns true if at least one ship is still remaining, false otherwise.
+	 */
+	protected boolean hasShipsRemaining() {
+		//A ship is alive while any of its cells has not been hit.
+		for(int word = 0; word < occupiedCells.length; word++)
+			if((occupiedCells[word] & ~hitCells[word]) != 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Finds the ship covering a cell.
+	 * @param cellIndex Bit index of the cell.
+	 * @return Ship covering the cell, null if the cell is empty.
+	 */
+	private Ship shipAt(int cellIndex) {
+		if(!(isSet(occupiedCells, cellIndex)))
+			return null;
+		for(int index = 0; index < shipCells.size(); index++)
+			if(isSet(shipCells.get(index), cellIndex))
+				return boardShips.get(index);
+		return null;
+	}
+
+	/**
+	 * Tests a single bit of a bitset.
+	 * @param bitset Bitset to test.
+	 * @param cellIndex Bit index of the cell.
+	 * @return True if the cell's bit is set.
+	 */
+	private static boolean isSet(long[] bitset, int cellIndex) {
+		return (bitset[cellIndex >>> 6] & (1L << cellIndex)) != 0;
+	}
+}
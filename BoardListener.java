@@ -0,0 +1,25 @@
+package battleship;
+
+/**
+ * Receives notice of every ship added to a board and every missile fired at it, as each is processed.
+ * Used to record games; subscribe with GameBoard.addBoardListener().
+ */
+public interface BoardListener {
+
+	/**
+	 * Called after GameBoard.addShip() has accepted a ship.
+	 * @param ship Ship added.
+	 * @param sternRow Row of the ship's stern.
+	 * @param sternColumn Column of the ship's stern.
+	 * @param shipHeading Direction in which the ship is facing.
+	 */
+	void shipAdded(Ship ship, int sternRow, int sternColumn, HEADING shipHeading);
+
+	/**
+	 * Called after GameBoard.fireMissile() has processed a missile that landed on the board.
+	 * @param row Row attacked.
+	 * @param column Column attacked.
+	 * @param shipHit Ship that was hit, null if the missile missed.
+	 */
+	void missileFired(int row, int column, Ship shipHit);
+}
@@ -0,0 +1,6 @@
+package battleship;
+
+/**
+ * Enumeration of the stages a player moves through during a game.
+ */
+public enum CLIENTSTATE { CHOOSING_NAME, WAITING_FOR_GAME, PLACING_SHIPS, WAITING_FOR_OPPONENT, PLAYING, SPECTATING, FINISHED };
@@ -39,6 +39,15 @@ public class Cell {
 		ship = null;
 	}
 	
+	/**
+	 * Returns the cell to its initial state: not attacked and without a ship.
+	 */
+	protected void clear() {
+		hasBeenAttacked = false;
+		hasShip = false;
+		ship = null;
+	}
+	
 	/**
 	 * Draws the character representing this cell.
 	 */
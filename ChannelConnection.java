@@ -0,0 +1,771 @@
+package battleship;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One player's connection on the non-blocking transport.
+ * Holds the player's socket channel with its own read buffer, splits input into lines for the player's Client and queues the Client's output until the channel can take it.
+ * Output is kept as a queue of segments: bytes the Client flushed, copied into buffers of the connection's own, and frames shared with other connections, such as the menu,
+ * which are queued as they are. Everything queued goes out in one gathering write, so a turn whose output the game held until it ended costs a single system call.
+ * A player whose first line is BinaryProtocol.HELLO_LINE has the rest of their input split into binary frames instead.
+ * A spectator is written the frames of their SpectatorFeed, each straight from the buffer shared with the game's other spectators.
+ * All channel operations happen on the owning SelectorLoop's thread; output may be queued from any thread.
+ */
+public class ChannelConnection implements PlayerOutput {
+
+	/**
+	 * Starting size of each connection's read and write buffers.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	/**
+	 * Longest line a player may send. Connections sending longer lines are dropped.
+	 */
+	protected static final int MAX_LINE_LENGTH = 8192;
+
+	/**
+	 * Most segments handed to the channel in one gathering write.
+	 */
+	private static final int MAX_GATHER_SEGMENTS = 16;
+
+	/**
+	 * Times output was queued on any connection: each flush of a player's writer, each binary frame and each shared frame. Without batching, each would have been a write of its own.
+	 */
+	private static final LongAdder OUTPUT_QUEUED = new LongAdder();
+
+	/**
+	 * Writes to any player's channel, each a system call.
+	 */
+	private static final LongAdder CHANNEL_WRITES = new LongAdder();
+
+	/**
+	 * Character set used to decode input and encode output, matching the blocking transport's readers and writers.
+	 */
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	/**
+	 * Channel connected to the player.
+	 */
+	private SocketChannel channel;
+
+	/**
+	 * Loop that owns this connection.
+	 */
+	private SelectorLoop selectorLoop;
+
+	/**
+	 * Key of this connection in the loop's selector, null until registered. Only touched by the loop thread.
+	 */
+	private SelectionKey selectionKey;
+
+	/**
+	 * Bytes received from the player that have not yet formed a complete line. Only touched by the loop thread.
+	 */
+	private ByteBuffer readBuffer;
+
+	/**
+	 * Segments waiting to be written to the player, oldest first, each ready to be read from. Guarded by this connection's lock.
+	 */
+	private ArrayDeque<ByteBuffer> outputSegments;
+
+	/**
+	 * Segment of the connection's own that bytes are being copied into, not yet in outputSegments; null if nothing has been copied since the last segment was queued.
+	 * Guarded by this connection's lock.
+	 */
+	private ByteBuffer textSegment;
+
+	/**
+	 * Emptied segment of the connection's own, kept for the next bytes queued; null if there is none. Guarded by this connection's lock.
+	 */
+	private ByteBuffer spareSegment;
+
+	/**
+	 * Segments handed to the channel in one gathering write. Guarded by this connection's lock.
+	 */
+	private ByteBuffer[] gatherSegments;
+
+	/**
+	 * Bytes queued and not yet written to the channel. Guarded by this connection's lock.
+	 */
+	private int queuedBytes;
+
+	/**
+	 * Set while the player's game holds back output until the end of its turn. Guarded by this connection's lock.
+	 */
+	private boolean held;
+
+	/**
+	 * Set while a call to writeOutput() is queued on the loop. Guarded by this connection's lock.
+	 */
+	private boolean writeScheduled;
+
+	/**
+	 * Set once the connection should be closed after its pending output has been written. Guarded by this connection's lock.
+	 */
+	private boolean closeRequested;
+
+	/**
+	 * Client receiving this connection's input, null until attachClient() has run. Only touched by the loop thread.
+	 */
+	private Client client;
+
+	/**
+	 * Writer handed to the player's Client; text written to it is queued on this connection when flushed.
+	 */
+	private PrintWriter connectionWriter;
+
+	/**
+	 * Set once the player's first line has been delivered; only the first line may switch protocols. Only touched by the loop thread.
+	 */
+	private boolean firstLineDelivered;
+
+	/**
+	 * Set while deliverInput() is handing input to the Client. A Client that stops waiting for a game while handling a line resumes its input from within,
+	 * and the delivery already under way carries on instead. Only touched by the loop thread.
+	 */
+	private boolean deliveringInput;
+
+	/**
+	 * Set once the player has switched to the binary protocol and input is split into frames rather than lines. Only touched by the loop thread.
+	 */
+	private boolean readingFrames;
+
+	/**
+	 * Feed of the game the player is watching, null unless they are a spectator. Only touched by the loop thread.
+	 */
+	private SpectatorFeed spectatorFeed;
+
+	/**
+	 * Frame of the spectator feed being written, null if none is partly written. Only touched by the loop thread.
+	 */
+	private ByteBuffer feedFrame;
+
+	/**
+	 * Creates a connection for a non-blocking channel. The connection does not read or write until register() is called.
+	 * @param channel Channel connected to the player, already in non-blocking mode.
+	 * @param selectorLoop Loop that will own this connection.
+	 */
+	protected ChannelConnection(SocketChannel channel, SelectorLoop selectorLoop) {
+		this.channel = channel;
+		this.selectorLoop = selectorLoop;
+
+		readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		outputSegments = new ArrayDeque<ByteBuffer>();
+		gatherSegments = new ByteBuffer[MAX_GATHER_SEGMENTS];
+		connectionWriter = new PrintWriter(new OutputWriter());
+	}
+
+	/**
+	 * Simple accessor method to return the writer the player's Client should use for output.
+	 * @return Writer queuing output on this connection.
+	 */
+	protected PrintWriter getWriter() {
+		return connectionWriter;
+	}
+
+	/**
+	 * Determines whether the channel is still open.
+	 * @return True while the player is connected.
+	 */
+	protected boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	/**
+	 * Registers this connection with its loop so input is read and output written.
+	 */
+	protected void register() {
+		selectorLoop.register(this);
+	}
+
+	/**
+	 * Hands the player's Client to the connection. Lines received before the Client was attached are delivered straight away.
+	 * @param client Client which should receive this connection's input.
+	 */
+	protected void attachClient(Client client) {
+		//Input is held while the player waits in the lobby, and delivered once they have a game.
+		client.setInputResumer(() -> selectorLoop.execute(this::deliverInput));
+		client.setFeedWriter(feed -> selectorLoop.execute(() -> this.startFeed(feed)));
+		client.setPlayerOutput(this);
+		selectorLoop.execute(() -> {
+			this.client = client;
+
+			//The player may have disconnected before the Client was attached.
+			if(!(channel.isOpen())) {
+				client.connectionLost(connectionWriter);
+				return;
+			}
+			deliverInput();
+		});
+	}
+
+	/**
+	 * Registers the channel with the supplied selector. Called on the loop thread.
+	 * @param selector Selector of the owning loop.
+	 */
+	protected void register(Selector selector) {
+		try {
+			selectionKey = channel.register(selector, SelectionKey.OP_READ, this);
+		}
+		catch(IOException error) {
+			closeChannel();
+			return;
+		}
+
+		//Write anything queued before the channel was registered.
+		writeOutput();
+	}
+
+	/**
+	 * Services the connection after the selector reports it ready. Called on the loop thread.
+	 * @param readyKey Key reported ready by the selector.
+	 */
+	protected void handleReady(SelectionKey readyKey) {
+		try {
+			if(readyKey.isValid() && readyKey.isReadable())
+				readInput();
+			if(readyKey.isValid() && readyKey.isWritable()) {
+				if(spectatorFeed != null)
+					writeFeed();
+				else
+					writeOutput();
+			}
+		}
+		catch(IOException error) {
+			closeChannel();
+		}
+		catch(RuntimeException error) {
+			//A bug handling one player's input must not stop the loop serving everyone else.
+			System.out.println("Error serving player: " + error + ".");
+			ServerMetrics.handlerFailed();
+			closeChannel();
+		}
+	}
+
+	/**
+	 * Reads whatever the player has sent and delivers each complete line to the Client.
+	 * @throws IOException If the channel cannot be read.
+	 */
+	private void readInput() throws IOException {
+		int bytesRead = channel.read(readBuffer);
+		if(bytesRead < 0) {
+			//Player closed the connection.
+			closeChannel();
+			return;
+		}
+		ServerMetrics.bytesReceived(bytesRead);
+
+		deliverInput();
+
+		if(!(readBuffer.hasRemaining())) {
+			//No complete line or frame in a full buffer; grow it, or drop the player if the line or frame is unreasonably long.
+			int maxInputLength = readingFrames ? BinaryProtocol.MAX_FRAME_LENGTH + 2 : MAX_LINE_LENGTH;
+			if(readBuffer.capacity() >= maxInputLength) {
+				closeChannel();
+				return;
+			}
+			ByteBuffer largerBuffer = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2, maxInputLength));
+			readBuffer.flip();
+			largerBuffer.put(readBuffer);
+			readBuffer = largerBuffer;
+		}
+	}
+
+	/**
+	 * Hands every complete line or frame in the read buffer to the Client, keeping any partial one for the next read.
+	 */
+	private void deliverInput() {
+		//Leave input buffered until the player's Client is attached, and while they wait for an opponent.
+		if(deliveringInput || client == null || client.isWaitingForGame() || !(client.isConnectedThrough(connectionWriter)))
+			return;
+
+		deliveringInput = true;
+		readBuffer.flip();
+		byte[] receivedBytes = readBuffer.array();
+		int inputStart = readBuffer.position();
+
+		while(inputStart < readBuffer.limit()) {
+			int deliveredLength = readingFrames ? deliverFrame(receivedBytes, inputStart, readBuffer.limit()) : deliverLine(receivedBytes, inputStart, readBuffer.limit());
+			if(deliveredLength == 0)
+				//Only part of the next line or frame has arrived.
+				break;
+			inputStart += deliveredLength;
+
+			//A player resuming a session hands the connection to that session's Client; one whose session was resumed elsewhere is no longer served here.
+			client = client.connectionOwner();
+			if(client.isWaitingForGame() || !(client.isConnectedThrough(connectionWriter)))
+				break;
+		}
+
+		readBuffer.position(inputStart);
+		readBuffer.compact();
+		deliveringInput = false;
+	}
+
+	/**
+	 * Hands the line starting at inputStart to the Client, if the whole of it has arrived.
+	 * Switches the connection to binary frames instead if this is the player's first line and it asks for the binary protocol.
+	 * @param receivedBytes Bytes received from the player.
+	 * @param inputStart Index of the first byte of the line.
+	 * @param inputEnd Index just past the last received byte.
+	 * @return Bytes consumed, including the line terminator; 0 if the line is incomplete.
+	 */
+	private int deliverLine(byte[] receivedBytes, int inputStart, int inputEnd) {
+		for(int index = inputStart; index < inputEnd; index++) {
+			if(receivedBytes[index] != '\n')
+				continue;
+
+			//Strip the line terminator, accepting both \n and \r\n from players.
+			int lineEnd = index;
+			if(lineEnd > inputStart && receivedBytes[lineEnd - 1] == '\r')
+				lineEnd--;
+
+			//Game commands are decoded straight from the buffer; only other input needs a String.
+			if(firstLineDelivered && client.isPlaying()) {
+				client.processCommand(receivedBytes, inputStart, lineEnd);
+				return index + 1 - inputStart;
+			}
+
+			String line = new String(receivedBytes, inputStart, lineEnd - inputStart, CHARSET);
+			if(!(firstLineDelivered)) {
+				firstLineDelivered = true;
+				if(line.equals(BinaryProtocol.HELLO_LINE)) {
+					readingFrames = true;
+					client.useBinaryProtocol(new OutputQueueStream());
+					return index + 1 - inputStart;
+				}
+			}
+			client.processLine(line);
+			return index + 1 - inputStart;
+		}
+		return 0;
+	}
+
+	/**
+	 * Hands the frame starting at inputStart to the Client, if the whole of it has arrived.
+	 * @param receivedBytes Bytes received from the player.
+	 * @param inputStart Index of the frame's length prefix.
+	 * @param inputEnd Index just past the last received byte.
+	 * @return Bytes consumed, including the length prefix; 0 if the frame is incomplete.
+	 */
+	private int deliverFrame(byte[] receivedBytes, int inputStart, int inputEnd) {
+		if(inputEnd - inputStart < 2)
+			return 0;
+		int frameLength = ((receivedBytes[inputStart] & 0xFF) << 8) | (receivedBytes[inputStart + 1] & 0xFF);
+		if(inputEnd - inputStart < 2 + frameLength)
+			return 0;
+
+		//An empty frame carries no message type; skip it.
+		if(frameLength > 0)
+			client.processFrame(ByteBuffer.wrap(receivedBytes, inputStart + 2, frameLength));
+		return 2 + frameLength;
+	}
+
+	/**
+	 * Copies encoded output into the connection's own segments and makes sure the loop will write it, unless the player's game is holding output.
+	 * @param outputBytes Array holding the bytes to send to the player.
+	 * @param offset Index of the first byte to send.
+	 * @param length Number of bytes to send.
+	 */
+	private void queueOutput(byte[] outputBytes, int offset, int length) {
+		synchronized(this) {
+			if(closeRequested)
+				return;
+
+			if(textSegment == null || textSegment.remaining() < length) {
+				this.sealTextSegment();
+				textSegment = this.takeSegment(length);
+			}
+			textSegment.put(outputBytes, offset, length);
+			queuedBytes += length;
+			OUTPUT_QUEUED.increment();
+
+			if(!(this.scheduleWrite()))
+				return;
+		}
+		selectorLoop.execute(this::writeOutput);
+	}
+
+	/**
+	 * Encodes text straight into the connection's own segments and makes sure the loop will write it, unless the player's game is holding output.
+	 * Text that does not fit the segment being filled continues in the next, so nothing is allocated once the spare segment is large enough for a turn.
+	 * @param text Text to send, from its position to its limit; consumed.
+	 * @param encoder Encoder for CHARSET owned by the caller.
+	 */
+	private void queueText(CharBuffer text, CharsetEncoder encoder) {
+		synchronized(this) {
+			if(closeRequested)
+				return;
+
+			encoder.reset();
+			boolean encoded = false;
+			while(true) {
+				if(textSegment == null || !(textSegment.hasRemaining())) {
+					this.sealTextSegment();
+					textSegment = this.takeSegment((int) (text.remaining() * encoder.averageBytesPerChar()) + 1);
+				}
+				int segmentStart = textSegment.position();
+				CoderResult result = encoded ? encoder.flush(textSegment) : encoder.encode(text, textSegment, true);
+				queuedBytes += textSegment.position() - segmentStart;
+				if(result.isOverflow()) {
+					//Segment full; carry on in a fresh one.
+					this.sealTextSegment();
+					continue;
+				}
+				if(encoded)
+					break;
+				encoded = true;
+			}
+			OUTPUT_QUEUED.increment();
+
+			if(!(this.scheduleWrite()))
+				return;
+		}
+		selectorLoop.execute(this::writeOutput);
+	}
+
+	/**
+	 * Decides whether a write must be queued on the loop for output just queued. Called holding this connection's lock.
+	 * @return True if the caller should queue writeOutput() on the loop; false if output is held or a write is already queued.
+	 */
+	private boolean scheduleWrite() {
+		if(held || writeScheduled || queuedBytes == 0)
+			return false;
+		writeScheduled = true;
+		return true;
+	}
+
+	/**
+	 * Moves the segment being copied into, if any, to the end of the queue, so whatever is queued next follows it. Called holding this connection's lock.
+	 */
+	private void sealTextSegment() {
+		if(textSegment == null)
+			return;
+		textSegment.flip();
+		outputSegments.add(textSegment);
+		textSegment = null;
+	}
+
+	/**
+	 * Returns an empty segment of the connection's own, reusing the spare one if it is large enough. Called holding this connection's lock.
+	 * @param minimumCapacity Bytes the segment must hold.
+	 * @return Segment ready to be copied into.
+	 */
+	private ByteBuffer takeSegment(int minimumCapacity) {
+		ByteBuffer segment = spareSegment;
+		spareSegment = null;
+		if(segment != null && segment.capacity() >= minimumCapacity)
+			return segment;
+		return ByteBuffer.allocate(Math.max(INITIAL_BUFFER_SIZE, minimumCapacity));
+	}
+
+	public void writeShared(ByteBuffer frame) {
+		synchronized(this) {
+			if(closeRequested)
+				return;
+
+			this.sealTextSegment();
+			outputSegments.add(frame.duplicate());
+			queuedBytes += frame.remaining();
+			OUTPUT_QUEUED.increment();
+
+			if(!(this.scheduleWrite()))
+				return;
+		}
+		selectorLoop.execute(this::writeOutput);
+	}
+
+	public void hold() {
+		synchronized(this) {
+			held = true;
+		}
+	}
+
+	public void release() {
+		synchronized(this) {
+			held = false;
+			if(!(this.scheduleWrite()))
+				return;
+		}
+		selectorLoop.execute(this::writeOutput);
+	}
+
+	public synchronized int getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	/**
+	 * Simple accessor method to return the number of times output was queued on any connection, each of which would have been a write of its own without batching.
+	 * @return Flushes, binary frames and shared frames queued since the server started.
+	 */
+	protected static long getOutputQueued() {
+		return OUTPUT_QUEUED.sum();
+	}
+
+	/**
+	 * Simple accessor method to return the number of writes to players' channels.
+	 * @return System calls made writing output since the server started.
+	 */
+	protected static long getChannelWrites() {
+		return CHANNEL_WRITES.sum();
+	}
+
+	/**
+	 * Asks for the connection to be closed once everything already queued has been written.
+	 */
+	private void requestClose() {
+		synchronized(this) {
+			closeRequested = true;
+		}
+		selectorLoop.execute(this::writeOutput);
+	}
+
+	/**
+	 * Writes as much queued output as the channel will take, as many segments at a time as a gathering write allows. Called on the loop thread.
+	 * Watches for writability while output remains and closes the channel once drained if a close was requested.
+	 * Output the player's game is holding is written too, if the loop was asked to write before the game held it.
+	 */
+	private void writeOutput() {
+		synchronized(this) {
+			writeScheduled = false;
+
+			//Not registered yet; register() writes once it is. Nothing to do once the channel is gone.
+			if(selectionKey == null || !(selectionKey.isValid()))
+				return;
+
+			this.sealTextSegment();
+			try {
+				while(!(outputSegments.isEmpty())) {
+					int segmentCount = 0;
+					for(ByteBuffer segment : outputSegments) {
+						gatherSegments[segmentCount++] = segment;
+						if(segmentCount == gatherSegments.length)
+							break;
+					}
+					long bytesWritten = channel.write(gatherSegments, 0, segmentCount);
+					queuedBytes -= (int) bytesWritten;
+					CHANNEL_WRITES.increment();
+					ServerMetrics.bytesSent(bytesWritten);
+					boolean channelFull = gatherSegments[segmentCount - 1].hasRemaining();
+					Arrays.fill(gatherSegments, 0, segmentCount, null);
+
+					while(!(outputSegments.isEmpty()) && !(outputSegments.peek().hasRemaining()))
+						this.recycleSegment(outputSegments.poll());
+					if(channelFull)
+						break;
+				}
+			}
+			catch(IOException error) {
+				//Player went away; discard their output and close below.
+				outputSegments.clear();
+				queuedBytes = 0;
+				closeRequested = true;
+			}
+
+			if(!(outputSegments.isEmpty())) {
+				selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+			selectionKey.interestOps(SelectionKey.OP_READ);
+
+			if(!(closeRequested))
+				return;
+		}
+		//Close outside the connection lock; the Client may notify its game manager, which writes to other connections.
+		closeChannel();
+	}
+
+	/**
+	 * Keeps a written segment of the connection's own as the spare, for the next bytes queued. Shared frames are read-only and simply forgotten.
+	 * Called holding this connection's lock.
+	 * @param segment Segment the channel has taken all of.
+	 */
+	private void recycleSegment(ByteBuffer segment) {
+		if(segment.isReadOnly() || spareSegment != null)
+			return;
+		segment.clear();
+		spareSegment = segment;
+	}
+
+	/**
+	 * Starts writing a spectator's feed to the channel. Called on the loop thread.
+	 * @param feed Feed of the game the player is watching.
+	 */
+	private void startFeed(SpectatorFeed feed) {
+		spectatorFeed = feed;
+		feed.setFrameListener(() -> selectorLoop.execute(this::writeFeed));
+		//Frames queued before the listener was set were not announced.
+		writeFeed();
+	}
+
+	/**
+	 * Writes as many of the spectator's frames as the channel will take, after any text still queued. Called on the loop thread.
+	 * Watches for writability while a frame is partly written, and closes the channel once the feed is closed and every frame written.
+	 */
+	private void writeFeed() {
+		if(selectionKey == null || !(selectionKey.isValid()))
+			return;
+
+		//Text queued before the player became a spectator goes first.
+		boolean textPending;
+		synchronized(this) {
+			textPending = queuedBytes > 0;
+		}
+		if(textPending) {
+			writeOutput();
+			synchronized(this) {
+				if(queuedBytes > 0 || !(selectionKey.isValid()))
+					return;
+			}
+		}
+
+		try {
+			while(true) {
+				if(feedFrame == null || !(feedFrame.hasRemaining())) {
+					feedFrame = spectatorFeed.nextFrame();
+					if(feedFrame == null)
+						break;
+				}
+				ServerMetrics.bytesSent(channel.write(feedFrame));
+				if(feedFrame.hasRemaining()) {
+					selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+			}
+		}
+		catch(IOException error) {
+			closeChannel();
+			return;
+		}
+		selectionKey.interestOps(SelectionKey.OP_READ);
+
+		if(spectatorFeed.isClosed())
+			closeChannel();
+	}
+
+	/**
+	 * Closes the channel and tells the Client, if any, that its player is gone. Called on the loop thread.
+	 */
+	private void closeChannel() {
+		if(!(channel.isOpen()))
+			return;
+
+		if(selectionKey != null)
+			selectionKey.cancel();
+		try {
+			channel.close();
+		}
+		catch(IOException error) {
+			System.out.println("Error closing connection: " + error + ".");
+		}
+		ServerMetrics.connectionClosed();
+
+		if(client != null)
+			client.connectionLost(connectionWriter);
+	}
+
+	/**
+	 * Writer collecting a Client's output. Text is encoded and queued on the connection when the writer is flushed.
+	 */
+	private class OutputWriter extends Writer {
+
+		/**
+		 * Text written since the last flush, from index 0 to pendingLength. Guarded by the writer's lock.
+		 */
+		private char[] pendingText = new char[INITIAL_BUFFER_SIZE];
+
+		/**
+		 * Number of characters of pendingText written since the last flush. Guarded by the writer's lock.
+		 */
+		private int pendingLength;
+
+		/**
+		 * View of pendingText handed to the encoder, wrapped again only when pendingText grows. Guarded by the writer's lock.
+		 */
+		private CharBuffer pendingView = CharBuffer.wrap(pendingText);
+
+		/**
+		 * Encoder of the connection's text, replacing what CHARSET cannot encode as String.getBytes() does. Guarded by the writer's lock.
+		 */
+		private CharsetEncoder encoder = CHARSET.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		@Override
+		public void write(char[] characters, int offset, int length) {
+			synchronized(lock) {
+				this.reserve(length);
+				System.arraycopy(characters, offset, pendingText, pendingLength, length);
+				pendingLength += length;
+			}
+		}
+
+		@Override
+		public void write(String text, int offset, int length) {
+			synchronized(lock) {
+				this.reserve(length);
+				text.getChars(offset, offset + length, pendingText, pendingLength);
+				pendingLength += length;
+			}
+		}
+
+		@Override
+		public void flush() {
+			synchronized(lock) {
+				if(pendingLength == 0)
+					return;
+				pendingView.clear().limit(pendingLength);
+				queueText(pendingView, encoder);
+				pendingLength = 0;
+			}
+		}
+
+		/**
+		 * Grows pendingText, if need be, to take more characters. Called holding the writer's lock.
+		 * @param length Characters about to be written.
+		 */
+		private void reserve(int length) {
+			if(pendingLength + length <= pendingText.length)
+				return;
+			pendingText = Arrays.copyOf(pendingText, Math.max(pendingText.length * 2, pendingLength + length));
+			pendingView = CharBuffer.wrap(pendingText);
+		}
+
+		@Override
+		public void close() {
+			flush();
+			requestClose();
+		}
+	}
+
+	/**
+	 * Stream handed to a Client using the binary protocol. Bytes written to it are queued on the connection straight away.
+	 */
+	private class OutputQueueStream extends OutputStream {
+
+		@Override
+		public void write(int outputByte) {
+			queueOutput(new byte[] { (byte) outputByte }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] outputBytes, int offset, int length) {
+			queueOutput(outputBytes, offset, length);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package battleship;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chat messages waiting to be written to one player. Messages are queued while their game handles the sender's command and written together,
+ * with a single flush, once the game has handled the messages in hand; see Client.deliverChat(). The queue holds at most MAX_QUEUED_MESSAGES,
+ * so a player who stops reading cannot make the server buffer an opponent's chat without limit: further messages are dropped and their sender told.
+ * Only touched while the game handles a message. Counts across every outbox are kept for monitoring.
+ */
+public class ChatOutbox {
+
+	/**
+	 * Most messages waiting for a player before further messages to them are dropped.
+	 */
+	protected static final int MAX_QUEUED_MESSAGES = 16;
+
+	/**
+	 * Messages waiting in every outbox.
+	 */
+	private static final LongAdder MESSAGES_QUEUED = new LongAdder();
+
+	/**
+	 * Messages dropped because their recipient's outbox was full, since the server started.
+	 */
+	private static final LongAdder MESSAGES_DROPPED = new LongAdder();
+
+	/**
+	 * Messages refused because their sender had used up their allowance, since the server started.
+	 */
+	private static final LongAdder MESSAGES_RATE_LIMITED = new LongAdder();
+
+	/**
+	 * Messages waiting, oldest first.
+	 */
+	private ArrayDeque<String> messages;
+
+	/**
+	 * Creates an empty outbox.
+	 */
+	protected ChatOutbox() {
+		messages = new ArrayDeque<String>();
+	}
+
+	/**
+	 * Queues a message, unless MAX_QUEUED_MESSAGES are already waiting.
+	 * @param message Message to queue.
+	 * @return True if the message was queued, false if it was dropped.
+	 */
+	protected boolean offer(String message) {
+		if(messages.size() >= MAX_QUEUED_MESSAGES) {
+			MESSAGES_DROPPED.increment();
+			return false;
+		}
+		messages.add(message);
+		MESSAGES_QUEUED.increment();
+		return true;
+	}
+
+	/**
+	 * Takes the oldest waiting message.
+	 * @return The message, or null if none is waiting.
+	 */
+	protected String poll() {
+		String message = messages.poll();
+		if(message != null)
+			MESSAGES_QUEUED.decrement();
+		return message;
+	}
+
+	/**
+	 * Reports whether any message is waiting.
+	 * @return True if the outbox is empty.
+	 */
+	protected boolean isEmpty() {
+		return messages.isEmpty();
+	}
+
+	/**
+	 * Simple accessor method to return the number of messages waiting in this outbox.
+	 * @return Queue depth.
+	 */
+	protected int getDepth() {
+		return messages.size();
+	}
+
+	/**
+	 * Counts a message refused because its sender had used up their allowance.
+	 */
+	protected static void messageRateLimited() {
+		MESSAGES_RATE_LIMITED.increment();
+	}
+
+	/**
+	 * Simple accessor method to return the number of messages waiting in every outbox.
+	 * @return Messages queued and not yet written.
+	 */
+	protected static long getMessagesQueued() {
+		return MESSAGES_QUEUED.sum();
+	}
+
+	/**
+	 * Simple accessor method to return the number of messages dropped because their recipient was not keeping up.
+	 * @return Messages dropped since the server started.
+	 */
+	protected static long getMessagesDropped() {
+		return MESSAGES_DROPPED.sum();
+	}
+
+	/**
+	 * Simple accessor method to return the number of messages refused because their sender was sending too many.
+	 * @return Messages refused since the server started.
+	 */
+	protected static long getMessagesRateLimited() {
+		return MESSAGES_RATE_LIMITED.sum();
+	}
+}
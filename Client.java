@@ -1,9 +1,15 @@
 package battleship;
 
 import java.io.BufferedReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.IOException;
-import java.util.StringTokenizer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 public class Client {
 
@@ -13,9 +19,71 @@ public class Client {
 	private GameBoard clientBoard;
 	
 	/**
-	 * Client tracks GameManager in charge of administering the client's game.
+	 * Where the player is in the game; decides how the next line of input is handled.
 	 */
-	private GameManager clientGameManager;
+	private volatile CLIENTSTATE clientState;
+	
+	/**
+	 * Client tracks GameManager in charge of administering the client's game. Null while a player admitted by a lobby waits for a game.
+	 */
+	private volatile GameManager clientGameManager;
+	
+	/**
+	 * Lobby the player waits in until they join a game, and which holds their session; null if the player was added straight to a game.
+	 */
+	private PlayerLobby clientLobby;
+	
+	/**
+	 * Token with which the player can resume their session on a new connection, null if the player was added straight to a game.
+	 */
+	private String sessionToken;
+	
+	/**
+	 * System.nanoTime() when the player's connection was lost, or 0 while they are connected. Guarded by this client's lock.
+	 */
+	private long detachedNanos;
+	
+	/**
+	 * Set while the player's boards have not been sent since their game was recovered, so resuming sends them whole rather than just the cells that changed.
+	 */
+	private boolean resendBoards;
+	
+	/**
+	 * Client of the session which has taken over this player's connection, null unless the player resumed a session.
+	 */
+	private volatile Client successor;
+	
+	/**
+	 * Called once the player leaves the lobby for a game, so a transport holding their input while they wait can deliver it again. Null for the blocking transport,
+	 * whose reader thread waits on this client instead.
+	 */
+	private Runnable inputResumer;
+	
+	/**
+	 * Called with the feed of a player who starts watching a game, to have their transport write its frames. On the blocking transport it writes them itself,
+	 * returning once the game is over or the connection lost.
+	 */
+	private Consumer<SpectatorFeed> feedWriter;
+	
+	/**
+	 * Feed of the game the player is watching, null unless they are a spectator.
+	 */
+	private volatile SpectatorFeed spectatorFeed;
+	
+	/**
+	 * Player's connection as their game writes to it, holding output while the game takes a turn; null for a player without one, such as the computer.
+	 */
+	private PlayerOutput playerOutput;
+	
+	/**
+	 * Chat messages from the opponent waiting to be written to the player.
+	 */
+	private ChatOutbox chatOutbox;
+	
+	/**
+	 * Limits how often the player may send chat messages. Only touched while handling the player's game's messages.
+	 */
+	private TokenBucket chatAllowance;
 		
 	/**
 	 * BufferedReader object client uses to process input from the server.
@@ -27,11 +95,56 @@ public class Client {
 	 */
 	protected PrintWriter clientWriter;
 	
+	/**
+	 * Writer of binary protocol frames to the player, or null while the player uses the text protocol.
+	 */
+	protected volatile BinaryProtocol binaryProtocol;
+	
 	/**
 	 * Instance variable that holds the new line separator depending on the local execution environment.
 	 */
 	final static String NEW_LINE_CHARACTER = System.getProperty("line.separator");
 	
+	/**
+	 * Heading written above the player's own board.
+	 */
+	private static final String YOUR_BOARD_HEADING = NEW_LINE_CHARACTER + "Your board:" + NEW_LINE_CHARACTER;
+	
+	/**
+	 * Heading written above the player's view of the opponent's board.
+	 */
+	private static final String TARGET_BOARD_HEADING = "Target board:" + NEW_LINE_CHARACTER;
+	
+	/**
+	 * Line a player sends while placing ships to have the rest of their fleet placed at random.
+	 */
+	protected static final String AUTO_PLACE_COMMAND = "A";
+	
+	/**
+	 * Chat messages a player may send at once before being limited to CHAT_MESSAGES_PER_SECOND.
+	 */
+	private static final int CHAT_BURST = 5;
+	
+	/**
+	 * Chat messages a player may send each second, on average.
+	 */
+	private static final double CHAT_MESSAGES_PER_SECOND = 1;
+	
+	/**
+	 * Bytes the player's transport may have yet to send them before chat waits for them to catch up.
+	 */
+	private static final int MAX_CHAT_BACKLOG_BYTES = 64 * 1024;
+	
+	/**
+	 * Longest name a player may choose, in characters, on either protocol. Longer names are cut short, so a name always fits a GAME_OVER frame and a log record.
+	 */
+	protected static final int MAX_NAME_LENGTH = 32;
+	
+	/**
+	 * Decoder reused for every game command the player sends. Only touched while handling the player's game's messages.
+	 */
+	private CommandDecoder commandDecoder;
+	
 	/**
 	 * Client's view of opponent's board; tracks cells client has attacked on opponent's board.
 	 */
@@ -42,29 +155,129 @@ public class Client {
 	 */
 	private String playerName;
 	
+	/**
+	 * Number of ships the player has placed so far; indexes SHIPTYPES.values() while placing.
+	 */
+	private int shipsPlaced;
+	
+	/**
+	 * When set, the player is sent only the cells that changed after each command rather than the menu and both boards.
+	 * Toggled by the U command; only touched while handling the player's game's messages.
+	 */
+	private boolean sendChangesOnly;
+	
+	/**
+	 * Set once a missile the player fired has landed, until the command that fired it is finished, so the opponent can be prompted for their turn.
+	 */
+	private boolean firedThisCommand;
+	
+	/**
+	 * Ship of this player's sunk by the shot being handled, held until the shooter has been told the shot hit; null otherwise.
+	 */
+	private Ship pendingSunkShip;
+	
 	/**
 	 * Client constructor; sets input/output streams and game manager to supplied values. Initializes client's and opponent's game boards.
-	 * @param serverInput Input stream from server.
+	 * @param serverInput Input stream from server, or null if the transport delivers lines through processLine().
 	 * @param outputToServer Output stream to server.
 	 * @param gameManager Client's game manager.
 	 */
 	protected Client(BufferedReader serverInput, PrintWriter outputToServer, GameManager gameManager) {
+		this(serverInput, outputToServer, gameManager, 10, 10);
+	}
+	
+	/**
+	 * Client constructor for a player who waits in a lobby until paired; sets input/output streams and lobby to supplied values. Initializes client's and opponent's game boards.
+	 * @param serverInput Input stream from server, or null if the transport delivers lines through processLine().
+	 * @param outputToServer Output stream to server.
+	 * @param lobby Lobby which will find the player a game.
+	 */
+	protected Client(BufferedReader serverInput, PrintWriter outputToServer, PlayerLobby lobby) {
+		this(serverInput, outputToServer, (GameManager) null, 10, 10);
+		clientLobby = lobby;
+	}
+	
+	/**
+	 * Client constructor for boards of a given size; sets input/output streams and game manager to supplied values. Initializes client's and opponent's game boards.
+	 * @param serverInput Input stream from server, or null if the transport delivers lines through processLine().
+	 * @param outputToServer Output stream to server.
+	 * @param gameManager Client's game manager.
+	 * @param numRows Number of rows on each board.
+	 * @param numColumns Number of columns on each board.
+	 */
+	protected Client(BufferedReader serverInput, PrintWriter outputToServer, GameManager gameManager, int numRows, int numColumns) {
 		//Set input/output streams and game manager to supplied values.
 		clientReader = serverInput;
 		clientWriter = outputToServer;
 		clientGameManager = gameManager;
 		
 		//Initialize the client's game board and its view of the opponent's board.
-		clientBoard = new GameBoard(10,10);
-		opponentBoard = new GameBoard(10,10);
+		clientBoard = new GameBoard(numRows, numColumns);
+		opponentBoard = new GameBoard(numRows, numColumns);
+		commandDecoder = new CommandDecoder();
+		chatOutbox = new ChatOutbox();
+		chatAllowance = new TokenBucket(CHAT_BURST, CHAT_MESSAGES_PER_SECOND);
+		
+		//Hear about our ships sinking as it happens rather than checking after every shot.
+		clientBoard.addSinkListener(this::ownShipSunk);
+		
+		//Every player starts by choosing a name.
+		clientState = CLIENTSTATE.CHOOSING_NAME;
 	}
 	
 	/**
 	 * Draws player's and opponent's boards.
 	 */
 	protected void drawBoards() {
-		this.clientWriter.println(NEW_LINE_CHARACTER + "Your board:" + NEW_LINE_CHARACTER + this.clientBoard.drawBoard() + NEW_LINE_CHARACTER);
-		this.clientWriter.println("Target board:" + NEW_LINE_CHARACTER + this.opponentBoard.drawBoard() + NEW_LINE_CHARACTER);
+		//The whole of both boards is about to be sent, so no earlier change needs reporting separately.
+		this.clientBoard.clearChangedCells();
+		this.opponentBoard.clearChangedCells();
+		
+		if(this.binaryProtocol != null) {
+			this.binaryProtocol.sendBoards(this.clientBoard, this.opponentBoard);
+			return;
+		}
+		
+		//Boards are written straight to the player's output rather than concatenated into new strings.
+		this.clientWriter.write(YOUR_BOARD_HEADING);
+		this.clientBoard.drawBoard(this.clientWriter);
+		this.clientWriter.println(NEW_LINE_CHARACTER);
+		this.clientWriter.write(TARGET_BOARD_HEADING);
+		this.opponentBoard.drawBoard(this.clientWriter);
+		this.clientWriter.println(NEW_LINE_CHARACTER);
+	}
+	
+	/**
+	 * Notes that one of the player's ships has been sunk, to be reported by reportShipSunk() once the shooter has been told of the hit.
+	 * Called by the player's board from within fireMissile(), on the thread of the opponent's fire command.
+	 * @param sunkShip Ship that has just been sunk.
+	 */
+	protected void ownShipSunk(Ship sunkShip) {
+		this.pendingSunkShip = sunkShip;
+	}
+	
+	/**
+	 * Tells the player, and the opponent who fired the shot, that one of the player's ships has been sunk, if the shot just handled sank one.
+	 */
+	protected void reportShipSunk() {
+		Ship sunkShip = this.pendingSunkShip;
+		if(sunkShip == null)
+			return;
+		this.pendingSunkShip = null;
+		
+		if(this.binaryProtocol != null)
+			this.binaryProtocol.sendShipSunk(BinaryProtocol.OWN_SHIP, sunkShip);
+		else {
+			this.clientWriter.println("Your " + sunkShip.type + " " + sunkShip.getName().trim() + " has been sunk!");
+			this.clientWriter.flush();
+		}
+		
+		//The opponent's own fire command flushes their output.
+		Client opponent = this.clientGameManager.getOpponent(this);
+		if(opponent.binaryProtocol != null)
+			opponent.binaryProtocol.sendShipSunk(BinaryProtocol.OPPONENT_SHIP, sunkShip);
+		else
+			opponent.clientWriter.println("You sank " + this.getPlayerName() + "'s " + sunkShip.type + "!");
 	}
 	
 	/**
@@ -84,62 +297,955 @@ public class Client {
 	}
 		
 	/**
-	 * As long as both players have ships remaining on their board, repeatedly asks user to input command then processes.
+	 * Reports whether the player has placed their whole fleet and is waiting for the game to begin.
+	 * @return True once all ships are placed.
 	 */
-	protected void playGame() throws IOException {
-		//Notify the user the game has begun and print the game menu.
-		this.clientWriter.println(NEW_LINE_CHARACTER + NEW_LINE_CHARACTER + "Player 2 has joined the game. Begin!");
+	protected boolean isReadyToPlay() {
+		return this.clientState == CLIENTSTATE.WAITING_FOR_OPPONENT || this.clientState == CLIENTSTATE.PLAYING;
+	}
+	
+	/**
+	 * Reads lines from the player until the game ends or the connection is lost, handing each to processLine().
+	 * Used by the blocking transport, which dedicates a thread to each player.
+	 */
+	protected void readCommands() {
+		//The connection this thread serves; it stops reading if a resumed session moves the player to another one.
+		BufferedReader connectionReader = this.clientReader;
+		PrintWriter connectionWriter = this.clientWriter;
+		try {
+			//Block until the player sends their next line; the thread is parked rather than spinning while the player thinks.
+			String commandLine;
+			while(this.clientState != CLIENTSTATE.FINISHED && this.clientReader == connectionReader && (commandLine = readLimitedLine(connectionReader)) != null) {
+				this.processLine(commandLine);
+				//Leave later lines unread until the player has an opponent, as they may already hold ship placements.
+				this.awaitGame();
+			}
+		}
+		catch(IOException error) {
+			//Connection closed underneath us; handled below unless the game already ended.
+		}
+		catch(RuntimeException error) {
+			//A bug handling one player's input must not leave their opponent in a game that never ends; drop the connection as the non-blocking transport does.
+			System.out.println("Error serving player: " + error + ".");
+			ServerMetrics.handlerFailed();
+			try {
+				connectionReader.close();
+			}
+			catch(IOException closeError) {
+				System.out.println("Error closing connection: " + closeError + ".");
+			}
+			this.connectionLost(connectionWriter);
+			return;
+		}
 		
-		//StringTokenizer object that will be repeatedly used to process player commands
-		StringTokenizer nextCommand;
+		if(this.successor != null) {
+			//The player resumed a session; its client reads the rest of their lines.
+			this.successor.readCommands();
+			return;
+		}
 		
-		//While the player and their opponent have at least one ship remaining on their board, continue to process commands.
-		while(clientBoard.hasShipsRemaining() && this.clientGameManager.getOpponent(this).getClientGameBoard().hasShipsRemaining()) {
-			this.clientWriter.println("------------------------");
-			this.printMenu();
+		//A null line or a broken stream before the game is over means the player has disconnected.
+		this.connectionLost(connectionWriter);
+	}
+	
+	/**
+	 * Reads a line from the player as BufferedReader.readLine() does, but gives up on a line longer than ChannelConnection.MAX_LINE_LENGTH
+	 * rather than holding all of it, as the non-blocking transport drops the connection in the same case.
+	 * @param reader Reader of the player's connection.
+	 * @return The line without its terminator, or null at the end of the stream.
+	 * @throws IOException If the connection fails or the line is too long.
+	 */
+	private static String readLimitedLine(BufferedReader reader) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int nextChar;
+		while((nextChar = reader.read()) >= 0) {
+			if(nextChar == '\n')
+				return line.toString();
+			if(nextChar == '\r') {
+				//A carriage return ends the line on its own, or with a new line straight after it.
+				reader.mark(1);
+				if(reader.read() != '\n')
+					reader.reset();
+				return line.toString();
+			}
+			if(line.length() >= ChannelConnection.MAX_LINE_LENGTH)
+				throw new IOException("line too long");
+			line.append((char) nextChar);
+		}
+		return line.length() > 0 ? line.toString() : null;
+	}
+	
+	/**
+	 * Handles the loss of a connection to this player, unless the game has already ended or the player has since moved to another connection.
+	 * A player with a session keeps their game for the lobby's grace period; otherwise the game manager is told, and the opponent wins.
+	 * @param lostWriter Writer of the connection that was lost.
+	 */
+	protected void connectionLost(PrintWriter lostWriter) {
+		if(this.clientState == CLIENTSTATE.FINISHED || lostWriter != this.clientWriter)
+			return;
+		if(this.spectatorFeed != null) {
+			//The game forgets the feed when it next sends a frame.
+			this.spectatorFeed.close();
+			this.disconnect();
+			return;
+		}
+		//A player still in the lobby only needs to leave it, unless they were paired just now.
+		if(this.clientGameManager == null && this.clientLobby.playerLeft(this))
+			return;
+		//Paired just as the connection was lost: the matchmaker may not yet have handed the player to their game.
+		GameManager gameManager = this.awaitGameManager();
+		if(gameManager == null)
+			return;
+		gameManager.submit(() -> {
+			//The game may have ended, or the player resumed on another connection, while this message waited.
+			if(this.clientState == CLIENTSTATE.FINISHED || lostWriter != this.clientWriter)
+				return;
+			if(this.sessionToken != null && this.clientLobby.sessionDetached(this, lostWriter))
+				return;
+			gameManager.playerDisconnected(this);
+		});
+	}
+	
+	/**
+	 * Reports whether the player's input and output currently go through a connection, so its transport can stop delivering input once the player has moved to another.
+	 * @param connectionWriter Writer of the connection.
+	 * @return True if the player writes through the connection.
+	 */
+	protected boolean isConnectedThrough(PrintWriter connectionWriter) {
+		return this.clientWriter == connectionWriter;
+	}
+	
+	/**
+	 * Returns the client now receiving this player's input: the client of the session the player resumed, if any, otherwise this one.
+	 * Transports delivering lines themselves call this after each line, as any line may hand the connection over.
+	 * @return Client which should receive the player's next line.
+	 */
+	protected Client connectionOwner() {
+		Client owner = this;
+		while(owner.successor != null)
+			owner = owner.successor;
+		return owner;
+	}
+	
+	/**
+	 * Processes one line of player input according to where the player is in the game: straight away while they are in the lobby,
+	 * and as a message to their game once they have one. Transports call this once per received line.
+	 * @param line Line of input without its line terminator.
+	 */
+	protected void processLine(String line) {
+		GameManager gameManager = this.clientGameManager;
+		if(gameManager == null) {
+			//Until the player joins a game, nothing but their own connection touches their client.
+			this.handleLine(line);
+			return;
+		}
+		gameManager.submit(() -> this.handleLine(line));
+	}
+	
+	/**
+	 * Handles one line of player input according to where the player is in the game.
+	 * @param line Line of input without its line terminator.
+	 */
+	private void handleLine(String line) {
+		switch (this.clientState) {
+			case CHOOSING_NAME:
+				if(line.equals(BinaryProtocol.HELLO_LINE)) {
+					//Only the non-blocking transport can switch a connection to the binary protocol.
+					this.clientWriter.println("This server only speaks the text protocol.");
+					GameManager.promptForName(this);
+					break;
+				}
+				this.nameChosen(line);
+				break;
+			case PLACING_SHIPS:
+				if(line.trim().equalsIgnoreCase(AUTO_PLACE_COMMAND)) {
+					this.autoPlaceShips();
+					break;
+				}
+				this.placementFinished(this.clientGameManager.placeShip(this, SHIPTYPES.values()[shipsPlaced], line));
+				break;
+			case WAITING_FOR_OPPONENT:
+				//Commands are only accepted once both fleets are placed.
+				this.opponentNotReady();
+				break;
+			case PLAYING:
+				this.processCommand(line);
+				break;
+			default:
+				//Input after the game has ended is ignored; transports hold input while the player waits for a game.
+		}
+	}
+	
+	/**
+	 * Processes one binary protocol frame from the player according to where the player is in the game: straight away while they are in the lobby or their game is idle,
+	 * otherwise as a copy sent to their game's mailbox. The non-blocking transport calls this once per received frame after the connection has switched protocols.
+	 * @param frame Frame positioned at its message type, limited to its end. Only valid for the duration of the call.
+	 */
+	protected void processFrame(ByteBuffer frame) {
+		GameManager gameManager = this.clientGameManager;
+		if(gameManager == null) {
+			this.handleFrame(frame);
+			return;
+		}
+		if(gameManager.tryEnter()) {
+			try {
+				this.handleFrame(frame);
+			}
+			finally {
+				gameManager.leave();
+			}
+			return;
+		}
 		
-			//Print the player's and opponent's board.
-			this.drawBoards();
-			
-			//Wait for another command from the player.
-			this.clientWriter.println("Waiting for next command.");
-			
-			//Flush buffer to ensure messages are displayed to player.
-			this.clientWriter.flush();
-			
-			//Get and process next line.
-			while(!(this.clientReader.ready())) {}
-			nextCommand = new StringTokenizer(this.clientReader.readLine(), " ");
-			
-			//Get the user's command character to ensure
-			String userCommand = nextCommand.nextToken();
-			
-			switch (userCommand) {
-				case "F":
-					if(nextCommand.countTokens() != 2)
-						//Malformed fire command; too many or not enough parameters.
+		//The transport reuses the frame's bytes once this returns.
+		byte[] frameBytes = new byte[frame.remaining()];
+		frame.get(frameBytes);
+		gameManager.submit(() -> this.handleFrame(ByteBuffer.wrap(frameBytes)));
+	}
+	
+	/**
+	 * Handles one binary protocol frame from the player according to where the player is in the game.
+	 * @param frame Frame positioned at its message type, limited to its end.
+	 */
+	private void handleFrame(ByteBuffer frame) {
+		byte messageType = frame.get();
+		
+		try {
+			switch (this.clientState) {
+				case CHOOSING_NAME:
+					if(messageType != BinaryProtocol.NAME)
 						break;
-					//Process fire command.
-					this.processFireCommand(nextCommand.nextToken(), nextCommand.nextToken());
-				case "C":
-					if(!(nextCommand.countTokens() > 0))
-						//Malformed chat command; not enough parameters.
+					this.nameChosen(readText(frame));
+					return;
+				case PLACING_SHIPS:
+					if(messageType == BinaryProtocol.AUTO_PLACE) {
+						this.autoPlaceShips();
+						return;
+					}
+					if(messageType != BinaryProtocol.PLACE)
 						break;
-					//Get player's message and send to opponent.
-					String message = "";
-					while(nextCommand.hasMoreTokens())
-						message += nextCommand.nextToken();
-					this.processChatCommand(message);
-				case "D":
-					if(nextCommand.countTokens() != 0)
-						//Malformed draw command; too many parameters.
+					int sternRow = frame.get() & 0xFF;
+					int sternColumn = frame.get() & 0xFF;
+					HEADING heading = HEADING.values()[frame.get() & 0xFF];
+					this.placementFinished(this.clientGameManager.placeShip(this, SHIPTYPES.values()[shipsPlaced], readText(frame), sternRow, sternColumn, heading));
+					return;
+				case WAITING_FOR_OPPONENT:
+					this.opponentNotReady();
+					return;
+				case PLAYING:
+					this.processBinaryCommand(messageType, frame);
+					return;
+				default:
+					//Input after the game has ended is ignored; transports hold input while the player waits for a game.
+					return;
+			}
+		}
+		catch(BufferUnderflowException | IndexOutOfBoundsException error) {
+			//Frame too short for its message type, or a heading out of range; reported below.
+		}
+		
+		this.binaryProtocol.sendText(BinaryProtocol.ERROR, "Malformed message, ignoring.");
+		if(this.clientState == CLIENTSTATE.CHOOSING_NAME)
+			GameManager.promptForName(this);
+		else
+			this.clientGameManager.promptForShip(this, SHIPTYPES.values()[shipsPlaced]);
+	}
+	
+	/**
+	 * Processes one binary protocol game command, then ends the game or asks for the next command.
+	 * @param messageType Type of message.
+	 * @param frame Rest of the frame.
+	 */
+	private void processBinaryCommand(byte messageType, ByteBuffer frame) {
+		ServerMetrics.commandHandled(messageType == BinaryProtocol.FIRE ? CommandDecoder.FIRE
+				: messageType == BinaryProtocol.CHAT ? CommandDecoder.CHAT
+				: messageType == BinaryProtocol.DRAW ? CommandDecoder.DRAW : CommandDecoder.UNKNOWN);
+		try {
+			switch (messageType) {
+				case BinaryProtocol.FIRE:
+					int row = frame.get() & 0xFF;
+					int column = frame.get() & 0xFF;
+					if(!(this.clientGameManager.isTurnOf(this))) {
+						this.binaryProtocol.sendText(BinaryProtocol.ERROR, "It is not your turn.");
 						break;
+					}
+					this.processFireCommand(row, column);
+					break;
+				case BinaryProtocol.CHAT:
+					this.processChatCommand(readText(frame));
+					break;
+				case BinaryProtocol.DRAW:
+					this.drawBoards();
+					break;
+				default:
+					this.binaryProtocol.sendText(BinaryProtocol.ERROR, "Unknown message, ignoring.");
+			}
+		}
+		catch(BufferUnderflowException | IndexOutOfBoundsException error) {
+			//Frame too short, or a shot off the board.
+			this.binaryProtocol.sendText(BinaryProtocol.ERROR, "Malformed message, ignoring.");
+		}
+		
+		this.finishCommand();
+	}
+	
+	/**
+	 * Reads the rest of a frame as text.
+	 * @param frame Frame positioned at the start of the text.
+	 * @return The text.
+	 */
+	private static String readText(ByteBuffer frame) {
+		String text = new String(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining(), StandardCharsets.UTF_8);
+		frame.position(frame.limit());
+		return text;
+	}
+	
+	/**
+	 * Switches the player to the binary protocol, confirming the switch and repeating any outstanding request for their name.
+	 * Called by the transport once the player has asked for the switch and their input is being read as frames.
+	 * @param playerOutput Stream to the player for binary frames.
+	 */
+	protected void useBinaryProtocol(OutputStream playerOutput) {
+		this.binaryProtocol = new BinaryProtocol(playerOutput);
+		this.binaryProtocol.sendHello();
+		if(this.clientState == CLIENTSTATE.CHOOSING_NAME)
+			GameManager.promptForName(this);
+	}
+	
+	/**
+	 * Moves the player on once they have answered the name prompt. A player in a lobby may instead be resuming a session, which then takes over their connection;
+	 * otherwise they are given a session and wait in the lobby for an opponent. A player added straight to a game goes on to place their ships.
+	 * @param name Player's reply to the name prompt.
+	 */
+	private void nameChosen(String name) {
+		if(this.clientGameManager == null) {
+			if(this.clientLobby.resumePlayer(this, name) || this.clientLobby.watchGame(this, name))
+				return;
+			this.setPlayerName(limitName(name));
+			this.clientLobby.playerNamed(this);
+			return;
+		}
+		
+		this.setPlayerName(limitName(name));
+		this.clientState = CLIENTSTATE.PLACING_SHIPS;
+		this.clientGameManager.playerNamed(this);
+		this.clientGameManager.promptForShip(this, SHIPTYPES.values()[shipsPlaced]);
+	}
+	
+	/**
+	 * Cuts a name chosen by a player to MAX_NAME_LENGTH characters, without splitting a surrogate pair.
+	 * @param name Name as sent by the player.
+	 * @return The name, or as much of it as is allowed.
+	 */
+	private static String limitName(String name) {
+		if(name.length() <= MAX_NAME_LENGTH)
+			return name;
+		int nameLength = Character.isHighSurrogate(name.charAt(MAX_NAME_LENGTH - 1)) ? MAX_NAME_LENGTH - 1 : MAX_NAME_LENGTH;
+		return name.substring(0, nameLength);
+	}
+	
+	/**
+	 * Called by the lobby when there is no opponent for the player yet. Tells the player to wait.
+	 */
+	protected void waitForGame() {
+		this.clientState = CLIENTSTATE.WAITING_FOR_GAME;
+		this.sendNotice("Waiting for an opponent to connect.");
+	}
+	
+	/**
+	 * Reports whether the player is waiting in the lobby for an opponent, so a transport delivering lines itself may hold them until the player has one.
+	 * @return True from when the lobby leaves the player waiting until their game starts.
+	 */
+	protected boolean isWaitingForGame() {
+		return this.clientState == CLIENTSTATE.WAITING_FOR_GAME;
+	}
+	
+	/**
+	 * Sets what to call once the player leaves the lobby for a game. Transports holding input while isWaitingForGame() call this before delivering any.
+	 * @param inputResumer Callback delivering the player's held input.
+	 */
+	protected void setInputResumer(Runnable inputResumer) {
+		this.inputResumer = inputResumer;
+	}
+	
+	/**
+	 * Sets what to call with the feed of a player who starts watching a game, to have their transport write its frames.
+	 * @param feedWriter Callback writing a feed's frames to the player's connection.
+	 */
+	protected void setFeedWriter(Consumer<SpectatorFeed> feedWriter) {
+		this.feedWriter = feedWriter;
+	}
+	
+	/**
+	 * Sets the player's connection as their game writes to it, for the same connection as the client's writer.
+	 * @param playerOutput Output of the player's transport.
+	 */
+	protected void setPlayerOutput(PlayerOutput playerOutput) {
+		this.playerOutput = playerOutput;
+	}
+	
+	/**
+	 * Holds back the player's output until releaseOutput() is called, so everything one turn sends them leaves in a single write.
+	 * Called by the game manager as it starts handling a message.
+	 */
+	protected void holdOutput() {
+		PlayerOutput output = this.playerOutput;
+		if(output != null)
+			output.hold();
+	}
+	
+	/**
+	 * Writes whatever the player's output held back. Called by the game manager once it has handled the messages in hand.
+	 */
+	protected void releaseOutput() {
+		PlayerOutput output = this.playerOutput;
+		if(output != null)
+			output.release();
+	}
+	
+	/**
+	 * Makes the player a spectator of a game: their input is ignored from now on, and the game's frames are written to them until it ends.
+	 * Called by the lobby on the thread delivering the player's reply to the name prompt.
+	 * @param gameManager Manager of the game to watch.
+	 * @return False if the player's transport cannot send them a game, and they were not made a spectator.
+	 */
+	protected boolean watchGame(GameManager gameManager) {
+		if(this.feedWriter == null || this.binaryProtocol != null)
+			return false;
+		SpectatorFeed feed = new SpectatorFeed();
+		this.spectatorFeed = feed;
+		this.clientState = CLIENTSTATE.SPECTATING;
+		this.sendNotice("Watching game " + gameManager.getGameId() + ". Ships are hidden until hit.");
+		gameManager.submit(() -> gameManager.addSpectator(feed));
+		this.feedWriter.accept(feed);
+		return true;
+	}
+	
+	/**
+	 * Blocks the calling reader thread while the player waits in the lobby for an opponent.
+	 */
+	private synchronized void awaitGame() {
+		try {
+			while(this.clientState == CLIENTSTATE.WAITING_FOR_GAME)
+				this.wait();
+		}
+		catch(InterruptedException error) {
+			//Server shutting down; the reader carries on and finds the connection closed.
+		}
+	}
+	
+	/**
+	 * Moves the player on from the lobby to placing ships, waking the reader thread or transport holding their input.
+	 */
+	private void leaveLobby() {
+		synchronized(this) {
+			this.clientState = CLIENTSTATE.PLACING_SHIPS;
+			this.notifyAll();
+		}
+		if(this.inputResumer != null)
+			this.inputResumer.run();
+	}
+	
+	/**
+	 * Gives the player a session held by a lobby, which they can resume on a new connection if this one is lost.
+	 * @param lobby Lobby holding the session.
+	 * @param token Token identifying the session.
+	 */
+	protected void startSession(PlayerLobby lobby, String token) {
+		this.clientLobby = lobby;
+		this.sessionToken = token;
+	}
+	
+	/**
+	 * Simple accessor method to return the player's session token.
+	 * @return Token identifying the player's session, null if they have none.
+	 */
+	protected String getSessionToken() {
+		return this.sessionToken;
+	}
+	
+	/**
+	 * Called by the lobby once the player's connection has been lost. Their game and boards are kept, but output is discarded until they resume on a new connection.
+	 * @param lostWriter Writer of the connection that was lost.
+	 * @return True if the player is now detached; false if they had already moved to another connection or their game has ended.
+	 */
+	protected synchronized boolean detach(PrintWriter lostWriter) {
+		if(this.clientState == CLIENTSTATE.FINISHED || lostWriter != this.clientWriter)
+			return false;
+		this.clientReader = null;
+		this.clientWriter = new PrintWriter(OutputStream.nullOutputStream());
+		this.binaryProtocol = null;
+		this.playerOutput = null;
+		this.detachedNanos = Math.max(1, System.nanoTime());
+		return true;
+	}
+	
+	/**
+	 * Reports how long the player has been without a connection.
+	 * @param nowNanos Current System.nanoTime().
+	 * @return Nanoseconds since the player's connection was lost, or -1 if they are connected.
+	 */
+	protected synchronized long detachedFor(long nowNanos) {
+		return this.detachedNanos == 0 ? -1 : nowNanos - this.detachedNanos;
+	}
+	
+	/**
+	 * Reports whether the player's connection has been lost and they have not yet resumed.
+	 * @return True while the player is detached.
+	 */
+	protected synchronized boolean isDetached() {
+		return this.detachedNanos != 0;
+	}
+	
+	/**
+	 * Ends the game of a player who did not resume their session within the grace period; their opponent wins. Has no effect if the player has resumed meanwhile.
+	 */
+	protected void evict() {
+		this.clientGameManager.submit(() -> {
+			if(!(this.isDetached()) || this.clientState == CLIENTSTATE.FINISHED)
+				return;
+			System.out.println("Game " + this.clientGameManager.getGameId() + ": " + this.playerName + " did not reconnect in time.");
+			this.clientGameManager.playerDisconnected(this);
+		});
+	}
+	
+	/**
+	 * Called by a game manager when the player is added to its game.
+	 * @param gameManager Manager of the player's game.
+	 */
+	protected synchronized void joinGame(GameManager gameManager) {
+		this.clientGameManager = gameManager;
+		this.notifyAll();
+	}
+	
+	/**
+	 * Blocks until the player has been added to a game, for a player whose connection was lost just as the matchmaker paired them.
+	 * @return Manager of the player's game, or null if the thread was interrupted first.
+	 */
+	private synchronized GameManager awaitGameManager() {
+		try {
+			while(this.clientGameManager == null)
+				this.wait();
+		}
+		catch(InterruptedException error) {
+			//Server shutting down; nothing is left to tell.
+		}
+		return this.clientGameManager;
+	}
+	
+	/**
+	 * Simple accessor method to return the manager of the player's game.
+	 * @return Game manager, null while the player waits in the lobby.
+	 */
+	protected GameManager getGameManager() {
+		return this.clientGameManager;
+	}
+	
+	/**
+	 * Reports whether the player has been added to a game.
+	 * @return True once the player has a game manager.
+	 */
+	protected boolean hasGame() {
+		return this.clientGameManager != null;
+	}
+	
+	/**
+	 * Reports whether the player's game has ended, or the player left before it began.
+	 * @return True once the player is finished.
+	 */
+	protected boolean isFinished() {
+		return this.clientState == CLIENTSTATE.FINISHED;
+	}
+	
+	/**
+	 * Sends the player a line of text, as an ERROR frame if they use the binary protocol.
+	 * @param notice Text to send.
+	 */
+	protected void sendNotice(String notice) {
+		if(this.binaryProtocol != null) {
+			this.binaryProtocol.sendText(BinaryProtocol.ERROR, notice);
+			return;
+		}
+		this.clientWriter.println(notice);
+		this.clientWriter.flush();
+	}
+	
+	/**
+	 * Moves the player on after an attempt to place a ship: to the next ship, to waiting for their opponent once the fleet is complete, or back to the same ship if placement failed.
+	 * @param shipPlaced True if the ship was added to the player's board.
+	 */
+	private void placementFinished(boolean shipPlaced) {
+		if(shipPlaced) {
+			//Player successfully added a ship to their board. Print the boards for them.
+			shipsPlaced++;
+			this.drawBoards();
+			
+			if(shipsPlaced == SHIPTYPES.values().length) {
+				//Whole fleet placed; wait for the opponent.
+				if(this.binaryProtocol == null)
 					this.drawBoards();
-				default: 
-					this.clientWriter.println("Malformed command, ignoring." + NEW_LINE_CHARACTER);
-					this.printMenu();
-					this.clientWriter.flush();
-			}					
+				this.fleetReady();
+				return;
+			}
+		}
+		//Ask for the next ship, or the same one again if placement failed.
+		this.clientGameManager.promptForShip(this, SHIPTYPES.values()[shipsPlaced]);
+	}
+	
+	/**
+	 * Places the rest of the player's fleet at random around the ships they have already placed, then waits for the opponent.
+	 */
+	private void autoPlaceShips() {
+		if(!(new FleetGenerator(clientBoard.getNumRows(), clientBoard.getNumColumns(), ThreadLocalRandom.current()).placeShips(clientBoard, shipsPlaced))) {
+			//Only possible on a crowded board; the player can still place the ships themselves.
+			if(this.binaryProtocol != null)
+				this.binaryProtocol.sendMessage(BinaryProtocol.PLACEMENT_REJECTED, shipsPlaced);
+			else
+				this.clientWriter.println("There is no room to place the rest of your fleet at random. Please place it yourself.");
+			this.clientGameManager.promptForShip(this, SHIPTYPES.values()[shipsPlaced]);
+			return;
+		}
+		
+		shipsPlaced = SHIPTYPES.values().length;
+		this.drawBoards();
+		this.fleetReady();
+	}
+	
+	/**
+	 * Called by the game manager once every player has joined. Asks the player to place their first ship, or for their name if they have not yet chosen one;
+	 * players who need no prompting override this.
+	 */
+	protected void gameStarted() {
+		if(this.playerName == null) {
+			GameManager.promptForName(this);
+			return;
+		}
+		
+		this.clientGameManager.promptForShip(this, SHIPTYPES.values()[shipsPlaced]);
+		this.leaveLobby();
+	}
+	
+	/**
+	 * Replays a shot this player fired before the server restarted: the opponent's board and this player's view of it are updated as in processFireCommand(),
+	 * but nobody is told, as nobody is connected yet. Used while rebuilding a recovered game.
+	 * @param rowNumber Row attacked.
+	 * @param columnNumber Column attacked.
+	 */
+	protected void restoreShot(int rowNumber, int columnNumber) {
+		Ship shipHit = this.clientGameManager.getOpponent(this).getClientGameBoard().fireMissile(rowNumber, columnNumber);
+		this.opponentBoard.recordShot(rowNumber, columnNumber, shipHit);
+		this.shotFired(rowNumber, columnNumber, shipHit);
+		this.clientGameManager.getOpponent(this).reportShipSunk();
+	}
+	
+	/**
+	 * Works out where a player of a recovered game had got to from the ships on their board: still placing ships, or waiting for their opponent.
+	 * The game manager starts play once every player is ready. Used while rebuilding a recovered game.
+	 */
+	protected void restoreState() {
+		this.shipsPlaced = Math.min(this.clientBoard.boardShips.size(), SHIPTYPES.values().length);
+		this.clientState = this.shipsPlaced == SHIPTYPES.values().length ? CLIENTSTATE.WAITING_FOR_OPPONENT : CLIENTSTATE.PLACING_SHIPS;
+		this.resendBoards = true;
+	}
+	
+	/**
+	 * Takes over the connection of a player who has reconnected to resume this client's session, closing any connection the session still had,
+	 * then brings them up to date in a single catch-up. The reconnected player's own client is finished and hands its input to this one.
+	 * Runs as a message to the session's game.
+	 * @param returningPlayer Client created for the reconnected player.
+	 * @return False if the session's game has already ended.
+	 */
+	protected boolean adoptConnection(Client returningPlayer) {
+		PrintWriter previousWriter;
+		synchronized(this) {
+			if(this.clientState == CLIENTSTATE.FINISHED)
+				return false;
+			previousWriter = this.clientWriter;
+			this.clientReader = returningPlayer.clientReader;
+			this.clientWriter = returningPlayer.clientWriter;
+			this.binaryProtocol = returningPlayer.binaryProtocol;
+			this.playerOutput = returningPlayer.playerOutput;
+			this.detachedNanos = 0;
+			returningPlayer.successor = this;
+			returningPlayer.clientState = CLIENTSTATE.FINISHED;
+		}
+		//A connection the server has not yet noticed is dead is closed; its transport then finds the player has moved on.
+		previousWriter.close();
+		
+		System.out.println("Game " + this.clientGameManager.getGameId() + ": " + this.playerName + " has reconnected.");
+		Client opponent = this.clientGameManager.getOpponent(this);
+		if(opponent.binaryProtocol == null) {
+			opponent.clientWriter.println(this.playerName.trim() + " has reconnected.");
+			opponent.clientWriter.flush();
+		}
+		this.sendCatchUp();
+		return true;
+	}
+	
+	/**
+	 * Brings a player who has resumed their session up to date: the cells of both boards that changed since they were last told,
+	 * or both boards whole if their game was recovered after a restart, then the prompt for wherever they had got to. Text players receive it all in one flush.
+	 */
+	private void sendCatchUp() {
+		if(this.binaryProtocol != null) {
+			if(this.resendBoards)
+				this.drawBoards();
+			else
+				this.binaryProtocol.sendChangedCells(this.clientBoard, this.opponentBoard);
+		}
+		else {
+			this.clientWriter.println("Welcome back to game " + this.clientGameManager.getGameId() + ", " + this.playerName.trim() + ".");
+			if(this.resendBoards)
+				this.drawBoards();
+			else {
+				this.clientBoard.writeChangedCells(this.clientWriter, "Your board: ");
+				this.opponentBoard.writeChangedCells(this.clientWriter, "Target board: ");
+			}
+		}
+		this.resendBoards = false;
+		
+		switch (this.clientState) {
+			case PLACING_SHIPS:
+				this.clientGameManager.promptForShip(this, SHIPTYPES.values()[shipsPlaced]);
+				break;
+			case WAITING_FOR_OPPONENT:
+				this.opponentNotReady();
+				break;
+			default:
+				this.requestCommand();
+		}
+	}
+	
+	/**
+	 * Marks the player's whole fleet as placed and tells the game manager, which starts the game once every player is ready.
+	 */
+	protected void fleetReady() {
+		this.clientWriter.flush();
+		this.clientState = CLIENTSTATE.WAITING_FOR_OPPONENT;
+		this.clientGameManager.playerReady(this);
+	}
+	
+	/**
+	 * Tells a player who has placed their fleet that commands are not accepted until their opponent has placed theirs.
+	 */
+	private void opponentNotReady() {
+		if(this.binaryProtocol != null) {
+			this.binaryProtocol.sendMessage(BinaryProtocol.OPPONENT_NOT_READY);
+			return;
+		}
+		this.printFixed(ProtocolText.OPPONENT_NOT_READY);
+		this.clientWriter.flush();
+	}
+	
+	/**
+	 * Called by the game manager once every player has placed their fleet. Announces the start of the game and prompts for the first command.
+	 */
+	protected void startPlaying() {
+		this.clientState = CLIENTSTATE.PLAYING;
+		
+		if(this.binaryProtocol != null) {
+			this.promptForCommand();
+			return;
+		}
+		
+		//Notify the user the game has begun and print the game menu.
+		this.clientWriter.println(NEW_LINE_CHARACTER + NEW_LINE_CHARACTER + "Player 2 has joined the game. Begin!");
+		this.promptForCommand();
+	}
+	
+	/**
+	 * Prints the menu and both boards, then asks the player for their next command.
+	 * A player who has asked for changes only is sent just the cells that changed since they were last told.
+	 */
+	protected void promptForCommand() {
+		if(this.binaryProtocol != null) {
+			//Bots follow the game from shot results; they ask for the boards when they want them.
+			this.requestCommand();
+			return;
+		}
+		
+		if(this.sendChangesOnly) {
+			this.clientBoard.writeChangedCells(this.clientWriter, "Your board: ");
+			this.opponentBoard.writeChangedCells(this.clientWriter, "Target board: ");
+			this.requestCommand();
+			return;
+		}
+		
+		this.printFixed(ProtocolText.DIVIDER);
+		this.printMenu();
+		
+		//Print the player's and opponent's board.
+		this.drawBoards();
+		
+		//Wait for another command from the player.
+		this.requestCommand();
+	}
+	
+	/**
+	 * Asks the player for their next command if it is their turn to fire, otherwise tells them whose turn it is. Bots are only asked on their turn.
+	 * Flushes the player's output.
+	 */
+	private void requestCommand() {
+		boolean playersTurn = this.clientGameManager.isTurnOf(this);
+		if(this.binaryProtocol != null) {
+			if(playersTurn)
+				this.binaryProtocol.sendMessage(BinaryProtocol.COMMAND_REQUEST);
+			return;
+		}
+		
+		if(playersTurn)
+			this.printFixed(ProtocolText.COMMAND_PROMPT);
+		else
+			this.clientWriter.println("Waiting for " + this.clientGameManager.getOpponent(this).getPlayerName().trim() + " to fire.");
+		
+		//Flush buffer to ensure messages are displayed to player.
+		this.clientWriter.flush();
+	}
+	
+	/**
+	 * Processes one game command from the player. Ends the game if either player has no ships remaining, otherwise prompts for the next command.
+	 * @param commandLine Line of input holding the command and its parameters.
+	 */
+	protected void processCommand(String commandLine) {
+		this.commandDecoder.decode(commandLine);
+		this.executeCommand();
+	}
+	
+	/**
+	 * Processes one game command read straight from the bytes the transport received, without first making a String of them if the player's game is idle.
+	 * @param line Bytes holding the line, in the platform's default character set.
+	 * @param start Index of the line's first byte.
+	 * @param end Index just past the line's last byte, excluding the line terminator.
+	 */
+	protected void processCommand(byte[] line, int start, int end) {
+		GameManager gameManager = this.clientGameManager;
+		if(gameManager.tryEnter()) {
+			try {
+				//The game may have ended since the transport checked isPlaying().
+				if(this.clientState == CLIENTSTATE.PLAYING) {
+					this.commandDecoder.decode(line, start, end);
+					this.executeCommand();
+				}
+			}
+			finally {
+				gameManager.leave();
+			}
+			return;
+		}
+		
+		//The transport reuses the line's bytes once this returns, so the game is sent a copy.
+		String commandLine = new String(line, start, end - start, Charset.defaultCharset());
+		gameManager.submit(() -> this.handleLine(commandLine));
+	}
+	
+	/**
+	 * Reports whether the player is playing, so a transport may hand their lines to processCommand() as bytes.
+	 * @return True once the game has begun and until it ends.
+	 */
+	protected boolean isPlaying() {
+		return this.clientState == CLIENTSTATE.PLAYING;
+	}
+	
+	/**
+	 * Carries out the command last decoded by commandDecoder, then ends the game or prompts for the next command.
+	 */
+	private void executeCommand() {
+		CommandDecoder command = this.commandDecoder;
+		ServerMetrics.commandHandled(command.command);
+		
+		switch (command.command) {
+			case CommandDecoder.NONE:
+				//Ignore blank lines rather than failing to read a command character.
+				this.promptForCommand();
+				return;
+			case CommandDecoder.UPDATE_MODE:
+				if(command.parameterCount != 0) {
+					//Malformed update command; too many parameters.
+					this.printFixed(ProtocolText.MALFORMED_COMMAND);
+					break;
+				}
+				this.processUpdateModeCommand();
+				break;
+			case CommandDecoder.FIRE:
+				if(command.parameterCount != 2)
+					//Malformed fire command; too many or not enough parameters.
+					break;
+				if(!(command.coordinatesValid)) {
+					//Fire command coordinates were not numbers.
+					this.printFixed(ProtocolText.MALFORMED_COMMAND);
+					break;
+				}
+				if(!(this.clientGameManager.isTurnOf(this))) {
+					this.printFixed(ProtocolText.NOT_YOUR_TURN);
+					break;
+				}
+				try {
+					this.processFireCommand(command.row, command.column);
+				}
+				catch(IndexOutOfBoundsException error) {
+					//Fire command coordinates were off the board.
+					this.printFixed(ProtocolText.MALFORMED_COMMAND);
+				}
+				break;
+			case CommandDecoder.CHAT:
+				if(command.parameterCount == 0)
+					//Malformed chat command; not enough parameters.
+					break;
+				//Send the rest of the line to the opponent.
+				this.processChatCommand(command.message(Charset.defaultCharset()));
+				break;
+			case CommandDecoder.DRAW:
+				if(command.parameterCount != 0)
+					//Malformed draw command; too many parameters.
+					break;
+				this.drawBoards();
+				break;
+			default: 
+				this.printFixed(ProtocolText.MALFORMED_COMMAND);
+				this.printMenu();
+				this.clientWriter.flush();
+		}
+		
+		this.finishCommand();
+	}
+	
+	/**
+	 * Ends the game if either player has no ships remaining after a command, otherwise prompts for the next command,
+	 * and prompts the opponent too if the command passed the turn to them.
+	 */
+	private void finishCommand() {
+		//While the player and their opponent have at least one ship remaining on their board, continue to process commands.
+		Client opponent = this.clientGameManager.getOpponent(this);
+		if(!(opponent.getClientGameBoard().hasShipsRemaining()))
+			this.clientGameManager.endGame(this);
+		else if(!(clientBoard.hasShipsRemaining()))
+			this.clientGameManager.endGame(opponent);
+		else {
+			this.promptForCommand();
+			//A detached opponent is prompted by their catch-up instead, which needs the changes drawing their boards now would clear.
+			if(this.firedThisCommand && this.clientGameManager.isTurnOf(opponent) && !(opponent.isDetached()))
+				opponent.promptForCommand();
+		}
+		this.firedThisCommand = false;
+	}
+	
+	/**
+	 * Marks the game as finished for this player, closes their connection and ends their session. Any output already written is flushed first.
+	 */
+	protected void disconnect() {
+		this.clientState = CLIENTSTATE.FINISHED;
+		this.clientWriter.close();
+		if(this.sessionToken != null)
+			this.clientLobby.sessionEnded(this);
+		
+		//Transports that deliver lines themselves have no reader to close.
+		if(this.clientReader == null)
+			return;
+		try {
+			this.clientReader.close();
+		}
+		catch(IOException error) {
+			System.out.println("Error closing connection: " + error + ".");
 		}
 	}
 	
@@ -147,13 +1253,22 @@ public class Client {
 	 * Prints a simple textual menu for the user.
 	 */
 	protected void printMenu() {
-		//The player will use "F" to specify "Fire", followed by the row and column number to attack.
-		this.clientWriter.println("To fire a missile, use F, followed by the row and column to attack.");
-		this.clientWriter.println("Example: F 2 2");
-		
-		//To talk trash to their opponent, the player will use "C", followed by the message they wish to send.
-		this.clientWriter.println("To send a message to your opponent, use C followed by your message.");
-		this.clientWriter.println("Example: C Let's play!");		
+		this.printFixed(ProtocolText.MENU);
+	}
+	
+	/**
+	 * Writes a piece of fixed protocol text after the text already written to the player: from the buffer every player shares if their transport takes one,
+	 * otherwise printed. Callers still flush afterwards, for players whose text is printed.
+	 * @param protocolText Text to write.
+	 */
+	protected void printFixed(ProtocolText protocolText) {
+		PlayerOutput output = this.playerOutput;
+		if(output == null) {
+			this.clientWriter.print(protocolText.getText());
+			return;
+		}
+		this.clientWriter.flush();
+		output.writeShared(protocolText.getFrame());
 	}
 	
 	/**
@@ -163,39 +1278,132 @@ public class Client {
 	 */
 	
 	protected boolean processChatCommand(String message) {
-		//Get the opponent's writer object and use it to send message to opponent.
-		this.clientGameManager.getOpponent(this).clientWriter.println(message);
+		if(!(this.chatAllowance.tryTake(System.nanoTime()))) {
+			ChatOutbox.messageRateLimited();
+			this.sendNotice("You are sending messages too quickly. Message not sent.");
+			return false;
+		}
+		
+		//Queue the message for the opponent; the game writes it once done with the messages in hand.
+		Client opponent = this.clientGameManager.getOpponent(this);
+		if(!(opponent.chatOutbox.offer(message))) {
+			this.sendNotice("Your opponent is not keeping up with your messages. Message not sent.");
+			return false;
+		}
+		this.clientGameManager.chatSent(this, message);
 		return true;
 	}
 	
+	/**
+	 * Writes the chat messages waiting for the player with a single flush, unless their transport is still sending them earlier output.
+	 * Messages left waiting are written when the game next handles a message. Called by the game manager once it has handled the messages in hand.
+	 */
+	protected void deliverChat() {
+		if(this.chatOutbox.isEmpty())
+			return;
+		//Messages to a player whose game has ended are discarded, as before.
+		boolean finished = this.clientState == CLIENTSTATE.FINISHED;
+		if(!(finished) && this.playerOutput != null && this.playerOutput.getQueuedBytes() > MAX_CHAT_BACKLOG_BYTES)
+			return;
+		
+		String message;
+		while((message = this.chatOutbox.poll()) != null) {
+			if(finished)
+				continue;
+			if(this.binaryProtocol != null)
+				this.binaryProtocol.sendText(BinaryProtocol.CHAT, message);
+			else
+				this.clientWriter.println(message);
+		}
+		if(this.binaryProtocol == null)
+			this.clientWriter.flush();
+	}
+	
+	/**
+	 * Processes user's update mode command, switching between full boards and changed cells only after each command.
+	 * Switching to changed cells sends both boards in full once, so later changes can be applied to them.
+	 */
+	protected void processUpdateModeCommand() {
+		this.sendChangesOnly = !(this.sendChangesOnly);
+		
+		if(this.sendChangesOnly) {
+			this.clientWriter.println("Sending changed cells only, as \"<board>: <row> <column> <cell>\". Use U to go back to full boards.");
+			this.drawBoards();
+		}
+		else
+			this.clientWriter.println("Sending full boards after each command.");
+	}
+	
 	/**
 	 * Processes user's fire command.
 	 */
 	protected boolean processFireCommand(String rowNumber, String columnNumber) {
-		Ship shipHit = this.clientGameManager.getOpponent(this).getClientGameBoard().fireMissile(new Position(Integer.valueOf(rowNumber).intValue(), Integer.valueOf(columnNumber).intValue()));
+		return this.processFireCommand(Integer.parseInt(rowNumber), Integer.parseInt(columnNumber));
+	}
+	
+	/**
+	 * Processes user's fire command once its coordinates have been read.
+	 * @param rowNumber Row to attack.
+	 * @param columnNumber Column to attack.
+	 * @return True if a ship was hit.
+	 */
+	protected boolean processFireCommand(int rowNumber, int columnNumber) {
+		Client opponent = this.clientGameManager.getOpponent(this);
+		GameBoard targetBoard = opponent.getClientGameBoard();
+		long fireStartNanos = System.nanoTime();
+		Ship shipHit = targetBoard.fireMissile(rowNumber, columnNumber);
+		//A shot off the board returns at once and is rejected below; timing it would drag the histogram down.
+		if(rowNumber >= 0 && rowNumber < targetBoard.getNumRows() && columnNumber >= 0 && columnNumber < targetBoard.getNumColumns())
+			ServerMetrics.missileFired(System.nanoTime() - fireStartNanos);
 		
 		//Set the ship for the cell attacked on our representation of the opponent's board equal to the returned ship.
-		//Get the cell attacked.
-		Cell attackedCell = this.opponentBoard.gameBoardCells.get(Integer.parseInt(rowNumber)).get(Integer.parseInt(columnNumber));
-			
-		//Let the cell know it has been attacked.
-		attackedCell.missileAttack();
-			
-		//Set the cell's ship to the ship that was hit.
-		attackedCell.setShip(shipHit);
+		this.opponentBoard.recordShot(rowNumber, columnNumber, shipHit);
+		
+		//The missile has landed, so it is the opponent's turn, even if they reply at once.
+		this.clientGameManager.turnTaken(this);
+		this.firedThisCommand = true;
+		
+		this.shotFired(rowNumber, columnNumber, shipHit);
+		//The sinking is reported after the hit, and before a computer opponent replies to the shot.
+		opponent.reportShipSunk();
+		opponent.shotReceived(rowNumber, columnNumber, shipHit);
+		return shipHit != null;
+	}
+	
+	/**
+	 * Tells the player the result of a shot they fired.
+	 * @param rowNumber Row attacked.
+	 * @param columnNumber Column attacked.
+	 * @param shipHit Ship that was hit, null if the shot missed.
+	 */
+	protected void shotFired(int rowNumber, int columnNumber, Ship shipHit) {
+		if(this.binaryProtocol != null) {
+			this.binaryProtocol.sendShot(BinaryProtocol.SHOT_RESULT, rowNumber, columnNumber, shipHit);
+			return;
+		}
 		
 		if(shipHit == null) {
-			//Miss; notify player and return false.
+			//Miss; notify player.
 			this.clientWriter.println("Miss at cell " + rowNumber + " " + columnNumber);
 			this.clientWriter.flush();
-			return false;
+			return;
 		}
 		
-		//The player hit one of their opponent's ships; tell them the ship name and return true.
+		//The player hit one of their opponent's ships; tell them the ship name.
 		this.clientWriter.println("HIT! " + shipHit.getName() + " hit at cell " + rowNumber + " " + columnNumber);		
 		this.clientWriter.flush();
-		
-		return true;
+	}
+	
+	/**
+	 * Called while handling the opponent's fire command, once a shot they fired at this player has landed and it is this player's turn.
+	 * Bots are told of incoming shots as they land; text players see them on their next board.
+	 * @param rowNumber Row attacked.
+	 * @param columnNumber Column attacked.
+	 * @param shipHit Ship that was hit, null if the shot missed.
+	 */
+	protected void shotReceived(int rowNumber, int columnNumber, Ship shipHit) {
+		if(this.binaryProtocol != null)
+			this.binaryProtocol.sendShot(BinaryProtocol.INCOMING_SHOT, rowNumber, columnNumber, shipHit);
 	}
 	
 	/**
@@ -0,0 +1,219 @@
+package battleship;
+
+import java.nio.charset.Charset;
+
+/**
+ * Reads a game command line into primitive fields without creating any objects.
+ * A player's Client keeps one decoder and reuses it for every command. Lines may be decoded straight from the bytes the transport received, or from a String.
+ * Words are separated by spaces. The first word selects the command; fire coordinates are read as ints and a chat message is kept as a slice of the line.
+ */
+public class CommandDecoder {
+
+	//Values of command.
+	protected static final int NONE = 0;
+	protected static final int FIRE = 1;
+	protected static final int CHAT = 2;
+	protected static final int DRAW = 3;
+	protected static final int UPDATE_MODE = 4;
+	protected static final int UNKNOWN = 5;
+
+	/**
+	 * Command on the last line decoded; NONE for a blank line.
+	 */
+	protected int command;
+
+	/**
+	 * Number of words following the command word.
+	 */
+	protected int parameterCount;
+
+	/**
+	 * Row of a fire command.
+	 */
+	protected int row;
+
+	/**
+	 * Column of a fire command.
+	 */
+	protected int column;
+
+	/**
+	 * False if a fire command's first two parameters are not both whole numbers.
+	 */
+	protected boolean coordinatesValid;
+
+	/**
+	 * Index of the first character of a chat message in the line, and the index just past its last.
+	 */
+	protected int messageStart, messageEnd;
+
+	/**
+	 * Line being decoded when it was received as bytes; null when it is a String.
+	 */
+	private byte[] byteLine;
+
+	/**
+	 * Line being decoded when it is a String; null when it was received as bytes.
+	 */
+	private CharSequence textLine;
+
+	/**
+	 * Decodes a command line received as bytes. The decoder refers to the bytes until the next line is decoded.
+	 * @param line Bytes holding the line.
+	 * @param start Index of the line's first byte.
+	 * @param end Index just past the line's last byte, excluding the line terminator.
+	 */
+	protected void decode(byte[] line, int start, int end) {
+		this.byteLine = line;
+		this.textLine = null;
+		this.decode(start, end);
+	}
+
+	/**
+	 * Decodes a command line held as text. The decoder refers to the text until the next line is decoded.
+	 * @param line The line, without its line terminator.
+	 */
+	protected void decode(CharSequence line) {
+		this.byteLine = null;
+		this.textLine = line;
+		this.decode(0, line.length());
+	}
+
+	/**
+	 * Returns the chat message of the last line decoded. Unlike the rest of decoding, this creates a String.
+	 * @param charset Character set of a line received as bytes.
+	 * @return The message, without leading or trailing spaces.
+	 */
+	protected String message(Charset charset) {
+		if(byteLine != null)
+			return new String(byteLine, messageStart, messageEnd - messageStart, charset);
+		return textLine.subSequence(messageStart, messageEnd).toString();
+	}
+
+	/**
+	 * Decodes the line between start and end into the command fields.
+	 * @param start Index of the line's first character.
+	 * @param end Index just past the line's last character.
+	 */
+	private void decode(int start, int end) {
+		parameterCount = 0;
+		coordinatesValid = true;
+		messageStart = messageEnd = start;
+
+		int wordStart = this.skipSpaces(start, end);
+		if(wordStart == end) {
+			command = NONE;
+			return;
+		}
+		int wordEnd = this.findSpace(wordStart, end);
+
+		//Commands are single letters.
+		command = UNKNOWN;
+		if(wordEnd - wordStart == 1) {
+			switch (this.charAt(wordStart)) {
+				case 'F':
+					command = FIRE;
+					break;
+				case 'C':
+					command = CHAT;
+					break;
+				case 'D':
+					command = DRAW;
+					break;
+				case 'U':
+					command = UPDATE_MODE;
+			}
+		}
+
+		//The message is everything after the command word, trimmed of spaces.
+		messageStart = this.skipSpaces(wordEnd, end);
+		messageEnd = end;
+		while(messageEnd > messageStart && this.charAt(messageEnd - 1) == ' ')
+			messageEnd--;
+
+		//Count the parameters, reading the first two as fire coordinates.
+		wordStart = messageStart;
+		while(wordStart < end) {
+			wordEnd = this.findSpace(wordStart, end);
+			if(parameterCount == 0)
+				row = this.parseNumber(wordStart, wordEnd);
+			else if(parameterCount == 1)
+				column = this.parseNumber(wordStart, wordEnd);
+			parameterCount++;
+			wordStart = this.skipSpaces(wordEnd, end);
+		}
+	}
+
+	/**
+	 * Reads a word as a whole number, as Integer.parseInt() would, clearing coordinatesValid if it is not one.
+	 * @param start Index of the word's first character.
+	 * @param end Index just past the word's last character.
+	 * @return The number, or 0 if the word is not a number.
+	 */
+	private int parseNumber(int start, int end) {
+		boolean negative = false;
+		char sign = this.charAt(start);
+		if((sign == '-' || sign == '+') && end - start > 1) {
+			negative = sign == '-';
+			start++;
+		}
+
+		//More than ten digits cannot fit in an int; rejecting them early keeps the long below from overflowing.
+		if(end - start > 10) {
+			coordinatesValid = false;
+			return 0;
+		}
+
+		long value = 0;
+		for(int index = start; index < end; index++) {
+			char digit = this.charAt(index);
+			if(digit < '0' || digit > '9') {
+				coordinatesValid = false;
+				return 0;
+			}
+			value = value * 10 + (digit - '0');
+		}
+		if(negative)
+			value = -value;
+		if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			coordinatesValid = false;
+			return 0;
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Finds the first character at or after index that is not a space.
+	 * @param index Index to start at.
+	 * @param end Index just past the line's last character.
+	 * @return Index of the character, or end if there is none.
+	 */
+	private int skipSpaces(int index, int end) {
+		while(index < end && this.charAt(index) == ' ')
+			index++;
+		return index;
+	}
+
+	/**
+	 * Finds the first space at or after index.
+	 * @param index Index to start at.
+	 * @param end Index just past the line's last character.
+	 * @return Index of the space, or end if there is none.
+	 */
+	private int findSpace(int index, int end) {
+		while(index < end && this.charAt(index) != ' ')
+			index++;
+		return index;
+	}
+
+	/**
+	 * Returns a character of the line being decoded. Bytes outside ASCII never match a command letter, digit or space, so they need no decoding here.
+	 * @param index Index of the character.
+	 * @return The character.
+	 */
+	private char charAt(int index) {
+		if(byteLine != null)
+			return (char) (byteLine[index] & 0xFF);
+		return textLine.charAt(index);
+	}
+}
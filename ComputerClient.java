@@ -0,0 +1,97 @@
+package battleship;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * Built-in opponent that plays without a connection. It places its fleet at random as soon as the game starts,
+ * then answers each shot fired at it with a shot of its own, chosen by a DensityTargeter and fired through the same fireMissile() call as a human's.
+ * Moves only while its game handles its opponent's messages, so it needs no thread of its own.
+ */
+public class ComputerClient extends Client {
+
+	/**
+	 * Name the computer plays under.
+	 */
+	private static final String COMPUTER_NAME = "Computer";
+
+	/**
+	 * Chooses where to fire next.
+	 */
+	private DensityTargeter targeter;
+
+	/**
+	 * Places the fleet and breaks the targeter's ties.
+	 */
+	private Random random;
+
+	/**
+	 * Creates a computer player on the usual 10x10 boards.
+	 * @param gameManager Game manager of the computer's game.
+	 */
+	protected ComputerClient(GameManager gameManager) {
+		this(gameManager, 10, 10);
+	}
+
+	/**
+	 * Creates a computer player on boards of a given size.
+	 * @param gameManager Game manager of the computer's game.
+	 * @param numRows Number of rows on each board.
+	 * @param numColumns Number of columns on each board.
+	 */
+	protected ComputerClient(GameManager gameManager, int numRows, int numColumns) {
+		//Nobody reads the computer's output, so it is discarded.
+		super(null, new PrintWriter(OutputStream.nullOutputStream()), gameManager, numRows, numColumns);
+
+		random = new Random();
+		targeter = new DensityTargeter(numRows, numColumns, random);
+		this.setPlayerName(COMPUTER_NAME);
+	}
+
+	/**
+	 * Places the fleet straight away rather than asking for a name and ships.
+	 */
+	@Override
+	protected void gameStarted() {
+		GameBoard board = this.getClientGameBoard();
+		new FleetGenerator(board.getNumRows(), board.getNumColumns(), random).placeShips(board, 0);
+		this.fleetReady();
+	}
+
+	/**
+	 * Updates the targeter with the result of the computer's shot.
+	 */
+	@Override
+	protected void shotFired(int rowNumber, int columnNumber, Ship shipHit) {
+		targeter.shotResult(rowNumber, columnNumber, shipHit);
+	}
+
+	/**
+	 * Fires back after each shot from the opponent, unless that shot sank the computer's last ship or the game is already over.
+	 * The opponent's own fire command then notices if the reply ended the game.
+	 */
+	@Override
+	protected void shotReceived(int rowNumber, int columnNumber, Ship shipHit) {
+		if(!(this.isPlaying()) || !(this.getClientGameBoard().hasShipsRemaining()))
+			return;
+
+		int cell = targeter.nextShot();
+		if(cell >= 0)
+			this.processFireCommand(targeter.rowOf(cell), targeter.columnOf(cell));
+	}
+
+	/**
+	 * The computer follows the game through its targeter; there is nobody to draw boards for.
+	 */
+	@Override
+	protected void drawBoards() {
+	}
+
+	/**
+	 * The computer fires only in reply to its opponent, so there is nobody to prompt.
+	 */
+	@Override
+	protected void promptForCommand() {
+	}
+}
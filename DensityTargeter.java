@@ -0,0 +1,221 @@
+package battleship;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Chooses shots at an opponent's board from a probability-density map: each cell scores the number of legal placements of the opponent's unsunk ships covering it,
+ * so the most likely cell to hold a ship is attacked next.
+ * Placements that cover every hit on a damaged, unsunk ship are weighted far above the rest, which finishes off a ship once it has been found.
+ * The map is kept up to date after each shot by adjusting only the placements covering the attacked cell, using the arrays of PlacementIndex; it is never recounted.
+ * Cells are numbered row * numColumns + column. A targeter follows one game at a time and is not thread safe.
+ */
+public class DensityTargeter {
+
+	/**
+	 * Weight of a placement consistent with every shot so far.
+	 */
+	private static final int HUNT_WEIGHT = 1;
+
+	/**
+	 * Weight of a placement covering every hit on a damaged ship. Greater than any cell's total hunt weight, which is at most two placements per cell a ship covers, per ship type.
+	 */
+	private static final int TARGET_WEIGHT = 1000;
+
+	/**
+	 * Length of each ship type, indexed by SHIPTYPES ordinal.
+	 */
+	private static final int[] SHIP_LENGTHS = shipLengths();
+
+	/**
+	 * Number of columns on the board.
+	 */
+	private int numColumns;
+
+	/**
+	 * Placements of each ship type, indexed by SHIPTYPES ordinal.
+	 */
+	private PlacementIndex[] placements;
+
+	/**
+	 * Current weight of each placement of each ship type; zero once a shot has ruled it out.
+	 */
+	private int[][] placementWeight;
+
+	/**
+	 * Number of hits on each ship type that each of its placements covers.
+	 */
+	private int[][] placementHits;
+
+	/**
+	 * Number of hits taken by each ship type.
+	 */
+	private int[] typeHits;
+
+	/**
+	 * Sum of the weights of the placements covering each cell.
+	 */
+	private int[] density;
+
+	/**
+	 * Cells that have been attacked.
+	 */
+	private boolean[] cellAttacked;
+
+	/**
+	 * Breaks ties between cells of equal density.
+	 */
+	private Random random;
+
+	/**
+	 * Creates a targeter for a board holding one ship of each type, none of it attacked yet.
+	 * @param numRows Number of rows on the board.
+	 * @param numColumns Number of columns on the board.
+	 * @param random Source of randomness for breaking ties.
+	 */
+	protected DensityTargeter(int numRows, int numColumns, Random random) {
+		this.numColumns = numColumns;
+		this.random = random;
+
+		int numTypes = SHIP_LENGTHS.length;
+		placements = new PlacementIndex[numTypes];
+		placementWeight = new int[numTypes][];
+		placementHits = new int[numTypes][];
+		typeHits = new int[numTypes];
+		density = new int[numRows * numColumns];
+		cellAttacked = new boolean[numRows * numColumns];
+
+		for(int type = 0; type < numTypes; type++) {
+			placements[type] = PlacementIndex.forShip(numRows, numColumns, SHIP_LENGTHS[type]);
+			placementWeight[type] = new int[placements[type].numPlacements];
+			placementHits[type] = new int[placements[type].numPlacements];
+		}
+		this.reset();
+	}
+
+	/**
+	 * Forgets every shot, so the targeter can follow a new game on a board of the same size without allocating.
+	 */
+	protected void reset() {
+		Arrays.fill(typeHits, 0);
+		Arrays.fill(density, 0);
+		Arrays.fill(cellAttacked, false);
+		for(int type = 0; type < placements.length; type++) {
+			Arrays.fill(placementWeight[type], 0);
+			Arrays.fill(placementHits[type], 0);
+			for(int placement = 0; placement < placements[type].numPlacements; placement++)
+				this.setWeight(type, placement, HUNT_WEIGHT);
+		}
+	}
+
+	/**
+	 * Looks up the length of each ship type.
+	 * @return Lengths indexed by SHIPTYPES ordinal.
+	 */
+	private static int[] shipLengths() {
+		SHIPTYPES[] shipTypes = SHIPTYPES.values();
+		int[] lengths = new int[shipTypes.length];
+		for(int type = 0; type < shipTypes.length; type++)
+			lengths[type] = Ship.newShip(shipTypes[type], "").getLength();
+		return lengths;
+	}
+
+	/**
+	 * Chooses the next cell to attack: the unattacked cell of highest density, ties broken at random.
+	 * @return Number of the cell, or -1 if every cell has been attacked.
+	 */
+	protected int nextShot() {
+		int bestCell = -1;
+		int bestDensity = -1;
+		int ties = 0;
+
+		for(int cell = 0; cell < density.length; cell++) {
+			if(cellAttacked[cell])
+				continue;
+			if(density[cell] > bestDensity) {
+				bestCell = cell;
+				bestDensity = density[cell];
+				ties = 1;
+			}
+			else if(density[cell] == bestDensity && random.nextInt(++ties) == 0)
+				bestCell = cell;
+		}
+		return bestCell;
+	}
+
+	/**
+	 * Returns the row of a cell.
+	 * @param cell Number of the cell.
+	 * @return Row of the cell.
+	 */
+	protected int rowOf(int cell) {
+		return cell / numColumns;
+	}
+
+	/**
+	 * Returns the column of a cell.
+	 * @param cell Number of the cell.
+	 * @return Column of the cell.
+	 */
+	protected int columnOf(int cell) {
+		return cell % numColumns;
+	}
+
+	/**
+	 * Updates the map with the result of a shot.
+	 * @param row Row attacked.
+	 * @param column Column attacked.
+	 * @param shipHit Ship that was hit, null if the shot missed.
+	 */
+	protected void shotResult(int row, int column, Ship shipHit) {
+		int cell = row * numColumns + column;
+		if(cellAttacked[cell])
+			return;
+		cellAttacked[cell] = true;
+
+		int hitType = shipHit == null ? -1 : shipHit.type.ordinal();
+
+		//No other ship can cover this cell now: rule out every placement of another type covering it, and of any type after a miss.
+		for(int type = 0; type < placements.length; type++) {
+			if(type == hitType)
+				continue;
+			for(int placement : placements[type].placementsCoveringCell[cell])
+				this.setWeight(type, placement, 0);
+		}
+		if(shipHit == null)
+			return;
+
+		//The hit ship covers this cell and every earlier hit on it. Once it sinks, none of its placements remain possible.
+		typeHits[hitType]++;
+		for(int placement : placements[hitType].placementsCoveringCell[cell])
+			placementHits[hitType][placement]++;
+
+		boolean sunk = !(shipHit.isAlive());
+		int[] weights = placementWeight[hitType];
+		for(int placement = 0; placement < weights.length; placement++) {
+			if(weights[placement] == 0)
+				continue;
+			if(sunk || placementHits[hitType][placement] != typeHits[hitType])
+				this.setWeight(hitType, placement, 0);
+			else
+				this.setWeight(hitType, placement, TARGET_WEIGHT);
+		}
+	}
+
+	/**
+	 * Changes the weight of a placement, adjusting the density of each cell it covers by the difference.
+	 * @param type SHIPTYPES ordinal of the placement's ship.
+	 * @param placement Number of the placement.
+	 * @param weight New weight.
+	 */
+	private void setWeight(int type, int placement, int weight) {
+		int change = weight - placementWeight[type][placement];
+		if(change == 0)
+			return;
+		placementWeight[type][placement] = weight;
+
+		PlacementIndex index = placements[type];
+		for(int cell = index.firstCell[placement], remaining = index.shipLength; remaining > 0; cell += index.cellStep[placement], remaining--)
+			density[cell] += change;
+	}
+}
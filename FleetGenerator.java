@@ -0,0 +1,213 @@
+package battleship;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Places fleets at random, legally and without trial and error. For each ship type the generator keeps the set of placements from its PlacementIndex still open to it;
+ * placing a ship closes, through the index's per-cell lists, every placement of the other types that would overlap it. Each ship is then drawn uniformly from its open set in constant time.
+ * Longer ships are placed first, so running out of room is rare; when it happens the fleet is drawn again.
+ * A generator keeps its sets between fleets and is not thread safe; give each thread its own, or use randomFleet().
+ */
+public class FleetGenerator {
+
+	/**
+	 * Times a fleet is drawn before giving up on fitting it on the board.
+	 */
+	private static final int MAX_ATTEMPTS = 100;
+
+	/**
+	 * Number of rows on the board.
+	 */
+	private int numRows;
+
+	/**
+	 * Number of columns on the board.
+	 */
+	private int numColumns;
+
+	/**
+	 * Placements of each ship type, indexed by SHIPTYPES ordinal.
+	 */
+	private PlacementIndex[] placements;
+
+	/**
+	 * SHIPTYPES ordinals from the longest ship to the shortest, the order in which ships are placed.
+	 */
+	private int[] placingOrder;
+
+	/**
+	 * Every placement of each ship type, open ones first: openPlacements[type][0] to openPlacements[type][openCount[type] - 1] are open.
+	 * Closing a placement swaps it to the end of the open ones, so the array always holds every placement and reopening them all only resets openCount.
+	 */
+	private int[][] openPlacements;
+
+	/**
+	 * Index of each placement in openPlacements, so it can be closed without searching.
+	 */
+	private int[][] placementSlot;
+
+	/**
+	 * Number of open placements of each ship type.
+	 */
+	private int[] openCount;
+
+	/**
+	 * Placement chosen for each ship type by the last fleet drawn, indexed by SHIPTYPES ordinal.
+	 */
+	private int[] chosenPlacements;
+
+	/**
+	 * Source of randomness.
+	 */
+	private Random random;
+
+	/**
+	 * Creates a generator of fleets for boards of one size.
+	 * @param numRows Number of rows on the board.
+	 * @param numColumns Number of columns on the board.
+	 * @param random Source of randomness.
+	 */
+	protected FleetGenerator(int numRows, int numColumns, Random random) {
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.random = random;
+
+		SHIPTYPES[] shipTypes = SHIPTYPES.values();
+		placements = new PlacementIndex[shipTypes.length];
+		openPlacements = new int[shipTypes.length][];
+		placementSlot = new int[shipTypes.length][];
+		openCount = new int[shipTypes.length];
+		chosenPlacements = new int[shipTypes.length];
+		for(int type = 0; type < shipTypes.length; type++) {
+			placements[type] = PlacementIndex.forShip(numRows, numColumns, Ship.newShip(shipTypes[type], "").getLength());
+			openPlacements[type] = new int[placements[type].numPlacements];
+			placementSlot[type] = new int[placements[type].numPlacements];
+			for(int placement = 0; placement < placements[type].numPlacements; placement++)
+				openPlacements[type][placement] = placementSlot[type][placement] = placement;
+		}
+
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		for(int type = 0; type < shipTypes.length; type++)
+			order.add(type);
+		order.sort((first, second) -> placements[second].shipLength - placements[first].shipLength);
+		placingOrder = new int[order.size()];
+		for(int index = 0; index < placingOrder.length; index++)
+			placingOrder[index] = order.get(index);
+	}
+
+	/**
+	 * Places a whole fleet at random on an empty board, using a generator of its own.
+	 * @param board Empty board.
+	 * @return True if the fleet was placed, false if it does not fit on the board.
+	 */
+	protected static boolean randomFleet(GameBoard board) {
+		return new FleetGenerator(board.getNumRows(), board.getNumColumns(), ThreadLocalRandom.current()).placeShips(board, 0);
+	}
+
+	/**
+	 * Draws a fleet for an empty board without placing it anywhere, for callers that only need the cells.
+	 * @return Placement of each ship type in its PlacementIndex, indexed by SHIPTYPES ordinal; reused by the next call. Null if the fleet does not fit on the board.
+	 */
+	protected int[] sampleFleet() {
+		for(int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			this.openAllPlacements();
+			if(this.drawShips(0))
+				return chosenPlacements;
+		}
+		return null;
+	}
+
+	/**
+	 * Places ships at random around any already on a board, adding them with GameBoard.addShip(). Each ship is named after its type.
+	 * @param board Board to place the ships on, of the size this generator was created for.
+	 * @param firstType SHIPTYPES ordinal of the first type to place; it and every later type are placed.
+	 * @return True if the ships were placed, false if they do not fit around the ships already on the board, in which case none are placed.
+	 */
+	protected boolean placeShips(GameBoard board, int firstType) {
+		boolean drawn = false;
+		for(int attempt = 0; attempt < MAX_ATTEMPTS && !(drawn); attempt++) {
+			this.openAllPlacements();
+			for(int row = 0; row < numRows; row++)
+				for(int column = 0; column < numColumns; column++)
+					if(board.gameBoardCells.get(row).get(column).hasShip())
+						this.closePlacementsCovering(row * numColumns + column);
+			drawn = this.drawShips(firstType);
+		}
+		if(!(drawn))
+			return false;
+
+		SHIPTYPES[] shipTypes = SHIPTYPES.values();
+		for(int type = firstType; type < shipTypes.length; type++) {
+			PlacementIndex index = placements[type];
+			int placement = chosenPlacements[type];
+			board.addShip(Ship.newShip(shipTypes[type], shipName(shipTypes[type])), new Position(index.sternRow[placement], index.sternColumn[placement]), index.heading[placement]);
+		}
+		return true;
+	}
+
+	/**
+	 * Draws placements for the ship types from firstType on, longest first, each uniformly from the placements still open, into chosenPlacements.
+	 * @param firstType SHIPTYPES ordinal of the first type to draw.
+	 * @return True if every ship fitted, false if one ran out of room.
+	 */
+	private boolean drawShips(int firstType) {
+		for(int type : placingOrder) {
+			if(type < firstType)
+				continue;
+			if(openCount[type] == 0)
+				return false;
+
+			PlacementIndex index = placements[type];
+			int placement = openPlacements[type][random.nextInt(openCount[type])];
+			chosenPlacements[type] = placement;
+			for(int cell = index.firstCell[placement], remaining = index.shipLength; remaining > 0; cell += index.cellStep[placement], remaining--)
+				this.closePlacementsCovering(cell);
+		}
+		return true;
+	}
+
+	/**
+	 * Reopens every placement of every ship type.
+	 */
+	private void openAllPlacements() {
+		for(int type = 0; type < placements.length; type++)
+			openCount[type] = placements[type].numPlacements;
+	}
+
+	/**
+	 * Closes every placement of every ship type covering a cell that is now occupied.
+	 * @param cell Number of the cell.
+	 */
+	private void closePlacementsCovering(int cell) {
+		for(int type = 0; type < placements.length; type++) {
+			int[] open = openPlacements[type];
+			int[] slot = placementSlot[type];
+			for(int placement : placements[type].placementsCoveringCell[cell]) {
+				int placementIndex = slot[placement];
+				if(placementIndex >= openCount[type])
+					//Already closed.
+					continue;
+
+				//Swap with the last open placement and shrink the open set.
+				int lastIndex = --openCount[type];
+				int lastPlacement = open[lastIndex];
+				open[placementIndex] = lastPlacement;
+				slot[lastPlacement] = placementIndex;
+				open[lastIndex] = placement;
+				slot[placement] = lastIndex;
+			}
+		}
+	}
+
+	/**
+	 * Names a generated ship after its type, e.g. "Carrier".
+	 * @param shipType Type of the ship.
+	 * @return The name.
+	 */
+	private static String shipName(SHIPTYPES shipType) {
+		String typeName = shipType.toString();
+		return typeName.charAt(0) + typeName.substring(1).toLowerCase();
+	}
+}
@@ -0,0 +1,323 @@
+package battleship;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Counts every fleet, one ship of each type, consistent with the shots recorded on a board, and how many of those fleets cover each cell, which gives the chance that each cell holds a ship.
+ * A miss rules out every placement covering its cell; a hit on a ship rules out the placements of that ship not covering it and the placements of every other ship that do.
+ * Each type's placements are filtered once per query, then fleets are enumerated ship by ship, the type with fewest placements left first, checking overlaps with the bitmasks of PlacementIndex.
+ * The search is split into tasks by the placements of its first two ships and run on the common fork-join pool; each task keeps its own counts until they are merged.
+ * Counting is exhaustive, so time depends on how many shots, and above all how many hits, the board holds. On a 10x10 board and a single processor, one position took
+ * about half a second after 10 shots, 20 ms after 20 and under a millisecond only after 30 shots with several hits; positions with fewer hits can take hundreds of
+ * milliseconds after 20 shots. A solver holds no state between queries and is thread safe.
+ */
+public class FleetSolver {
+
+	/**
+	 * Tasks the search is split into per processor, so that uneven tasks still keep every processor busy.
+	 */
+	private static final int TASKS_PER_PROCESSOR = 4;
+
+	/**
+	 * Number of rows on the board.
+	 */
+	private int numRows;
+
+	/**
+	 * Number of columns on the board.
+	 */
+	private int numColumns;
+
+	/**
+	 * Placements of each ship type, indexed by SHIPTYPES ordinal.
+	 */
+	private PlacementIndex[] placements;
+
+	/**
+	 * Number of tasks each search is split into.
+	 */
+	private int numTasks;
+
+	/**
+	 * Creates a solver for boards of one size, splitting each search across every processor.
+	 * @param numRows Number of rows on the board.
+	 * @param numColumns Number of columns on the board.
+	 */
+	protected FleetSolver(int numRows, int numColumns) {
+		this(numRows, numColumns, Runtime.getRuntime().availableProcessors() * TASKS_PER_PROCESSOR);
+	}
+
+	/**
+	 * Creates a solver for boards of one size.
+	 * @param numRows Number of rows on the board.
+	 * @param numColumns Number of columns on the board.
+	 * @param numTasks Number of tasks each search is split into; 1 searches on the calling thread.
+	 */
+	protected FleetSolver(int numRows, int numColumns, int numTasks) {
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.numTasks = numTasks;
+
+		SHIPTYPES[] shipTypes = SHIPTYPES.values();
+		placements = new PlacementIndex[shipTypes.length];
+		for(int type = 0; type < shipTypes.length; type++)
+			placements[type] = PlacementIndex.forShip(numRows, numColumns, Ship.newShip(shipTypes[type], "").getLength());
+	}
+
+	/**
+	 * Counts the fleets consistent with the shots on a board. Cells that have been attacked are read as a miss, or as a hit on the cell's ship; nothing else on the board is looked at.
+	 * @param board Board of the size this solver was created for, holding the shots fired at it so far.
+	 * @return Number of consistent fleets and how many of them cover each cell.
+	 * @throws InterruptedException If interrupted while waiting for the tasks.
+	 * @throws ExecutionException If a task fails.
+	 */
+	protected Solution solve(GameBoard board) throws InterruptedException, ExecutionException {
+		int numTypes = placements.length;
+		int numWords = placements[0].numWords;
+
+		//Gather the shots as bitmasks: every attacked cell, and the hits on each ship type.
+		long[] attacked = new long[numWords];
+		long[][] typeHits = new long[numTypes][numWords];
+		for(int row = 0; row < numRows; row++)
+			for(int column = 0; column < numColumns; column++) {
+				Cell cell = board.gameBoardCells.get(row).get(column);
+				if(!(cell.hasBeenAttacked()))
+					continue;
+				int cellNumber = row * numColumns + column;
+				attacked[cellNumber >>> 6] |= 1L << cellNumber;
+				if(cell.getShip() != null)
+					typeHits[cell.getShip().type.ordinal()][cellNumber >>> 6] |= 1L << cellNumber;
+			}
+
+		//A ship's placement must cover all of its hits and no other attacked cell.
+		int[][] candidates = new int[numTypes][];
+		for(int type = 0; type < numTypes; type++) {
+			PlacementIndex index = placements[type];
+			int[] kept = new int[index.numPlacements];
+			int numKept = 0;
+			for(int placement = 0; placement < index.numPlacements; placement++)
+				if(consistent(index.cellMask, placement * numWords, attacked, typeHits[type]))
+					kept[numKept++] = placement;
+			candidates[type] = Arrays.copyOf(kept, numKept);
+		}
+
+		Search search = new Search(candidates);
+		if(numTasks <= 1)
+			return search.count(0, 1);
+
+		ArrayList<Future<Solution>> results = new ArrayList<Future<Solution>>();
+		for(int task = 0; task < numTasks; task++) {
+			int firstPrefix = task;
+			results.add(ForkJoinPool.commonPool().submit(() -> search.count(firstPrefix, numTasks)));
+		}
+
+		Solution total = new Solution(numRows * numColumns);
+		for(Future<Solution> result : results)
+			total.add(result.get());
+		return total;
+	}
+
+	/**
+	 * Checks a placement against the shots of one ship type.
+	 * @param masks Bitmasks of the type's placements.
+	 * @param maskStart Index of the placement's first word in masks.
+	 * @param attacked Every attacked cell.
+	 * @param hits Cells where this ship type was hit.
+	 * @return True if the placement covers every hit and no other attacked cell.
+	 */
+	private static boolean consistent(long[] masks, int maskStart, long[] attacked, long[] hits) {
+		for(int word = 0; word < attacked.length; word++) {
+			long mask = masks[maskStart + word];
+			if((mask & hits[word]) != hits[word] || (mask & attacked[word] & ~hits[word]) != 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * One query's search: the consistent placements of each ship type, ordered for enumeration. Shared read only by the query's tasks.
+	 */
+	private class Search {
+
+		/**
+		 * Placement index of the ship placed at each depth of the search.
+		 */
+		private PlacementIndex[] indexes;
+
+		/**
+		 * Consistent placements of the ship placed at each depth of the search.
+		 */
+		private int[][] candidates;
+
+		/**
+		 * Pairs of non-overlapping placements of the first two ships, flattened, each pair a task's unit of work.
+		 */
+		private int[] prefixes;
+
+		/**
+		 * Orders the ship types from fewest consistent placements to most, so the search prunes early, and lists the prefixes.
+		 * @param typeCandidates Consistent placements of each ship type, indexed by SHIPTYPES ordinal.
+		 */
+		private Search(int[][] typeCandidates) {
+			ArrayList<Integer> order = new ArrayList<Integer>();
+			for(int type = 0; type < typeCandidates.length; type++)
+				order.add(type);
+			order.sort((first, second) -> typeCandidates[first].length - typeCandidates[second].length);
+
+			indexes = new PlacementIndex[order.size()];
+			candidates = new int[order.size()][];
+			for(int depth = 0; depth < indexes.length; depth++) {
+				indexes[depth] = placements[order.get(depth)];
+				candidates[depth] = typeCandidates[order.get(depth)];
+			}
+
+			int numPairs = 0;
+			int[] pairs = new int[2 * candidates[0].length * candidates[1].length];
+			for(int first : candidates[0])
+				for(int second : candidates[1])
+					if(!(overlaps(indexes[1].cellMask, second * indexes[1].numWords, indexes[0].cellMask, first * indexes[0].numWords, indexes[0].numWords))) {
+						pairs[numPairs++] = first;
+						pairs[numPairs++] = second;
+					}
+			prefixes = Arrays.copyOf(pairs, numPairs);
+		}
+
+		/**
+		 * Counts the fleets starting with every step-th prefix.
+		 * @param firstPrefix Number of the first prefix to search.
+		 * @param step Distance between the prefixes searched.
+		 * @return Fleets found and how many of them cover each cell.
+		 */
+		private Solution count(int firstPrefix, int step) {
+			int numWords = indexes[0].numWords;
+			Solution solution = new Solution(numRows * numColumns);
+			long[][] occupied = new long[indexes.length + 1][numWords];
+
+			for(int prefix = firstPrefix; 2 * prefix < prefixes.length; prefix += step) {
+				int first = prefixes[2 * prefix];
+				int second = prefixes[2 * prefix + 1];
+				for(int word = 0; word < numWords; word++)
+					occupied[2][word] = indexes[0].cellMask[first * numWords + word] | indexes[1].cellMask[second * numWords + word];
+
+				long fleets = indexes.length > 2 ? this.countFrom(2, occupied, solution.fleetsCoveringCell) : 1;
+				if(fleets == 0)
+					continue;
+				solution.fleets += fleets;
+				addToCells(indexes[0], first, fleets, solution.fleetsCoveringCell);
+				addToCells(indexes[1], second, fleets, solution.fleetsCoveringCell);
+			}
+			return solution;
+		}
+
+		/**
+		 * Counts the ways of placing the ships from one depth on around those already placed, adding each placement's share to the cells it covers.
+		 * @param depth Depth of the next ship to place.
+		 * @param occupied Cells occupied before each depth; occupied[depth] is filled in and the deeper rows are overwritten.
+		 * @param fleetsCoveringCell Counts per cell to add to.
+		 * @return Number of ways of placing the remaining ships.
+		 */
+		private long countFrom(int depth, long[][] occupied, long[] fleetsCoveringCell) {
+			PlacementIndex index = indexes[depth];
+			long[] masks = index.cellMask;
+			long[] taken = occupied[depth];
+			int numWords = taken.length;
+			boolean lastShip = depth == indexes.length - 1;
+			long fleets = 0;
+
+			for(int placement : candidates[depth]) {
+				int maskStart = placement * numWords;
+				if(overlaps(masks, maskStart, taken, 0, numWords))
+					continue;
+
+				//The last ship completes one fleet per placement; earlier ships complete as many as the ships after them can be placed.
+				long completions = 1;
+				if(!(lastShip)) {
+					long[] next = occupied[depth + 1];
+					for(int word = 0; word < numWords; word++)
+						next[word] = taken[word] | masks[maskStart + word];
+					completions = this.countFrom(depth + 1, occupied, fleetsCoveringCell);
+					if(completions == 0)
+						continue;
+				}
+				fleets += completions;
+				addToCells(index, placement, completions, fleetsCoveringCell);
+			}
+			return fleets;
+		}
+	}
+
+	/**
+	 * Checks whether a placement shares a cell with a set of cells.
+	 * @param masks Bitmasks of the placement's ship type.
+	 * @param maskStart Index of the placement's first word in masks.
+	 * @param cells Set of cells.
+	 * @param cellsStart Index of the first word of the set in cells.
+	 * @param numWords Number of words in a bitmask.
+	 * @return True if they share a cell.
+	 */
+	private static boolean overlaps(long[] masks, int maskStart, long[] cells, int cellsStart, int numWords) {
+		for(int word = 0; word < numWords; word++)
+			if((masks[maskStart + word] & cells[cellsStart + word]) != 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Adds a number of fleets to the count of each cell a placement covers.
+	 * @param index Placement index of the placement's ship.
+	 * @param placement Number of the placement.
+	 * @param fleets Number of fleets to add.
+	 * @param fleetsCoveringCell Counts per cell.
+	 */
+	private static void addToCells(PlacementIndex index, int placement, long fleets, long[] fleetsCoveringCell) {
+		for(int cell = index.firstCell[placement], remaining = index.shipLength; remaining > 0; cell += index.cellStep[placement], remaining--)
+			fleetsCoveringCell[cell] += fleets;
+	}
+
+	/**
+	 * Result of a query. Each task fills its own, so solutions need no locking.
+	 */
+	protected static class Solution {
+
+		/**
+		 * Number of fleets consistent with the shots.
+		 */
+		protected long fleets;
+
+		/**
+		 * Number of those fleets with a ship on each cell, numbered row * numColumns + column.
+		 */
+		protected long[] fleetsCoveringCell;
+
+		/**
+		 * Creates an empty solution.
+		 * @param numCells Number of cells on the board.
+		 */
+		protected Solution(int numCells) {
+			fleetsCoveringCell = new long[numCells];
+		}
+
+		/**
+		 * Adds the fleets of another solution to this one.
+		 * @param other Solution to add.
+		 */
+		protected void add(Solution other) {
+			fleets += other.fleets;
+			for(int cell = 0; cell < fleetsCoveringCell.length; cell++)
+				fleetsCoveringCell[cell] += other.fleetsCoveringCell[cell];
+		}
+
+		/**
+		 * Returns the chance that a cell holds a ship, over every consistent fleet equally likely.
+		 * @param cell Number of the cell.
+		 * @return Fraction of the fleets covering the cell, 0 if no fleet is consistent.
+		 */
+		protected double hitProbability(int cell) {
+			return fleets == 0 ? 0 : (double) fleetsCoveringCell[cell] / fleets;
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package battleship;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.ListIterator;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.lang.StringBuilder;
 
 public class GameBoard {
@@ -11,11 +14,47 @@ public class GameBoard {
 	 */
 	protected ArrayList<Ship> boardShips;
 	
+	/**
+	 * Number of ships on the board that have not been sunk. Kept up to date as ships are added and sunk so the end-of-game check does not scan the fleet.
+	 */
+	private int liveShips;
+	
+	/**
+	 * Subscribers told whenever a ship on this board is sunk.
+	 */
+	private ArrayList<ShipSunkListener> sinkListeners;
+	
+	/**
+	 * Subscribers told of every ship added and missile fired, e.g. a game's event log.
+	 */
+	private ArrayList<BoardListener> boardListeners;
+	
 	/**
 	 * 2-dimensional array of cells representing game board.
 	 */
 	protected ArrayList<ArrayList <Cell>> gameBoardCells;
 	
+	/**
+	 * Last rendering of the whole board, borders included, reused from frame to frame.
+	 */
+	private char[] renderedBoard;
+	
+	/**
+	 * Rows whose cells may have changed since they were last rendered into renderedBoard.
+	 */
+	private boolean[] rowChanged;
+	
+	/**
+	 * Characters in each line of renderedBoard, including the line separator.
+	 */
+	private int renderedLineLength;
+	
+	/**
+	 * Cells whose drawing may have changed since they were last reported by writeChangedCells(), one bit per cell numbered row * numColumns + column.
+	 * Guarded by this board's lock, as the opponent's shots mark cells while the owner reports them.
+	 */
+	private long[] changedCells;
+	
 	/**
 	 * New line character, set based on current environment.
 	 */
@@ -54,37 +93,195 @@ public class GameBoard {
 				rows.add(new Cell());
 				
 		boardShips = new ArrayList<Ship>();
+		sinkListeners = new ArrayList<ShipSunkListener>();
+		boardListeners = new ArrayList<BoardListener>();
+		
+		//Lay out the borders of the rendered board once; only the cells between them are ever redrawn.
+		renderedLineLength = numColumns + 2 + NEW_LINE_CHARACTER.length();
+		renderedBoard = new char[(numRows + 2) * renderedLineLength];
+		for(int line = 0; line < numRows + 2; line++) {
+			int lineStart = line * renderedLineLength;
+			char fill = (line == 0 || line == numRows + 1) ? '-' : ' ';
+			renderedBoard[lineStart] = '+';
+			for(int column = 1; column <= numColumns; column++)
+				renderedBoard[lineStart + column] = fill;
+			renderedBoard[lineStart + numColumns + 1] = '+';
+			NEW_LINE_CHARACTER.getChars(0, NEW_LINE_CHARACTER.length(), renderedBoard, lineStart + numColumns + 2);
+		}
+		rowChanged = new boolean[numRows];
+		changedCells = new long[(numRows * numColumns + Long.SIZE - 1) / Long.SIZE];
 	}
 	
+	/**
+	 * Subscribes a listener to be told whenever a ship on this board is sunk.
+	 * Listeners are called on the thread processing the missile that sinks the ship.
+	 * @param sinkListener Listener to add.
+	 */
+	protected void addSinkListener(ShipSunkListener sinkListener) {
+		sinkListeners.add(sinkListener);
+	}
+	
+	/**
+	 * Subscribes a listener to be told of every ship added to this board and every missile fired at it.
+	 * Listeners are called on the thread adding the ship or firing the missile.
+	 * @param boardListener Listener to add.
+	 */
+	protected void addBoardListener(BoardListener boardListener) {
+		boardListeners.add(boardListener);
+	}
+	
+	/**
+	 * Simple accessor method to return the number of rows on the board.
+	 * @return Number of rows.
+	 */
+	protected int getNumRows() {
+		return this.numRows;
+	}
+	
+	/**
+	 * Simple accessor method to return the number of columns on the board.
+	 * @return Number of columns.
+	 */
+	protected int getNumColumns() {
+		return this.numColumns;
+	}
+	
+	/**
+	 * Draws the board into a new StringBuilder.
+	 * @return Textual representation of the board.
+	 */
 	protected StringBuilder drawBoard() {
-		StringBuilder gameBoard = new StringBuilder();
-		
-		gameBoard.append("+");
-		
-		for (int index = 0; index < numColumns; index++)
-			gameBoard.append("-");
-		
-		gameBoard.append("+" + NEW_LINE_CHARACTER);
-		
-		for(ArrayList<Cell> row : gameBoardCells) {
-			gameBoard.append("+");
-
-			ListIterator<Cell> rowCells = row.listIterator();
+		return new StringBuilder(renderedBoard.length).append(this.renderBoard());
+	}
+	
+	/**
+	 * Writes the board straight to a player's output. Once every row has been rendered this allocates nothing.
+	 * @param output Writer to receive the board.
+	 */
+	protected void drawBoard(PrintWriter output) {
+		output.write(this.renderBoard(), 0, renderedBoard.length);
+	}
+	
+	/**
+	 * Draws the board as the owner's opponent sees it: cells struck by a missile as usual and every other cell blank, so ships are hidden until hit. Used for spectators.
+	 * @param output Builder to receive the board, borders included.
+	 */
+	protected void drawBoardHidingShips(StringBuilder output) {
+		int boardStart = output.length();
+		output.append(this.renderBoard());
+		for(int row = 0; row < numRows; row++) {
+			int rowStart = boardStart + (row + 1) * renderedLineLength + 1;
+			ArrayList<Cell> rowCells = gameBoardCells.get(row);
+			for(int column = 0; column < numColumns; column++)
+				if(!(rowCells.get(column).hasBeenAttacked()))
+					output.setCharAt(rowStart + column, ' ');
+		}
+	}
+	
+	/**
+	 * Writes the drawing of every cell, row by row, one byte per cell with no borders. Used by the binary protocol.
+	 * @param output Buffer to receive numRows * numColumns bytes.
+	 */
+	protected void writeCells(ByteBuffer output) {
+		char[] board = this.renderBoard();
+		for(int row = 0; row < numRows; row++) {
+			int rowStart = (row + 1) * renderedLineLength + 1;
+			for(int column = 0; column < numColumns; column++)
+				output.put((byte) board[rowStart + column]);
+		}
+	}
+	
+	/**
+	 * Brings the cached rendering up to date, redrawing only the rows that have changed.
+	 * @return The rendered board; callers must not modify it.
+	 */
+	private char[] renderBoard() {
+		for(int row = 0; row < numRows; row++) {
+			if(!(rowChanged[row]))
+				continue;
 			
-			while(rowCells.hasNext())
-				gameBoard.append(Character.toString(rowCells.next().draw()));
-			gameBoard.append("+" + NEW_LINE_CHARACTER);
+			//Clear the flag before reading the cells so a change made while we draw is picked up next time.
+			rowChanged[row] = false;
+			ArrayList<Cell> rowCells = gameBoardCells.get(row);
+			int rowStart = (row + 1) * renderedLineLength + 1;
+			for(int column = 0; column < numColumns; column++)
+				renderedBoard[rowStart + column] = rowCells.get(column).draw();
 		}
-		
-		gameBoard.append("+");
-		
-		for (int index = 0; index < numColumns; index++)
-			gameBoard.append("-");
-		
-		gameBoard.append("+" + NEW_LINE_CHARACTER);
-		
-		return gameBoard;
-		
+		return renderedBoard;
+	}
+	
+	/**
+	 * Writes one line for each cell that has changed since the last report, giving the label, row, column and the cell's new drawing.
+	 * Example: "Target board: 2 3 x"
+	 * @param output Writer to receive the changes.
+	 * @param boardLabel Text identifying the board at the start of each line.
+	 */
+	protected synchronized void writeChangedCells(PrintWriter output, String boardLabel) {
+		for(int word = 0; word < changedCells.length; word++) {
+			long changedBits = changedCells[word];
+			changedCells[word] = 0L;
+			
+			//Visit each set bit, lowest first.
+			while(changedBits != 0) {
+				int cellIndex = word * Long.SIZE + Long.numberOfTrailingZeros(changedBits);
+				changedBits &= changedBits - 1;
+				int row = cellIndex / numColumns;
+				int column = cellIndex % numColumns;
+				output.println(boardLabel + row + " " + column + " " + gameBoardCells.get(row).get(column).draw());
+			}
+		}
+	}
+	
+	/**
+	 * Writes the cells that have changed since the last report for the binary protocol: a two byte count, then the row, column and drawing of each cell, one byte each.
+	 * @param output Buffer with room for 2 + 3 * numRows * numColumns bytes.
+	 */
+	protected synchronized void writeChangedCells(ByteBuffer output) {
+		int countPosition = output.position();
+		output.putShort((short) 0);
+		int numChanged = 0;
+		for(int word = 0; word < changedCells.length; word++) {
+			long changedBits = changedCells[word];
+			changedCells[word] = 0L;
+			
+			while(changedBits != 0) {
+				int cellIndex = word * Long.SIZE + Long.numberOfTrailingZeros(changedBits);
+				changedBits &= changedBits - 1;
+				int row = cellIndex / numColumns;
+				int column = cellIndex % numColumns;
+				output.put((byte) row).put((byte) column).put((byte) gameBoardCells.get(row).get(column).draw());
+				numChanged++;
+			}
+		}
+		output.putShort(countPosition, (short) numChanged);
+	}
+	
+	/**
+	 * Forgets any changes not yet reported. Called when the whole board is sent to the player.
+	 */
+	protected synchronized void clearChangedCells() {
+		Arrays.fill(changedCells, 0L);
+	}
+	
+	/**
+	 * Marks a single cell as changed, both for rendering and for reporting by writeChangedCells().
+	 * @param row Row of the cell.
+	 * @param column Column of the cell.
+	 */
+	private synchronized void markCellChanged(int row, int column) {
+		rowChanged[row] = true;
+		int cellIndex = row * numColumns + column;
+		changedCells[cellIndex >>> 6] |= 1L << cellIndex;
+	}
+	
+	/**
+	 * Marks every cell as changed.
+	 */
+	private synchronized void markAllCellsChanged() {
+		for(int row = 0; row < numRows; row++)
+			rowChanged[row] = true;
+		for(int cellIndex = 0; cellIndex < numRows * numColumns; cellIndex++)
+			changedCells[cellIndex >>> 6] |= 1L << cellIndex;
 	}
 	
 	/**
@@ -191,6 +388,11 @@ public class GameBoard {
 		//Ship is within board bounds and does not overlay another ship. Add it to the board.
 		boardShips.add(ship);
 		
+		//Count the ship as live and have it tell us when it sinks.
+		if(ship.isAlive())
+			liveShips++;
+		ship.setSinkListener(this::shipSunk);
+		
 		//Create a list of cell positions covered by the ship to notify the ship of the cells it covers and to notify the cells they now have a ship.
 		ArrayList<Cell> shipCells = new ArrayList<Cell>();
 		
@@ -249,6 +451,12 @@ public class GameBoard {
 		for(Cell currentCell: shipCells)
 			currentCell.setShip(ship);
 		
+		//The ship can cover several rows; redrawing the whole board once per placement is cheap enough.
+		this.markAllCellsChanged();
+		
+		for(BoardListener boardListener : boardListeners)
+			boardListener.shipAdded(ship, sternPosition.getRow(), sternPosition.getColumn(), shipHeading);
+		
 		//Ship successfully added to board. Return true.
 		return true;
 	}
@@ -259,26 +467,63 @@ public class GameBoard {
 	 * @return Reference to the ship that was hit, null if no ship hit.
 	 */
 	protected Ship fireMissile(Position cellAttacked) {
+		return this.fireMissile(cellAttacked.getRow(), cellAttacked.getColumn());
+	}
+	
+	/**
+	 * Processes a missile fired at a certain cell, given as a row and column so the caller need not create a Position.
+	 * @param rowAttacked Row attacked.
+	 * @param columnAttacked Column attacked.
+	 * @return Reference to the ship that was hit, null if no ship hit.
+	 */
+	protected Ship fireMissile(int rowAttacked, int columnAttacked) {
 		//Check to ensure the position attacked is on the game board.
-		int rowAttacked = cellAttacked.getRow();
-		int columnAttacked = cellAttacked.getColumn();
-		
-		if(rowAttacked < 0 || rowAttacked > this.numRows - 1 || columnAttacked < 0 || columnAttacked > this.numRows - 1)
+		if(rowAttacked < 0 || rowAttacked > this.numRows - 1 || columnAttacked < 0 || columnAttacked > this.numColumns - 1)
 			//Cell attacked is off the board; return null
 			return null;
 		
 		//Get the cell that was attacked.
-		Cell attackedCell = gameBoardCells.get(cellAttacked.getRow()).get(cellAttacked.getColumn());
+		Cell attackedCell = gameBoardCells.get(rowAttacked).get(columnAttacked);
 		
 		//Tell the cell it has been attacked. If the cell has a ship, it will tell the ship it has been attacked.
 		attackedCell.missileAttack();
+		this.markCellChanged(rowAttacked, columnAttacked);
 		
-		//If the cell doesn't have a ship, return null.
-		if(!(attackedCell.hasShip()))
-			return null;
+		//If the cell doesn't have a ship, null; otherwise the ship hit.
+		Ship shipHit = attackedCell.hasShip() ? attackedCell.getShip() : null;
+		for(int index = 0; index < boardListeners.size(); index++)
+			boardListeners.get(index).missileFired(rowAttacked, columnAttacked, shipHit);
+		return shipHit;
+	}
+	
+	/**
+	 * Records the result of a shot on a board that tracks what a player knows of their opponent's board.
+	 * @param row Row attacked.
+	 * @param column Column attacked.
+	 * @param shipHit Ship that was hit, null if the shot missed.
+	 */
+	protected void recordShot(int row, int column, Ship shipHit) {
+		//Get the cell attacked.
+		Cell attackedCell = gameBoardCells.get(row).get(column);
 		
-		//If the cell attacked has a ship, return the ship.
-		return attackedCell.getShip();
+		//Let the cell know it has been attacked.
+		attackedCell.missileAttack();
+		
+		//Set the cell's ship to the ship that was hit.
+		attackedCell.setShip(shipHit);
+		this.markCellChanged(row, column);
+	}
+	
+	/**
+	 * Removes every ship and missile from the board so it can be reused without allocating a new grid.
+	 */
+	protected void clear() {
+		for(ArrayList<Cell> row : gameBoardCells)
+			for(Cell cell : row)
+				cell.clear();
+		boardShips.clear();
+		liveShips = 0;
+		this.markAllCellsChanged();
 	}
 	
 	/**
@@ -286,11 +531,16 @@ public class GameBoard {
 	 * @return Returns true if at least one ship is still remaining, false otherwise.
 	 */
 	protected boolean hasShipsRemaining() {
-		boolean shipRemaining = false;
-		for(Ship thisShip : boardShips) {
-			if(thisShip.isAlive())
-				shipRemaining = true;
-		}
-		return shipRemaining;
+		return liveShips > 0;
+	}
+	
+	/**
+	 * Called by a ship on this board as it sinks. Updates the live ship count and passes the notice on to subscribers.
+	 * @param sunkShip Ship that has just been sunk.
+	 */
+	private void shipSunk(Ship sunkShip) {
+		liveShips--;
+		for(ShipSunkListener sinkListener : sinkListeners)
+			sinkListener.shipSunk(sunkShip);
 	}
 }
@@ -0,0 +1,198 @@
+package battleship;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Sends one game to its spectators. Each change is encoded once, as text, into a read-only direct buffer, and that same buffer is queued on every spectator's SpectatorFeed.
+ * A spectator joining, or one who has fallen behind, is sent the whole of both boards instead: each board as its owner's opponent sees it, ships hidden until hit,
+ * encoded at most once per change however many spectators need it.
+ *
+ * Every change is a shot, in the same form as a player's changed cells, then what happened:
+ *   "Bob's board: 3 4 c"
+ *   "Alice fires at 3 4: hit. Alice sank Bob's CRUISER!"
+ * Created by the game's manager for its first spectator and only touched while the game handles a message.
+ */
+public class GameBroadcast {
+
+	private static final String NEW_LINE_CHARACTER = System.getProperty("line.separator");
+
+	/**
+	 * Game being watched.
+	 */
+	private GameManager gameManager;
+
+	/**
+	 * Feeds of the game's spectators, in the order they joined.
+	 */
+	private ArrayList<SpectatorFeed> spectators;
+
+	/**
+	 * Both boards as last encoded, or null if the game has changed since.
+	 */
+	private ByteBuffer keyframe;
+
+	/**
+	 * Line saying who won, once the game is over, or null while it is being played. Ends every keyframe from then on.
+	 */
+	private String result;
+
+	/**
+	 * Frames encoded for the game's spectators, each sent to all of them.
+	 */
+	private long framesPublished;
+
+	/**
+	 * Creates the broadcast of a game whose players have both joined, subscribing to their boards.
+	 * @param gameManager Game to broadcast.
+	 */
+	protected GameBroadcast(GameManager gameManager) {
+		this.gameManager = gameManager;
+		spectators = new ArrayList<SpectatorFeed>();
+		for(Client player : gameManager.getGameClients())
+			player.getClientGameBoard().addBoardListener(this.boardWatcher(player));
+	}
+
+	/**
+	 * Creates a listener passing the shots landing on a player's board to the spectators.
+	 * @param player Player owning the board.
+	 * @return Listener to subscribe to the board.
+	 */
+	private BoardListener boardWatcher(Client player) {
+		return new BoardListener() {
+			public void shipAdded(Ship ship, int sternRow, int sternColumn, HEADING shipHeading) {
+				//Ships stay hidden from spectators until hit.
+			}
+
+			public void missileFired(int row, int column, Ship shipHit) {
+				shotLanded(player, row, column, shipHit);
+			}
+		};
+	}
+
+	/**
+	 * Adds a spectator, sending them both boards as they stand.
+	 * @param feed Feed of the spectator.
+	 */
+	protected void addSpectator(SpectatorFeed feed) {
+		ByteBuffer boards = this.keyframe();
+		if(feed.offer(boards, () -> boards))
+			spectators.add(feed);
+	}
+
+	/**
+	 * Simple accessor method to return the number of spectators watching.
+	 * @return Number of spectators, including any who have left since the last frame was sent.
+	 */
+	protected int getSpectatorCount() {
+		return spectators.size();
+	}
+
+	/**
+	 * Simple accessor method to return the number of frames sent to the game's spectators.
+	 * @return Frames encoded, each sent to every spectator.
+	 */
+	protected long getFramesPublished() {
+		return framesPublished;
+	}
+
+	/**
+	 * Tells the spectators that both fleets are placed and play has begun.
+	 */
+	protected void playStarted() {
+		this.publish(this.nameOf(gameManager.getGameClients().get(0)) + " vs " + this.nameOf(gameManager.getGameClients().get(1)) + ". Fire!" + NEW_LINE_CHARACTER);
+	}
+
+	/**
+	 * Tells the spectators where a missile landed and what it hit.
+	 * @param target Player whose board was attacked.
+	 * @param row Row attacked.
+	 * @param column Column attacked.
+	 * @param shipHit Ship that was hit, null if the missile missed.
+	 */
+	private void shotLanded(Client target, int row, int column, Ship shipHit) {
+		Client shooter = gameManager.getOpponent(target);
+		StringBuilder frame = new StringBuilder(96);
+		frame.append(this.nameOf(target)).append("'s board: ").append(row).append(' ').append(column).append(' ')
+				.append(target.getClientGameBoard().gameBoardCells.get(row).get(column).draw()).append(NEW_LINE_CHARACTER);
+		frame.append(this.nameOf(shooter)).append(" fires at ").append(row).append(' ').append(column).append(shipHit == null ? ": miss." : ": hit.");
+		if(shipHit != null && !(shipHit.isAlive()))
+			frame.append(' ').append(this.nameOf(shooter)).append(" sank ").append(this.nameOf(target)).append("'s ").append(shipHit.type).append('!');
+		this.publish(frame.append(NEW_LINE_CHARACTER).toString());
+	}
+
+	/**
+	 * Tells the spectators who won, then closes their feeds; each spectator is disconnected once sent what is queued for them.
+	 * @param winner Player who won the game.
+	 */
+	protected void gameOver(Client winner) {
+		//A spectator who has fallen behind is sent both boards in place of the result, so the boards carry it too.
+		result = "Game over! " + this.nameOf(winner) + " is the winner!" + NEW_LINE_CHARACTER;
+		this.publish(result);
+		for(SpectatorFeed feed : spectators)
+			feed.close();
+		spectators.clear();
+	}
+
+	/**
+	 * Encodes a change once and queues it on every spectator's feed, forgetting spectators who have left.
+	 * @param text Text of the change.
+	 */
+	private void publish(String text) {
+		//Anything encoded before this change no longer shows both boards as they stand.
+		keyframe = null;
+		if(spectators.isEmpty())
+			return;
+		ByteBuffer frame = ProtocolText.encode(text);
+		framesPublished++;
+
+		int kept = 0;
+		for(int index = 0; index < spectators.size(); index++) {
+			SpectatorFeed feed = spectators.get(index);
+			if(feed.offer(frame, this::keyframe))
+				spectators.set(kept++, feed);
+		}
+		//Drop the spectators who have left from the end of the list, the rest having been moved up over them.
+		while(spectators.size() > kept)
+			spectators.remove(spectators.size() - 1);
+	}
+
+	/**
+	 * Returns both boards as they stand, encoding them only if the game has changed since they were last encoded.
+	 * @return Frame holding a line on the game and each player's board, ships hidden until hit.
+	 */
+	private ByteBuffer keyframe() {
+		if(keyframe != null)
+			return keyframe;
+
+		Client firstPlayer = gameManager.getGameClients().get(0);
+		Client secondPlayer = gameManager.getGameClients().get(1);
+		StringBuilder boards = new StringBuilder(512);
+		boards.append(NEW_LINE_CHARACTER).append("Game ").append(gameManager.getGameId()).append(": ").append(this.nameOf(firstPlayer)).append(" vs ").append(this.nameOf(secondPlayer)).append(". ");
+		if(gameManager.isTurnOf(firstPlayer) || gameManager.isTurnOf(secondPlayer))
+			boards.append(this.nameOf(gameManager.isTurnOf(firstPlayer) ? firstPlayer : secondPlayer)).append(" to fire.");
+		else
+			boards.append("Waiting for both fleets to be placed.");
+		boards.append(NEW_LINE_CHARACTER);
+		for(Client player : gameManager.getGameClients()) {
+			boards.append(this.nameOf(player)).append("'s board:").append(NEW_LINE_CHARACTER);
+			player.getClientGameBoard().drawBoardHidingShips(boards);
+		}
+		if(result != null)
+			boards.append(result);
+		keyframe = ProtocolText.encode(boards.toString());
+		return keyframe;
+	}
+
+	/**
+	 * Returns the name a player is shown to spectators by.
+	 * @param player Player to name.
+	 * @return Player's name without surrounding spaces, or their place in the game if they have not yet chosen one.
+	 */
+	private String nameOf(Client player) {
+		String playerName = player.getPlayerName();
+		if(playerName == null)
+			return "Player " + (gameManager.getGameClients().indexOf(player) + 1);
+		return playerName.trim();
+	}
+}
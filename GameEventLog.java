@@ -0,0 +1,365 @@
+package battleship;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only binary log of every game a server runs, for replay and analytics with GameReplay.
+ * Game threads encode each event into an in-memory buffer under a short lock; a writer thread of the log's own swaps that buffer for an empty one
+ * and writes the batch to the file, so no game thread ever waits on the disk. Events reach the file within FLUSH_INTERVAL_MILLIS, and all of them once close() returns.
+ *
+ * The file starts with FILE_HEADER, followed by records written back to back. Every record starts with a one byte event type, the eight byte big-endian game id
+ * and a one byte player number (0 or 1, the order in which the game's players were added), then the event's fields:
+ *   GAME_STARTED rows, columns (player unused); PLAYER_NAMED text; SHIP_PLACED ship type, stern row, stern column, heading, on the player's board;
+ *   MISSILE_FIRED row, column, at the player's board; CHAT text, sent by the player; GAME_OVER (player is the winner); COMPUTER_JOINED (the player is the computer opponent);
+ *   SESSION_STARTED text, the player's session token, so the player can resume the game after a restart. The log should therefore be kept as private as the server.
+ * Rows, columns, headings and ship types are single unsigned bytes (HEADING and SHIPTYPES ordinals); text is a two byte length and that many bytes of UTF-8.
+ * A server restarted on the same log numbers new games after those already in it (see GameRecovery), but a log may hold several runs that each started from game 1,
+ * so a game's records are those after its GAME_STARTED record and before the next GAME_STARTED record with the same id.
+ */
+public class GameEventLog implements Runnable {
+
+	/**
+	 * Bytes at the start of every log file.
+	 */
+	protected static final byte[] FILE_HEADER = "BSLOG1\n".getBytes(StandardCharsets.US_ASCII);
+
+	//Event types.
+	protected static final byte GAME_STARTED = 0x01;
+	protected static final byte PLAYER_NAMED = 0x02;
+	protected static final byte SHIP_PLACED = 0x03;
+	protected static final byte MISSILE_FIRED = 0x04;
+	protected static final byte CHAT = 0x05;
+	protected static final byte GAME_OVER = 0x06;
+	protected static final byte COMPUTER_JOINED = 0x07;
+	protected static final byte SESSION_STARTED = 0x08;
+
+	/**
+	 * Bytes in the type, game id and player number starting every record.
+	 */
+	protected static final int RECORD_HEADER_LENGTH = 10;
+
+	/**
+	 * Longest text recorded, in bytes; longer chat messages are cut short on a character boundary.
+	 */
+	protected static final int MAX_TEXT_LENGTH = 0xFFFF;
+
+	/**
+	 * Longest the writer waits before writing the events gathered so far.
+	 */
+	private static final long FLUSH_INTERVAL_MILLIS = 20;
+
+	/**
+	 * Buffered bytes at which the writer is woken without waiting for the interval to pass.
+	 */
+	private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+	/**
+	 * Starting size of each buffer.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 2 * FLUSH_THRESHOLD;
+
+	/**
+	 * File the log is appended to.
+	 */
+	private FileChannel logFile;
+
+	/**
+	 * Events recorded since the writer last took a batch. Guarded by this log's lock.
+	 */
+	private ByteBuffer pendingEvents;
+
+	/**
+	 * Empty buffer swapped in for pendingEvents when the writer takes a batch. Guarded by this log's lock.
+	 */
+	private ByteBuffer spareBuffer;
+
+	/**
+	 * Position in pendingEvents of the record being written, so the writer is woken by the first record of a batch. Guarded by this log's lock.
+	 */
+	private int recordStart;
+
+	/**
+	 * Set once close() has been called; no more events are recorded. Guarded by this log's lock.
+	 */
+	private boolean closed;
+
+	/**
+	 * Set once writing to the file has failed; later events are dropped rather than held in memory. Only touched by the writer thread.
+	 */
+	private boolean writeFailed;
+
+	/**
+	 * Thread writing batches of events to the file.
+	 */
+	private Thread writerThread;
+
+	/**
+	 * Opens a log file for appending, creating it if need be, and starts the writer thread.
+	 * @param logPath Path of the log file.
+	 * @throws IOException If the file cannot be opened or its header written.
+	 */
+	protected GameEventLog(Path logPath) throws IOException {
+		logFile = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		if(logFile.size() == 0) {
+			ByteBuffer header = ByteBuffer.wrap(FILE_HEADER);
+			while(header.hasRemaining())
+				logFile.write(header);
+		}
+
+		pendingEvents = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		spareBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		writerThread = new Thread(this, "event-log");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Records the start of a game.
+	 * @param gameId Identifier of the game.
+	 * @param numRows Number of rows on each board.
+	 * @param numColumns Number of columns on each board.
+	 */
+	protected synchronized void gameStarted(long gameId, int numRows, int numColumns) {
+		ByteBuffer events = this.startRecord(GAME_STARTED, gameId, 0, 2);
+		if(events == null)
+			return;
+		events.put((byte) numRows);
+		events.put((byte) numColumns);
+		this.finishRecord();
+	}
+
+	/**
+	 * Records the name a player chose.
+	 * @param gameId Identifier of the game.
+	 * @param player Number of the player.
+	 * @param playerName Name of the player.
+	 */
+	protected void playerNamed(long gameId, int player, String playerName) {
+		this.recordText(PLAYER_NAMED, gameId, player, playerName);
+	}
+
+	/**
+	 * Records the session token a player was given, so they can resume the game after a restart.
+	 * @param gameId Identifier of the game.
+	 * @param player Number of the player.
+	 * @param sessionToken Player's session token.
+	 */
+	protected void sessionStarted(long gameId, int player, String sessionToken) {
+		this.recordText(SESSION_STARTED, gameId, player, sessionToken);
+	}
+
+	/**
+	 * Records a chat message.
+	 * @param gameId Identifier of the game.
+	 * @param player Number of the player who sent the message.
+	 * @param message Message sent.
+	 */
+	protected void chatSent(long gameId, int player, String message) {
+		this.recordText(CHAT, gameId, player, message);
+	}
+
+	/**
+	 * Records the end of a game.
+	 * @param gameId Identifier of the game.
+	 * @param winner Number of the player who won.
+	 */
+	protected synchronized void gameOver(long gameId, int winner) {
+		if(this.startRecord(GAME_OVER, gameId, winner, 0) != null)
+			this.finishRecord();
+	}
+
+	/**
+	 * Records that a player is the computer opponent, so the game can be recovered with one.
+	 * @param gameId Identifier of the game.
+	 * @param player Number of the computer player.
+	 */
+	protected synchronized void computerJoined(long gameId, int player) {
+		if(this.startRecord(COMPUTER_JOINED, gameId, player, 0) != null)
+			this.finishRecord();
+	}
+
+	/**
+	 * Returns a listener recording every ship added to one player's board and every missile fired at it.
+	 * @param gameId Identifier of the game.
+	 * @param player Number of the player owning the board.
+	 * @return Listener to subscribe to the board.
+	 */
+	protected BoardListener boardRecorder(long gameId, int player) {
+		return new BoardListener() {
+			public void shipAdded(Ship ship, int sternRow, int sternColumn, HEADING shipHeading) {
+				shipPlaced(gameId, player, ship.type, sternRow, sternColumn, shipHeading);
+			}
+
+			public void missileFired(int row, int column, Ship shipHit) {
+				GameEventLog.this.missileFired(gameId, player, row, column);
+			}
+		};
+	}
+
+	/**
+	 * Records a ship added to a player's board.
+	 * @param gameId Identifier of the game.
+	 * @param player Number of the player owning the board.
+	 * @param shipType Type of the ship.
+	 * @param sternRow Row of the ship's stern.
+	 * @param sternColumn Column of the ship's stern.
+	 * @param shipHeading Direction in which the ship is facing.
+	 */
+	private synchronized void shipPlaced(long gameId, int player, SHIPTYPES shipType, int sternRow, int sternColumn, HEADING shipHeading) {
+		ByteBuffer events = this.startRecord(SHIP_PLACED, gameId, player, 4);
+		if(events == null)
+			return;
+		events.put((byte) shipType.ordinal());
+		events.put((byte) sternRow);
+		events.put((byte) sternColumn);
+		events.put((byte) shipHeading.ordinal());
+		this.finishRecord();
+	}
+
+	/**
+	 * Records a missile fired at a player's board.
+	 * @param gameId Identifier of the game.
+	 * @param player Number of the player owning the board.
+	 * @param row Row attacked.
+	 * @param column Column attacked.
+	 */
+	private synchronized void missileFired(long gameId, int player, int row, int column) {
+		ByteBuffer events = this.startRecord(MISSILE_FIRED, gameId, player, 2);
+		if(events == null)
+			return;
+		events.put((byte) row);
+		events.put((byte) column);
+		this.finishRecord();
+	}
+
+	/**
+	 * Records an event whose only field is text. The text is encoded before taking the lock.
+	 * @param eventType Type of the event.
+	 * @param gameId Identifier of the game.
+	 * @param player Number of the player.
+	 * @param text Text of the event.
+	 */
+	private void recordText(byte eventType, long gameId, int player, String text) {
+		byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+		int textLength = BinaryProtocol.utf8Prefix(textBytes, MAX_TEXT_LENGTH);
+
+		synchronized(this) {
+			ByteBuffer events = this.startRecord(eventType, gameId, player, 2 + textLength);
+			if(events == null)
+				return;
+			events.putShort((short) textLength);
+			events.put(textBytes, 0, textLength);
+			this.finishRecord();
+		}
+	}
+
+	/**
+	 * Writes the start of a record into the pending events, growing the buffer if it cannot hold the whole record. Called with this log's lock held.
+	 * @param eventType Type of the event.
+	 * @param gameId Identifier of the game.
+	 * @param player Number of the player.
+	 * @param fieldsLength Bytes in the event's fields.
+	 * @return Buffer to write the fields into, or null if the log is closed.
+	 */
+	private ByteBuffer startRecord(byte eventType, long gameId, int player, int fieldsLength) {
+		if(closed)
+			return null;
+
+		int recordLength = RECORD_HEADER_LENGTH + fieldsLength;
+		if(pendingEvents.remaining() < recordLength) {
+			//The writer has fallen behind; hold everything in memory rather than make the game wait.
+			ByteBuffer largerBuffer = ByteBuffer.allocate(Math.max(pendingEvents.capacity() * 2, pendingEvents.position() + recordLength));
+			pendingEvents.flip();
+			largerBuffer.put(pendingEvents);
+			pendingEvents = largerBuffer;
+		}
+		recordStart = pendingEvents.position();
+		pendingEvents.put(eventType);
+		pendingEvents.putLong(gameId);
+		pendingEvents.put((byte) player);
+		return pendingEvents;
+	}
+
+	/**
+	 * Wakes the writer when the first record of a batch arrives, and again once a full batch is waiting. Called with this log's lock held, after each record.
+	 */
+	private void finishRecord() {
+		if(recordStart == 0 || pendingEvents.position() >= FLUSH_THRESHOLD)
+			this.notify();
+	}
+
+	/**
+	 * Writer loop: sleeps until an event is recorded, then takes whatever has been recorded FLUSH_INTERVAL_MILLIS later, or sooner once FLUSH_THRESHOLD bytes are waiting,
+	 * and writes it to the file in one batch. An idle server's writer never wakes. Ends once the log is closed and every event has been written.
+	 */
+	public void run() {
+		while(true) {
+			ByteBuffer batch;
+			boolean lastBatch;
+			synchronized(this) {
+				try {
+					while(!(closed) && pendingEvents.position() == 0)
+						this.wait();
+					//Let the events that follow the first join its batch.
+					if(!(closed) && pendingEvents.position() < FLUSH_THRESHOLD)
+						this.wait(FLUSH_INTERVAL_MILLIS);
+				}
+				catch(InterruptedException error) {
+					//Write what we have and carry on; close() is the way to stop the writer.
+				}
+				lastBatch = closed;
+				batch = pendingEvents;
+				pendingEvents = spareBuffer;
+				spareBuffer = batch;
+			}
+
+			//Only this thread touches the batch until it is swapped back in, which happens after the next wait.
+			this.writeBatch(batch);
+			if(lastBatch)
+				return;
+		}
+	}
+
+	/**
+	 * Writes a batch of events to the file and empties the buffer holding them.
+	 * @param batch Buffer holding the events, positioned at their end.
+	 */
+	private void writeBatch(ByteBuffer batch) {
+		batch.flip();
+		try {
+			while(batch.hasRemaining() && !(writeFailed))
+				logFile.write(batch);
+		}
+		catch(IOException error) {
+			writeFailed = true;
+			System.out.println("Event log error: " + error + ". No further events will be recorded.");
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Stops recording, writes every event already recorded, forces the file to disk and closes it. Later calls have no effect.
+	 */
+	protected void close() {
+		synchronized(this) {
+			if(closed)
+				return;
+			closed = true;
+			this.notify();
+		}
+
+		try {
+			writerThread.join();
+			logFile.force(false);
+			logFile.close();
+		}
+		catch(InterruptedException | IOException error) {
+			System.out.println("Error closing event log: " + error + ".");
+		}
+	}
+}
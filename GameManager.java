@@ -1,50 +1,227 @@
 package battleship;
 
 import java.util.ArrayList;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.util.StringTokenizer;
 import java.lang.NumberFormatException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 
+/**
+ * Administers one game. Each game is an actor: every change to its players and boards is a message handled one at a time, so the game's state needs no locks.
+ * A message sent while the game is idle is handled straight away on the sending thread; one sent while another is being handled waits in the game's mailbox,
+ * which a small pool shared by every game drains. Players fire in turn, starting with the first to join. Spectators are sent the game by a GameBroadcast.
+ */
 public class GameManager {
 
 	/**
-	 * Socket listening for incoming connections.
+	 * Threads draining the mailboxes of games sent a message while busy with another. Shared by every game.
 	 */
-	private ServerSocket connectionListener;
-	
+	private static final ExecutorService MAILBOX_EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+		Thread mailboxThread = new Thread(runnable, "game-mailbox");
+		mailboxThread.setDaemon(true);
+		return mailboxThread;
+	});
+
+	/**
+	 * Most messages a pool thread handles for one game before letting other games' mailboxes run.
+	 */
+	private static final int MAILBOX_BATCH = 64;
+
+	/**
+	 * Identifier of the game administered by this manager, as assigned by the server.
+	 */
+	private long gameId;
+
 	/**
 	 * List of clients belonging to the game administered by this manager.
 	 */
 	private ArrayList<Client> gameClients;
-	
+
+	/**
+	 * Set once the game has been decided and the players told the result.
+	 */
+	private boolean gameOver;
+
+	/**
+	 * Player whose turn it is to fire, null until both fleets are placed.
+	 */
+	private Client playerToMove;
+
+	/**
+	 * Messages sent to the game while it was busy with another, in the order sent.
+	 */
+	private ConcurrentLinkedQueue<Runnable> mailbox;
+
+	/**
+	 * Set while a thread is handling one of the game's messages. Whoever sets it is the only thread touching the game until it is cleared.
+	 */
+	private AtomicBoolean handlingMessage;
+
+	/**
+	 * Log recording this game's events, null if the server keeps no log.
+	 */
+	private GameEventLog eventLog;
+
+	/**
+	 * Told the result once the game is decided, null if nobody is listening.
+	 */
+	private GameOverListener gameOverListener;
+
+	/**
+	 * Sends the game to its spectators, null until the first spectator joins.
+	 */
+	private GameBroadcast broadcast;
+
+	/**
+	 * System.nanoTime() when both fleets were in place and play began, or 0 before then.
+	 */
+	private long playStartedNanos;
+
 	private static final String NEW_LINE_CHARACTER = System.getProperty("line.separator");
-	
-	protected GameManager() {
-		try {
-			connectionListener = new ServerSocket(15527);
-		}
-		catch(IOException error) {
-			System.out.println("Connection error " + error + ".");
-		}		
-		
+
+	/**
+	 * Creates a manager for a single game. The server creates one manager per pair of players.
+	 * @param gameId Identifier of the game, used in server console messages.
+	 */
+	protected GameManager(long gameId) {
+		this(gameId, null);
+	}
+
+	/**
+	 * Creates a manager for a single game whose events are recorded in a log.
+	 * @param gameId Identifier of the game, used in server console messages and the log.
+	 * @param eventLog Log to record the game in, or null for none.
+	 */
+	protected GameManager(long gameId, GameEventLog eventLog) {
+		this.gameId = gameId;
+		this.eventLog = eventLog;
+
 		//Initialize the array lists of clients and client networking objects.
 		gameClients = new ArrayList<Client>();
+		mailbox = new ConcurrentLinkedQueue<Runnable>();
+		handlingMessage = new AtomicBoolean();
 	}
-	
+
+	/**
+	 * Adds a connected player to this game.
+	 * @param playerInput Input stream from the player, or null if the transport delivers lines to the client itself.
+	 * @param outputToPlayer Output stream to the player.
+	 * @return The new player's client.
+	 */
+	protected Client addPlayer(BufferedReader playerInput, PrintWriter outputToPlayer) {
+		Client client = new Client(playerInput, outputToPlayer, this);
+		this.addClient(client);
+		return client;
+	}
+
+	/**
+	 * Adds a computer player to this game, to play against the one connected player.
+	 * @return The computer's client.
+	 */
+	protected Client addComputerPlayer() {
+		Client client = new ComputerClient(this);
+		this.addClient(client);
+		return client;
+	}
+
+	/**
+	 * Adds a player's client to this game, having the log record every change to the player's board. Used by the lobby for players who have already chosen a name.
+	 * @param client Client of the player.
+	 */
+	protected void addClient(Client client) {
+		if(eventLog != null)
+			client.getClientGameBoard().addBoardListener(eventLog.boardRecorder(gameId, gameClients.size()));
+		gameClients.add(client);
+		client.joinGame(this);
+	}
+
+	/**
+	 * Rebuilds a game recovered from the log after a restart: its players, with streams that discard output until each player reconnects,
+	 * the ships on both boards and every missile fired, in order. Play resumes once both fleets are placed, as before the restart.
+	 * The rebuilt boards are only then subscribed to the log, so nothing already in the log is recorded twice.
+	 * @param recoveredGame Game to rebuild.
+	 * @param eventLog Log recording the game's further events, or null for none.
+	 * @return Manager of the rebuilt game, or null if the game cannot be resumed: a player had no session, or the game had in fact been won.
+	 */
+	protected static GameManager restore(GameRecovery.RecoveredGame recoveredGame, GameEventLog eventLog) {
+		GameManager gameManager = new GameManager(recoveredGame.gameId, eventLog);
+		for(int player = 0; player < 2; player++) {
+			if(recoveredGame.computerPlayer[player]) {
+				gameManager.gameClients.add(new ComputerClient(gameManager, recoveredGame.numRows, recoveredGame.numColumns));
+				continue;
+			}
+			if(recoveredGame.playerNames[player] == null || recoveredGame.sessionTokens[player] == null)
+				//Nobody could ask to resume as this player.
+				return null;
+			Client client = new Client(null, new PrintWriter(OutputStream.nullOutputStream()), gameManager, recoveredGame.numRows, recoveredGame.numColumns);
+			client.setPlayerName(recoveredGame.playerNames[player]);
+			gameManager.gameClients.add(client);
+		}
+
+		SHIPTYPES[] shipTypes = SHIPTYPES.values();
+		HEADING[] headings = HEADING.values();
+		for(int player = 0; player < 2; player++) {
+			GameBoard board = gameManager.gameClients.get(player).getClientGameBoard();
+			byte[] ships = recoveredGame.ships[player];
+			for(int ship = 0; ship < 4 * recoveredGame.numShips[player]; ship += 4) {
+				SHIPTYPES shipType = shipTypes[ships[ship]];
+				board.addShip(Ship.newShip(shipType, shipType.toString()), new Position(ships[ship + 1] & 0xFF, ships[ship + 2] & 0xFF), headings[ships[ship + 3]]);
+			}
+		}
+
+		//Missiles fired at each player's board were fired by their opponent.
+		for(int player = 0; player < 2; player++) {
+			Client shooter = gameManager.gameClients.get(1 - player);
+			byte[] missiles = recoveredGame.missiles[player];
+			for(int missile = 0; missile < 2 * recoveredGame.numMissiles[player]; missile += 2)
+				shooter.restoreShot(missiles[missile] & 0xFF, missiles[missile + 1] & 0xFF);
+		}
+
+		boolean everyoneReady = true;
+		for(Client client : gameManager.gameClients) {
+			client.restoreState();
+			everyoneReady &= client.isReadyToPlay();
+		}
+		if(everyoneReady) {
+			for(Client client : gameManager.gameClients)
+				if(!(client.getClientGameBoard().hasShipsRemaining()))
+					//The winning shot was logged but the server stopped before the result was.
+					return null;
+			//Players fire in turn from the first, so whoever has fired fewer missiles is next. A computer's reply lost to the restart is forfeited.
+			Client firstPlayer = gameManager.gameClients.get(0);
+			Client secondPlayer = gameManager.gameClients.get(1);
+			gameManager.playerToMove = recoveredGame.numMissiles[1] > recoveredGame.numMissiles[0] && !(secondPlayer instanceof ComputerClient) ? secondPlayer : firstPlayer;
+			for(Client client : gameManager.gameClients)
+				client.startPlaying();
+		}
+
+		if(eventLog != null)
+			for(int player = 0; player < 2; player++)
+				gameManager.gameClients.get(player).getClientGameBoard().addBoardListener(eventLog.boardRecorder(recoveredGame.gameId, player));
+		return gameManager;
+	}
+
 	/**
 	 * Returns list of clients belonging to game manager.
-	 * Used in main method to get list of clients to determine name of winner.
+	 * Used to get list of clients to determine name of winner.
 	 * @return List of game clients.
 	 */
 	protected ArrayList<Client> getGameClients() {
 		return gameClients;
 	}
-	
+
 	/**
 	 * Returns a reference to the the opponent Client object.
 	 * @param requestingPlayer Player requesting a reference to their opponent's client object.
@@ -57,181 +234,457 @@ public class GameManager {
 			return gameClients.get(1);
 		return gameClients.get(0);
 	}
-	
+
+	/**
+	 * Simple accessor method to return the identifier of the game.
+	 * @return Identifier of the game, as assigned by the server.
+	 */
+	protected long getGameId() {
+		return gameId;
+	}
+
 	/**
-	 * Allows players to set their player names.
+	 * Sends the game a message: handles it now on the calling thread if the game is idle, otherwise leaves it in the mailbox to be handled on the pool
+	 * once the messages before it have been.
+	 * @param message Change to make to the game.
 	 */
-	protected void initializePlayers() {
-		//Asynchronously ask users for their preferred player name and have them add ships to the board.
-		gameClients.parallelStream().forEach(client -> {
+	protected void submit(Runnable message) {
+		if(this.tryEnter()) {
 			try {
-				//Ask the user what name they would like to use.
-				client.clientWriter.println("What user name would you like to use?");
-				client.clientWriter.flush();
-				
-				//Wait for user input and set the client's user name accordingly.
-				client.setPlayerName(client.clientReader.readLine());
+				message.run();
 			}
-			catch (IOException error) {
-				System.out.println("There was an error setting the players' names: " + error + ".");
+			finally {
+				this.leave();
 			}
-				
-			//Allow each player to place their ships on the board.
-			//This boolean will be used to repeat the request to place a given ship type if the user's input is malformed.
-			boolean shipNotAdded = true;
-				
-			//Iterate through each ship type, allowing the user to place one of each.
-			for(SHIPTYPES shipType : SHIPTYPES.values()) {
-				//While the user's input was malformed and the ship was not added, repeat the loop.
-				while(shipNotAdded) {
-					//Give user instructions on how to specify ship placement.
-					client.clientWriter.println(NEW_LINE_CHARACTER + "Place your " + shipType + " on the board." + NEW_LINE_CHARACTER);
-					client.clientWriter.println("Specify name followed by stern position and ship direction." + NEW_LINE_CHARACTER);
-					client.clientWriter.println("Example: Boaty McBoatface 2 3 EAST" + NEW_LINE_CHARACTER);
-					client.clientWriter.println("If placement is invalid, you will be asked to place ship again." + NEW_LINE_CHARACTER);
-					client.clientWriter.flush();
-				
-					//Tokenize the response from the user.
-					StringTokenizer shipPlacement = null;
-					try {
-						shipPlacement = new StringTokenizer(client.clientReader.readLine());
-					}
-					catch(IOException error) {
-					}
-					
-					try {
-						//Ensure input correctly received from user.tokenized and there are at least 4 tokens (ship name, row number, column number and direction). If not, skip rest of loop and try again.
-						if(shipPlacement != null && shipPlacement.countTokens() >= 3) {
-							String shipName = "";
-							//Assuming the user's input was not malformed, all but the last 3 tokens should belong to the ship's name (in case of compound names).
-							while(shipPlacement.countTokens() > 3)
-								shipName += shipPlacement.nextToken(" ") + " ";
-							
-							//The next two tokens should be parseable as ints and the last should be a string specifying the ship's direction.
-							int rowNumber = Integer.parseInt(shipPlacement.nextToken());
-							int columnNumber = Integer.parseInt(shipPlacement.nextToken());
-							String heading = shipPlacement.nextToken();
-							
-							switch (shipType) {
-								case BATTLESHIP:
-									shipNotAdded = !(client.getClientGameBoard().addShip(new Battleship(shipName), new Position(rowNumber, columnNumber), HEADING.valueOf(heading.toUpperCase())));
-									break;
-								case CARRIER:
-									shipNotAdded = !(client.getClientGameBoard().addShip(new Carrier(shipName), new Position(rowNumber, columnNumber), HEADING.valueOf(heading.toUpperCase())));
-									break;
-								case DESTROYER:
-									shipNotAdded = !(client.getClientGameBoard().addShip(new Destroyer(shipName), new Position(rowNumber, columnNumber), HEADING.valueOf(heading.toUpperCase())));
-									break;
-								case CRUISER:
-									shipNotAdded = !(client.getClientGameBoard().addShip(new Cruiser(shipName), new Position(rowNumber, columnNumber), HEADING.valueOf(heading.toUpperCase())));
-									break;
-								case SUBMARINE:
-									shipNotAdded = !(client.getClientGameBoard().addShip(new Submarine(shipName), new Position(rowNumber, columnNumber), HEADING.valueOf(heading.toUpperCase())));
-							}
-						}
-					}
-					catch(NumberFormatException error) {
-						//The coordinates the user specified could not be read as ints. Have them try again.
-						client.clientWriter.println("The coordinates you specified could not be parsed as ints. Please try again.");
-						client.clientWriter.flush();
-					}
-					
-					if(shipNotAdded)
-						client.clientWriter.println("There was a problem adding the " + shipType + " to the board at the location specified. Please try again.");
-					client.clientWriter.flush();
-				}
-				shipNotAdded = true;
-				//Player successfully added a ship to their board. Print the boards for them.
-				if(shipNotAdded)
-					client.drawBoards();
+			return;
+		}
+		mailbox.add(message);
+		this.scheduleMailbox();
+	}
+
+	/**
+	 * Sends the game a message and waits for it to be handled, for a caller outside the game that needs the result before carrying on.
+	 * Must not be called while handling a message of the same game.
+	 * @param message Change to make to the game, returning whether it was made.
+	 * @return The message's result, or false if the calling thread was interrupted first.
+	 */
+	protected boolean submitAndWait(BooleanSupplier message) {
+		FutureTask<Boolean> handledMessage = new FutureTask<Boolean>(message::getAsBoolean);
+		this.submit(handledMessage);
+		try {
+			return handledMessage.get();
+		}
+		catch(InterruptedException error) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch(ExecutionException error) {
+			throw new IllegalStateException(error.getCause());
+		}
+	}
+
+	/**
+	 * Makes the calling thread the game's actor if the game is idle and nothing is waiting in its mailbox, so a transport can hand over input it cannot keep,
+	 * such as bytes in its read buffer, without copying it. A thread that succeeds must call leave() once done.
+	 * @return True if the calling thread may now change the game.
+	 */
+	protected boolean tryEnter() {
+		if(!(mailbox.isEmpty() && handlingMessage.compareAndSet(false, true)))
+			return false;
+		this.holdOutput();
+		return true;
+	}
+
+	/**
+	 * Ends the calling thread's turn as the game's actor, handing anything sent meanwhile to the pool. Chat queued while handling the messages in hand
+	 * is written first, then each player is sent everything the turn wrote to them in a single write.
+	 */
+	protected void leave() {
+		try {
+			for(int index = 0; index < gameClients.size(); index++) {
+				gameClients.get(index).deliverChat();
+				gameClients.get(index).releaseOutput();
 			}
-			client.drawBoards();
-		});
+		}
+		finally {
+			//A failure writing to one player must not leave the game's mailbox unhandled for good.
+			handlingMessage.set(false);
+			this.scheduleMailbox();
+		}
 	}
-	
+
 	/**
-	 * Once all players have joined game, call clients' playGame method to begin the game.
+	 * Holds back both players' output until leave(), so however many times a turn flushes their writers, each player's connection is written once.
 	 */
-	protected void playGame() {
-		//Asynchronously call clients' playGame method to begin game.
-		gameClients.parallelStream().forEach(client -> {
+	private void holdOutput() {
+		for(int index = 0; index < gameClients.size(); index++)
+			gameClients.get(index).holdOutput();
+	}
+
+	/**
+	 * Has a pool thread drain the mailbox, unless it is empty or a thread is already handling the game's messages.
+	 */
+	private void scheduleMailbox() {
+		if(!(mailbox.isEmpty()) && handlingMessage.compareAndSet(false, true))
+			MAILBOX_EXECUTOR.execute(this::drainMailbox);
+	}
+
+	/**
+	 * Handles up to MAILBOX_BATCH messages from the mailbox on a pool thread, then lets the pool move on.
+	 */
+	private void drainMailbox() {
+		this.holdOutput();
+		Runnable message;
+		for(int handled = 0; handled < MAILBOX_BATCH && (message = mailbox.poll()) != null; handled++) {
 			try {
-				client.playGame();
+				message.run();
 			}
-			catch(IOException error) {
-				System.out.println("There was an error during game play: " + error + ".");
+			catch(RuntimeException error) {
+				//A bug handling one message must not stop the game handling the rest.
+				System.out.println("Game " + gameId + ": error handling a message: " + error + ".");
+				ServerMetrics.handlerFailed();
 			}
-		});
+		}
+		this.leave();
 	}
-	
+
 	/**
-	 * Waits for connections from 2 players
-	 * @return true once two players have successfully connected.
+	 * Reports whether it is a player's turn to fire.
+	 * @param player Player asking.
+	 * @return True if the player may fire now.
 	 */
-	protected boolean waitForPlayersToConnect() {
-		//Set the number of players for a given game.
-		int maxNumberOfPlayers = 2;
-		
-		//Initialize a socket on which to listen for incoming connections.
-		Socket playerSocket = null;
-		
-		//Wait for all players to connect.
-		while(maxNumberOfPlayers > 0) {
-			try{
-				//When a player connects, get an input and output stream on the socket and create a new Client with the streams.
-				playerSocket = connectionListener.accept();
-				
-				//Create new client and add to the array of clients.
-				gameClients.add(new Client(new BufferedReader(new InputStreamReader(playerSocket.getInputStream())), new PrintWriter(playerSocket.getOutputStream()), this));
-				
-				//Decrement the number of players to ensure we do not have too many players join the game.
-				maxNumberOfPlayers--;
+	protected boolean isTurnOf(Client player) {
+		return playerToMove == player;
+	}
+
+	/**
+	 * Called once a player's missile has landed; it is now their opponent's turn.
+	 * @param shooter Player who fired.
+	 */
+	protected void turnTaken(Client shooter) {
+		playerToMove = this.getOpponent(shooter);
+	}
+
+	/**
+	 * Starts the game once all players have joined by asking each of them for their player name, or for their first ship if they chose a name in the lobby.
+	 * Everything after that is driven by the lines each player sends. Call through submit() once players may be sending input.
+	 */
+	protected void startGame() {
+		//Print status messages to server console; players will not see messages printed using System.out. Must use client.clientWriter to send message to user.
+		System.out.println( "Game " + gameId + ": clients have joined!!!");
+		if(eventLog != null) {
+			GameBoard board = gameClients.get(0).getClientGameBoard();
+			eventLog.gameStarted(gameId, board.getNumRows(), board.getNumColumns());
+			//Players from the lobby already have names; the rest are logged by playerNamed().
+			for(int player = 0; player < gameClients.size(); player++) {
+				Client client = gameClients.get(player);
+				if(client instanceof ComputerClient)
+					eventLog.computerJoined(gameId, player);
+				if(client.getPlayerName() != null)
+					eventLog.playerNamed(gameId, player, client.getPlayerName());
+				if(client.getSessionToken() != null)
+					eventLog.sessionStarted(gameId, player, client.getSessionToken());
 			}
-			catch(IOException error) {
-				System.out.println("Connection error: " + error + ".");
+		}
+
+		for(Client client : gameClients)
+			client.gameStarted();
+	}
+
+	/**
+	 * Asks the player what name they would like to use.
+	 * @param client Player to ask.
+	 */
+	protected static void promptForName(Client client) {
+		if(client.binaryProtocol != null) {
+			client.binaryProtocol.sendMessage(BinaryProtocol.NAME_REQUEST);
+			return;
+		}
+		client.clientWriter.println("What user name would you like to use?");
+		client.clientWriter.flush();
+	}
+
+	/**
+	 * Gives the player instructions on how to place the next ship.
+	 * @param client Player placing the ship.
+	 * @param shipType Type of ship to be placed.
+	 */
+	protected void promptForShip(Client client, SHIPTYPES shipType) {
+		if(client.binaryProtocol != null) {
+			client.binaryProtocol.sendMessage(BinaryProtocol.SHIP_REQUEST, shipType.ordinal());
+			return;
+		}
+		
+		//Give user instructions on how to specify ship placement, encoded once for each type of ship.
+		client.printFixed(ProtocolText.shipPrompt(shipType));
+		client.clientWriter.flush();
+	}
+
+	/**
+	 * Tries to place a ship on the player's board as described by a line of player input.
+	 * Tells the player if the placement was rejected; the caller decides whether to prompt again.
+	 * @param client Player placing the ship.
+	 * @param shipType Type of ship to be placed.
+	 * @param placementLine Line sent by the player: ship name followed by stern row, stern column and heading.
+	 * @return True if the ship was added to the player's board, false otherwise.
+	 */
+	protected boolean placeShip(Client client, SHIPTYPES shipType, String placementLine) {
+		//This boolean will be used to repeat the request to place a given ship type if the user's input is malformed.
+		boolean shipNotAdded = true;
+
+		//Tokenize the response from the user.
+		StringTokenizer shipPlacement = new StringTokenizer(placementLine);
+
+		try {
+			//Ensure input correctly received from user.tokenized and there are at least 4 tokens (ship name, row number, column number and direction). If not, skip rest of loop and try again.
+			if(shipPlacement.countTokens() >= 3) {
+				String shipName = "";
+				//Assuming the user's input was not malformed, all but the last 3 tokens should belong to the ship's name (in case of compound names).
+				while(shipPlacement.countTokens() > 3)
+					shipName += shipPlacement.nextToken(" ") + " ";
+
+				//The next two tokens should be parseable as ints and the last should be a string specifying the ship's direction.
+				int rowNumber = Integer.parseInt(shipPlacement.nextToken());
+				int columnNumber = Integer.parseInt(shipPlacement.nextToken());
+				HEADING heading = HEADING.valueOf(shipPlacement.nextToken().toUpperCase());
+
+				shipNotAdded = !(this.addShip(client, shipType, shipName, rowNumber, columnNumber, heading));
 			}
 		}
-		return true;
+		catch(NumberFormatException error) {
+			//The coordinates the user specified could not be read as ints. Have them try again.
+			client.printFixed(ProtocolText.COORDINATES_NOT_INTS);
+		}
+		catch(IllegalArgumentException error) {
+			//The heading was not one of the cardinal directions; fall through to the generic placement error below.
+		}
+
+		if(shipNotAdded)
+			client.printFixed(ProtocolText.shipRejection(shipType));
+		client.clientWriter.flush();
+
+		return !shipNotAdded;
+	}
+
+	/**
+	 * Places a ship whose position has already been read from the player's input, and tells the player if the placement was rejected.
+	 * Used by the binary protocol.
+	 * @param client Player placing the ship.
+	 * @param shipType Type of ship to be placed.
+	 * @param shipName Name of the ship.
+	 * @param rowNumber Row of the ship's stern.
+	 * @param columnNumber Column of the ship's stern.
+	 * @param heading Direction in which the ship is facing.
+	 * @return True if the ship was added to the player's board, false otherwise.
+	 */
+	protected boolean placeShip(Client client, SHIPTYPES shipType, String shipName, int rowNumber, int columnNumber, HEADING heading) {
+		boolean shipAdded = this.addShip(client, shipType, shipName, rowNumber, columnNumber, heading);
+		if(!(shipAdded))
+			client.binaryProtocol.sendMessage(BinaryProtocol.PLACEMENT_REJECTED, shipType.ordinal());
+		return shipAdded;
+	}
+	
+	/**
+	 * Creates a ship of the given type and tries to add it to the player's board.
+	 * @param client Player placing the ship.
+	 * @param shipType Type of ship to be placed.
+	 * @param shipName Name of the ship.
+	 * @param rowNumber Row of the ship's stern.
+	 * @param columnNumber Column of the ship's stern.
+	 * @param heading Direction in which the ship is facing.
+	 * @return True if the ship was added to the player's board, false otherwise.
+	 */
+	private boolean addShip(Client client, SHIPTYPES shipType, String shipName, int rowNumber, int columnNumber, HEADING heading) {
+		boolean shipAdded = client.getClientGameBoard().addShip(Ship.newShip(shipType, shipName), new Position(rowNumber, columnNumber), heading);
+		if(!(shipAdded))
+			ServerMetrics.placementRejected();
+		return shipAdded;
 	}
 	
 	/**
-	 * Main driver for Battleship. Creates game manager, waits for players to join and then launches game. Notifies players when one wins and closes connections.
-	 * @param args Command line arguments; unused.
-	 * @throws IOException Problems establishing connection between server and clients may result in IOException being thrown. 
+	 * Called by a client once its whole fleet is on the board. When every player is ready, the game begins.
+	 * @param readyPlayer Player who has finished placing ships.
+	 */
+	protected void playerReady(Client readyPlayer) {
+		if(gameOver)
+			return;
+
+		for(Client client : gameClients)
+			if(!(client.isReadyToPlay()))
+				//Still waiting on at least one player.
+				return;
+
+		System.out.println( "Game " + gameId + ": " + gameClients.get(0).getPlayerName() + " vs " + gameClients.get(1).getPlayerName() + " Fire!" );
+		playerToMove = gameClients.get(0);
+		playStartedNanos = System.nanoTime();
+		for(Client client : gameClients)
+			client.startPlaying();
+		if(broadcast != null)
+			broadcast.playStarted();
+	}
+
+	/**
+	 * Records the name a player chose after joining the game, if the game is being logged.
+	 * @param namedPlayer Player who has chosen a name.
+	 */
+	protected void playerNamed(Client namedPlayer) {
+		if(eventLog != null)
+			eventLog.playerNamed(gameId, gameClients.indexOf(namedPlayer), namedPlayer.getPlayerName());
+	}
+
+	/**
+	 * Records a chat message sent by a player, if the game is being logged.
+	 * @param sender Player who sent the message.
+	 * @param message Message sent.
+	 */
+	protected void chatSent(Client sender, String message) {
+		if(eventLog != null)
+			eventLog.chatSent(gameId, gameClients.indexOf(sender), message);
+	}
+
+	/**
+	 * Called by a client whose connection has been lost. Their opponent wins by default.
+	 * @param disconnectedPlayer Player who disconnected.
+	 */
+	protected void playerDisconnected(Client disconnectedPlayer) {
+		this.endGame(this.getOpponent(disconnectedPlayer));
+	}
+
+	/**
+	 * Ends the game: tells both players who won and closes their connections. Only the first call has any effect.
+	 * @param winner Player who won the game.
+	 */
+	protected void endGame(Client winner) {
+		if(gameOver)
+			return;
+		gameOver = true;
+		if(eventLog != null)
+			eventLog.gameOver(gameId, gameClients.indexOf(winner));
+		//Games abandoned while fleets were still being placed were never played.
+		if(playStartedNanos != 0)
+			ServerMetrics.gamePlayed(System.nanoTime() - playStartedNanos);
+
+		String winnerName = winner.getPlayerName();
+
+		for(Client client : this.getGameClients()) {
+			if(client.binaryProtocol != null) {
+				client.binaryProtocol.sendGameOver(client == winner, winnerName);
+				client.disconnect();
+				continue;
+			}
+			client.clientWriter.println("Game over! " + winnerName + " is the winner!" + NEW_LINE_CHARACTER + NEW_LINE_CHARACTER + "Disconnecting.");
+			client.clientWriter.flush();
+			client.disconnect();
+		}
+
+		System.out.println( "Game " + gameId + ": " + winnerName + " won. Clients disconnected." );
+		if(broadcast != null)
+			broadcast.gameOver(winner);
+		if(gameOverListener != null)
+			gameOverListener.gameOver(winner, this.getOpponent(winner));
+	}
+
+	/**
+	 * Adds a spectator to the game, who is sent both boards with ships hidden and then every shot until the game ends. Call through submit().
+	 * @param feed Feed of the spectator.
+	 */
+	protected void addSpectator(SpectatorFeed feed) {
+		if(gameOver) {
+			feed.close();
+			return;
+		}
+		if(broadcast == null)
+			broadcast = new GameBroadcast(this);
+		broadcast.addSpectator(feed);
+	}
+
+	/**
+	 * Sets who is told the result once the game is decided.
+	 * @param gameOverListener Listener to tell.
+	 */
+	protected void setGameOverListener(GameOverListener gameOverListener) {
+		this.gameOverListener = gameOverListener;
+	}
+
+	/**
+	 * Main driver for Battleship. Starts the server, which pairs players as they connect and runs each pair's game independently.
+	 * @param args Command line arguments, in any order: "virtual" runs each player on a virtual thread, "nio" selects the non-blocking transport and a number sets its event loop count,
+	 * "ai" gives every player a computer opponent rather than waiting for a second player, "grace=<seconds>" sets how long a disconnected player keeps their game,
+	 * "log=<path>" appends every game's events to a log for GameReplay, and "metrics=<port>" serves the server's metrics over HTTP on that port
+	 * (0 for any free port) of the loopback interface only, at MetricsEndpoint.METRICS_PATH.
+	 * With a log, games left unfinished by the previous run are recovered from it and wait for their players to reconnect, and a snapshot is kept next to the log to speed up the next recovery.
+	 * @throws IOException Problems opening the listening socket, the log or the metrics port result in IOException being thrown.
 	 */
 	public static void main( String [] args ) throws IOException {
-		//Create game manager to administer game.
-		GameManager gameManager = new GameManager();
-		
-		//Print status messages to server console; players will not see messages printed using System.out. Must use client.clientWriter to send message to user once they have connected.
 		System.out.println( "<----------Welcome to Battleship!---------->" );
-		System.out.println( "Waiting for two players to connect to TCP:15527" );
-		
-		//Once server is listening, wait for players to connect.
-		gameManager.waitForPlayersToConnect();
-		System.out.println( "Clients have joined!!!");		
-		
-		//Start game once all players have joined, initialize players (allow them to select name and place ships on board).
-		gameManager.initializePlayers();
-		
-		//After initialization, launch game.
-		System.out.println( gameManager.gameClients.get(0).getPlayerName() + " vs " + gameManager.gameClients.get(1).getPlayerName() + " Fire!" );
-		gameManager.playGame();		
-		
-		//Once playGame() returns, one player has won. Determine winner, tell both players and close connection.
-		String winnerName = "";
-		if(gameManager.getGameClients().get(0).getClientGameBoard().hasShipsRemaining())
-			winnerName = gameManager.getGameClients().get(0).getPlayerName();
-		else
-			winnerName = gameManager.getGameClients().get(1).getPlayerName();
+		System.out.println( "Waiting for players to connect to TCP:" + GameServer.DEFAULT_PORT );
 
-		for(Client client : gameManager.getGameClients()) {
-			client.clientWriter.println("Game over! " + winnerName + " is the winner!" + NEW_LINE_CHARACTER + NEW_LINE_CHARACTER + "Server shutting down.");
-			client.clientWriter.flush();
-			client.clientWriter.close();
-			client.clientReader.close();
+		boolean useSelector = false;
+		boolean useVirtualThreads = false;
+		boolean computerOpponents = false;
+		Path logPath = null;
+		long gracePeriodSeconds = PlayerLobby.DEFAULT_GRACE_PERIOD_SECONDS;
+		int numLoops = Runtime.getRuntime().availableProcessors();
+		int metricsPort = -1;
+		for(String arg : args) {
+			if(arg.equalsIgnoreCase("nio"))
+				useSelector = true;
+			else if(arg.equalsIgnoreCase("virtual"))
+				useVirtualThreads = true;
+			else if(arg.equalsIgnoreCase("ai"))
+				computerOpponents = true;
+			else if(arg.startsWith("log="))
+				logPath = Paths.get(arg.substring("log=".length()));
+			else if(arg.startsWith("grace="))
+				gracePeriodSeconds = Long.parseLong(arg.substring("grace=".length()));
+			else if(arg.startsWith("metrics="))
+				metricsPort = Integer.parseInt(arg.substring("metrics=".length()));
+			else
+				numLoops = Integer.parseInt(arg);
+		}
+
+		//Create server to accept players and administer games.
+		SelectorGameServer selectorServer = null;
+		GameServer gameServer = null;
+		PlayerLobby lobby;
+		if(useSelector) {
+			//Serve every connection from a handful of selector threads.
+			selectorServer = new SelectorGameServer(GameServer.DEFAULT_PORT, numLoops);
+			lobby = selectorServer.getLobby();
 		}
-			
-		System.out.println( "Shutting down server now... Disconnecting Clients..." );
+		else {
+			gameServer = new GameServer(GameServer.DEFAULT_PORT, useVirtualThreads);
+			lobby = gameServer.getLobby();
+		}
+		lobby.setComputerOpponents(computerOpponents);
+		lobby.setGracePeriod(gracePeriodSeconds * 1000);
+
+		if(logPath != null) {
+			//Recover what the previous run left unfinished before this run appends to the log.
+			GameRecovery recovery = new GameRecovery(logPath, Paths.get(logPath + ".snapshot"));
+			if(Files.exists(logPath))
+				recovery.load();
+
+			GameEventLog eventLog = new GameEventLog(logPath);
+			lobby.setEventLog(eventLog);
+			lobby.restoreGames(recovery);
+			recovery.startSnapshots();
+
+			//Write out whatever is still buffered when the server is stopped.
+			Runtime.getRuntime().addShutdownHook(new Thread(eventLog::close));
+		}
+
+		if(metricsPort >= 0) {
+			//Report metrics to local scrapers only.
+			MetricsEndpoint metricsEndpoint = new MetricsEndpoint(metricsPort, lobby);
+			metricsEndpoint.start();
+			System.out.println( "Serving metrics on http://127.0.0.1:" + metricsEndpoint.getPort() + MetricsEndpoint.METRICS_PATH );
+		}
+
+		//Accept players until the process is stopped.
+		if(selectorServer != null)
+			selectorServer.acceptPlayers();
+		else
+			gameServer.acceptPlayers();
 	}
 }
@@ -0,0 +1,15 @@
+package battleship;
+
+/**
+ * Receives notice when a game has been decided, whether played out or abandoned.
+ * Subscribe with GameManager.setGameOverListener().
+ */
+public interface GameOverListener {
+
+	/**
+	 * Called once, after both players have been told the result.
+	 * @param winner Player who won the game.
+	 * @param loser Player who lost the game.
+	 */
+	void gameOver(Client winner, Client loser);
+}
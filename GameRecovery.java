@@ -0,0 +1,402 @@
+package battleship;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps a compact copy of every unfinished game in a GameEventLog, so that the games can be rebuilt when the server restarts after a crash.
+ * The copy is built from the log alone, never from the live Client and GameBoard objects, so keeping it up to date takes no lock a game thread uses and never pauses play.
+ * Every SNAPSHOT_INTERVAL_MILLIS a thread of its own reads the records appended since its last pass, applies them to the copy and writes the copy to a snapshot file,
+ * together with the log offset it covers. Recovery reads the snapshot, then only the tail of the log after that offset.
+ *
+ * The snapshot file starts with SNAPSHOT_HEADER, the log offset and the highest game id seen, both eight bytes, and the number of games, four bytes. Each game is
+ * its id, rows and columns, then for each player: a flags byte (1 for the computer opponent), the name and the session token, each as a two byte length and UTF-8 (NO_TEXT if none),
+ * the number of ships and each ship's type, stern row, stern column and heading, then a four byte number of missiles fired at the player's board and each missile's row and column.
+ * A snapshot is written to a temporary file and moved into place, so a crash while writing leaves the previous snapshot intact.
+ */
+public class GameRecovery implements Runnable {
+
+	/**
+	 * Bytes at the start of every snapshot file.
+	 */
+	protected static final byte[] SNAPSHOT_HEADER = "BSSNAP3\n".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Length written for a player's name or session token when they have none.
+	 */
+	private static final int NO_TEXT = 0xFFFF;
+
+	/**
+	 * Time between snapshots.
+	 */
+	private static final long SNAPSHOT_INTERVAL_MILLIS = 10000;
+
+	/**
+	 * Log the games are recovered from.
+	 */
+	private Path logPath;
+
+	/**
+	 * Snapshot file, and the temporary file each snapshot is written to first.
+	 */
+	private Path snapshotPath, temporaryPath;
+
+	/**
+	 * Every unfinished game, keyed by game id, in the order the games started.
+	 * Only touched by the thread calling load() until startSnapshots(), then only by the snapshot thread.
+	 */
+	private LinkedHashMap<Long, RecoveredGame> games;
+
+	/**
+	 * Offset of the first log record not yet applied to the games.
+	 */
+	private long logOffset;
+
+	/**
+	 * Highest game id seen, so a restarted server can number new games after it.
+	 */
+	private long lastGameId;
+
+	/**
+	 * Creates a recovery for a log, keeping snapshots next to it.
+	 * @param logPath Path of the log.
+	 * @param snapshotPath Path of the snapshot file.
+	 */
+	protected GameRecovery(Path logPath, Path snapshotPath) {
+		this.logPath = logPath;
+		this.snapshotPath = snapshotPath;
+		this.temporaryPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+		games = new LinkedHashMap<Long, RecoveredGame>();
+		logOffset = GameEventLog.FILE_HEADER.length;
+	}
+
+	/**
+	 * Rebuilds the unfinished games from the last snapshot, if there is a usable one, and the log records written after it.
+	 * @throws IOException If the log cannot be read.
+	 */
+	protected void load() throws IOException {
+		if(Files.exists(snapshotPath)) {
+			try {
+				this.readSnapshot();
+			}
+			catch(IOException | RuntimeException error) {
+				//A damaged snapshot costs a full read of the log, not the start of the server.
+				System.out.println("Ignoring unreadable snapshot " + snapshotPath + ": " + error + ".");
+				games.clear();
+				logOffset = GameEventLog.FILE_HEADER.length;
+				lastGameId = 0;
+			}
+		}
+
+		//A log shorter than the snapshot says is not the log the snapshot was taken from.
+		if(Files.exists(logPath) && Files.size(logPath) < logOffset) {
+			System.out.println("Ignoring snapshot " + snapshotPath + ", which does not match " + logPath + ".");
+			games.clear();
+			logOffset = GameEventLog.FILE_HEADER.length;
+			lastGameId = 0;
+		}
+		this.catchUp();
+	}
+
+	/**
+	 * Returns every game that had not ended when the log was last read.
+	 * @return The games, in the order they started. Must not be used once snapshots have started.
+	 */
+	protected Collection<RecoveredGame> unfinishedGames() {
+		return games.values();
+	}
+
+	/**
+	 * Simple accessor method to return the highest game id in the log.
+	 * @return Highest game id, 0 if the log holds no games.
+	 */
+	protected long getLastGameId() {
+		return lastGameId;
+	}
+
+	/**
+	 * Starts the thread taking a snapshot every SNAPSHOT_INTERVAL_MILLIS.
+	 */
+	protected void startSnapshots() {
+		Thread snapshotThread = new Thread(this, "snapshot");
+		snapshotThread.setDaemon(true);
+		snapshotThread.start();
+	}
+
+	/**
+	 * Snapshot loop: applies the new log records and writes a snapshot, then sleeps, until the thread is interrupted.
+	 */
+	public void run() {
+		while(true) {
+			try {
+				Thread.sleep(SNAPSHOT_INTERVAL_MILLIS);
+				this.catchUp();
+				this.writeSnapshot();
+			}
+			catch(InterruptedException error) {
+				return;
+			}
+			catch(IOException error) {
+				System.out.println("Snapshot error: " + error + ".");
+			}
+		}
+	}
+
+	/**
+	 * Applies every complete log record after logOffset to the games.
+	 * @throws IOException If the log cannot be read.
+	 */
+	protected void catchUp() throws IOException {
+		if(!(Files.exists(logPath)) || Files.size(logPath) <= logOffset)
+			return;
+
+		GameReplay replay = new GameReplay(logPath);
+		try {
+			replay.seek(logOffset);
+			while(replay.next())
+				this.apply(replay);
+			logOffset = replay.position();
+		}
+		finally {
+			replay.close();
+		}
+	}
+
+	/**
+	 * Applies the record last read by a replay to the games.
+	 * @param record Replay positioned just after the record.
+	 */
+	private void apply(GameReplay record) {
+		if(record.eventType == GameEventLog.GAME_STARTED) {
+			games.put(record.gameId, new RecoveredGame(record.gameId, record.numRows, record.numColumns));
+			lastGameId = Math.max(lastGameId, record.gameId);
+			return;
+		}
+
+		RecoveredGame game = games.get(record.gameId);
+		if(game == null || record.player > 1)
+			//A game that started before the log did, or ended already.
+			return;
+
+		switch (record.eventType) {
+			case GameEventLog.PLAYER_NAMED:
+				game.playerNames[record.player] = record.text();
+				break;
+			case GameEventLog.SESSION_STARTED:
+				game.sessionTokens[record.player] = record.text();
+				break;
+			case GameEventLog.COMPUTER_JOINED:
+				game.computerPlayer[record.player] = true;
+				break;
+			case GameEventLog.SHIP_PLACED:
+				game.addShip(record.player, record.shipType.ordinal(), record.row, record.column, record.heading.ordinal());
+				break;
+			case GameEventLog.MISSILE_FIRED:
+				game.addMissile(record.player, record.row, record.column);
+				break;
+			case GameEventLog.GAME_OVER:
+				games.remove(record.gameId);
+				break;
+			default:
+				//Chat does not change the game.
+		}
+	}
+
+	/**
+	 * Writes every unfinished game to the snapshot file, replacing the previous snapshot only once the new one is complete.
+	 * @throws IOException If the snapshot cannot be written.
+	 */
+	protected void writeSnapshot() throws IOException {
+		try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+			output.write(SNAPSHOT_HEADER);
+			output.writeLong(logOffset);
+			output.writeLong(lastGameId);
+			output.writeInt(games.size());
+			for(RecoveredGame game : games.values()) {
+				output.writeLong(game.gameId);
+				output.writeByte(game.numRows);
+				output.writeByte(game.numColumns);
+				for(int player = 0; player < 2; player++) {
+					output.writeByte(game.computerPlayer[player] ? 1 : 0);
+					writeText(output, game.playerNames[player]);
+					writeText(output, game.sessionTokens[player]);
+					output.writeByte(game.numShips[player]);
+					output.write(game.ships[player], 0, 4 * game.numShips[player]);
+					//Repeat shots at a cell are logged too, so a board can take more than 65535 missiles.
+					output.writeInt(game.numMissiles[player]);
+					output.write(game.missiles[player], 0, 2 * game.numMissiles[player]);
+				}
+			}
+		}
+		Files.move(temporaryPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads the games, log offset and last game id from the snapshot file.
+	 * @throws IOException If the file cannot be read or is not a snapshot.
+	 */
+	private void readSnapshot() throws IOException {
+		try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+			byte[] header = new byte[SNAPSHOT_HEADER.length];
+			input.readFully(header);
+			if(!(Arrays.equals(header, SNAPSHOT_HEADER)))
+				throw new IOException("not a snapshot");
+
+			logOffset = input.readLong();
+			lastGameId = input.readLong();
+			int numGames = input.readInt();
+			for(int index = 0; index < numGames; index++) {
+				RecoveredGame game = new RecoveredGame(input.readLong(), input.readUnsignedByte(), input.readUnsignedByte());
+				for(int player = 0; player < 2; player++) {
+					game.computerPlayer[player] = input.readUnsignedByte() == 1;
+					game.playerNames[player] = readText(input);
+					game.sessionTokens[player] = readText(input);
+					int numShips = input.readUnsignedByte();
+					for(int ship = 0; ship < numShips; ship++)
+						game.addShip(player, input.readUnsignedByte(), input.readUnsignedByte(), input.readUnsignedByte(), input.readUnsignedByte());
+					int numMissiles = input.readInt();
+					if(numMissiles < 0)
+						throw new IOException("negative missile count");
+					for(int missile = 0; missile < numMissiles; missile++)
+						game.addMissile(player, input.readUnsignedByte(), input.readUnsignedByte());
+				}
+				games.put(game.gameId, game);
+			}
+		}
+	}
+
+	/**
+	 * Writes a name or session token to a snapshot.
+	 * @param output Snapshot being written.
+	 * @param text Text to write, or null for none.
+	 * @throws IOException If the snapshot cannot be written.
+	 */
+	private static void writeText(DataOutputStream output, String text) throws IOException {
+		if(text == null) {
+			output.writeShort(NO_TEXT);
+			return;
+		}
+		byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+		//Cut on a character boundary, so an overlong name is recovered shorter rather than ending in a broken character.
+		int textLength = BinaryProtocol.utf8Prefix(textBytes, NO_TEXT - 1);
+		output.writeShort(textLength);
+		output.write(textBytes, 0, textLength);
+	}
+
+	/**
+	 * Reads a name or session token written by writeText().
+	 * @param input Snapshot being read.
+	 * @return The text, or null for none.
+	 * @throws IOException If the snapshot cannot be read.
+	 */
+	private static String readText(DataInputStream input) throws IOException {
+		int textLength = input.readUnsignedShort();
+		if(textLength == NO_TEXT)
+			return null;
+		byte[] textBytes = new byte[textLength];
+		input.readFully(textBytes);
+		return new String(textBytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Everything needed to rebuild one game: its players, the ships on each board and the missiles fired at each board, in order. Held as bytes, as in the snapshot.
+	 */
+	protected static class RecoveredGame {
+
+		/**
+		 * Identifier of the game.
+		 */
+		protected long gameId;
+
+		/**
+		 * Size of each board.
+		 */
+		protected int numRows, numColumns;
+
+		/**
+		 * Name of each player, null until chosen.
+		 */
+		protected String[] playerNames = new String[2];
+
+		/**
+		 * Session token of each player, null if they have none.
+		 */
+		protected String[] sessionTokens = new String[2];
+
+		/**
+		 * Whether each player is the computer opponent.
+		 */
+		protected boolean[] computerPlayer = new boolean[2];
+
+		/**
+		 * Ships on each player's board: SHIPTYPES ordinal, stern row, stern column and HEADING ordinal of each, in the order they were placed.
+		 */
+		protected byte[][] ships = new byte[2][4 * SHIPTYPES.values().length];
+		protected int[] numShips = new int[2];
+
+		/**
+		 * Missiles fired at each player's board: row and column of each, in the order they were fired.
+		 */
+		protected byte[][] missiles = new byte[2][];
+		protected int[] numMissiles = new int[2];
+
+		/**
+		 * Creates a game with no ships or missiles yet.
+		 * @param gameId Identifier of the game.
+		 * @param numRows Number of rows on each board.
+		 * @param numColumns Number of columns on each board.
+		 */
+		protected RecoveredGame(long gameId, int numRows, int numColumns) {
+			this.gameId = gameId;
+			this.numRows = numRows;
+			this.numColumns = numColumns;
+			for(int player = 0; player < 2; player++)
+				missiles[player] = new byte[2 * numRows * numColumns];
+		}
+
+		/**
+		 * Adds a ship to a player's board.
+		 * @param player Number of the player.
+		 * @param shipType SHIPTYPES ordinal of the ship.
+		 * @param sternRow Row of the ship's stern.
+		 * @param sternColumn Column of the ship's stern.
+		 * @param heading HEADING ordinal of the ship.
+		 */
+		private void addShip(int player, int shipType, int sternRow, int sternColumn, int heading) {
+			int start = 4 * numShips[player];
+			if(start + 4 > ships[player].length)
+				ships[player] = Arrays.copyOf(ships[player], 2 * ships[player].length);
+			ships[player][start] = (byte) shipType;
+			ships[player][start + 1] = (byte) sternRow;
+			ships[player][start + 2] = (byte) sternColumn;
+			ships[player][start + 3] = (byte) heading;
+			numShips[player]++;
+		}
+
+		/**
+		 * Adds a missile fired at a player's board.
+		 * @param player Number of the player owning the board.
+		 * @param row Row attacked.
+		 * @param column Column attacked.
+		 */
+		private void addMissile(int player, int row, int column) {
+			int start = 2 * numMissiles[player];
+			if(start + 2 > missiles[player].length)
+				//The same cell attacked more than once.
+				missiles[player] = Arrays.copyOf(missiles[player], 2 * missiles[player].length);
+			missiles[player][start] = (byte) row;
+			missiles[player][start + 1] = (byte) column;
+			numMissiles[player]++;
+		}
+	}
+}
@@ -0,0 +1,340 @@
+package battleship;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a log written by GameEventLog by memory-mapping it, and rebuilds the boards of any logged game as they stood after any number of missiles.
+ * Used as a cursor: each call to next() decodes one record into the fields below, allocating nothing, so millions of games can be scanned quickly.
+ * Files larger than MAX_WINDOW_SIZE are mapped a window at a time. A record cut short at the end of the file, as left by a crash, ends the log.
+ */
+public class GameReplay {
+
+	/**
+	 * Most bytes of the file mapped at once.
+	 */
+	private static final int MAX_WINDOW_SIZE = 1 << 30;
+
+	/**
+	 * File being read.
+	 */
+	private FileChannel logFile;
+
+	/**
+	 * Size of the file when it was opened; records appended later are not read.
+	 */
+	private long fileSize;
+
+	/**
+	 * Mapped part of the file, positioned at the next record.
+	 */
+	private MappedByteBuffer window;
+
+	/**
+	 * Offset in the file of the start of the window.
+	 */
+	private long windowStart;
+
+	/**
+	 * Type of the record last read: one of the event types of GameEventLog.
+	 */
+	protected byte eventType;
+
+	/**
+	 * Offset in the file of the record last read, for seek().
+	 */
+	protected long eventOffset;
+
+	/**
+	 * Identifier of the game the record last read belongs to.
+	 */
+	protected long gameId;
+
+	/**
+	 * Number of the player the record last read concerns.
+	 */
+	protected int player;
+
+	/**
+	 * Board size, for GAME_STARTED records.
+	 */
+	protected int numRows, numColumns;
+
+	/**
+	 * Row and column of the stern for SHIP_PLACED records, and of the cell attacked for MISSILE_FIRED records.
+	 */
+	protected int row, column;
+
+	/**
+	 * Ship type and heading, for SHIP_PLACED records.
+	 */
+	protected SHIPTYPES shipType;
+	protected HEADING heading;
+
+	/**
+	 * Position and length in the window of the text of PLAYER_NAMED, CHAT and SESSION_STARTED records.
+	 */
+	private int textStart, textLength;
+
+	/**
+	 * Opens a log and checks its header, ready to read the first record.
+	 * @param logPath Path of the log file.
+	 * @throws IOException If the file cannot be read or is not an event log.
+	 */
+	protected GameReplay(Path logPath) throws IOException {
+		logFile = FileChannel.open(logPath, StandardOpenOption.READ);
+		fileSize = logFile.size();
+		this.mapWindow(0);
+
+		byte[] header = new byte[GameEventLog.FILE_HEADER.length];
+		if(window.remaining() < header.length)
+			throw new IOException(logPath + " is not an event log.");
+		window.get(header);
+		if(!(Arrays.equals(header, GameEventLog.FILE_HEADER)))
+			throw new IOException(logPath + " is not an event log.");
+	}
+
+	/**
+	 * Reads the next record into the fields of this replay.
+	 * @return True if a record was read, false at the end of the log.
+	 * @throws IOException If the record's type is unknown, meaning the file is corrupt.
+	 */
+	protected boolean next() throws IOException {
+		int recordLength = this.recordLengthAt(window.position());
+		if(recordLength < 0) {
+			//The record runs past the window: map the next window from its start, unless the window already reaches the end of the file.
+			if(windowStart + window.limit() >= fileSize)
+				return false;
+			this.mapWindow(windowStart + window.position());
+			recordLength = this.recordLengthAt(0);
+			if(recordLength < 0)
+				return false;
+		}
+
+		int position = window.position();
+		eventOffset = windowStart + position;
+		eventType = window.get(position);
+		gameId = window.getLong(position + 1);
+		player = window.get(position + 9) & 0xFF;
+		int fields = position + GameEventLog.RECORD_HEADER_LENGTH;
+
+		switch (eventType) {
+			case GameEventLog.GAME_STARTED:
+				numRows = window.get(fields) & 0xFF;
+				numColumns = window.get(fields + 1) & 0xFF;
+				break;
+			case GameEventLog.SHIP_PLACED:
+				shipType = SHIPTYPES.values()[window.get(fields) & 0xFF];
+				row = window.get(fields + 1) & 0xFF;
+				column = window.get(fields + 2) & 0xFF;
+				heading = HEADING.values()[window.get(fields + 3) & 0xFF];
+				break;
+			case GameEventLog.MISSILE_FIRED:
+				row = window.get(fields) & 0xFF;
+				column = window.get(fields + 1) & 0xFF;
+				break;
+			case GameEventLog.PLAYER_NAMED:
+			case GameEventLog.CHAT:
+			case GameEventLog.SESSION_STARTED:
+				textLength = window.getShort(fields) & 0xFFFF;
+				textStart = fields + 2;
+				break;
+			default:
+				//GAME_OVER and COMPUTER_JOINED have no fields.
+		}
+		window.position(position + recordLength);
+		return true;
+	}
+
+	/**
+	 * Returns the text of the PLAYER_NAMED, CHAT or SESSION_STARTED record last read.
+	 * @return The text.
+	 */
+	protected String text() {
+		byte[] textBytes = new byte[textLength];
+		window.get(textStart, textBytes);
+		return new String(textBytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the offset of the next record to be read, where reading can carry on once more has been appended to the file.
+	 * @return Offset in the file.
+	 */
+	protected long position() {
+		return windowStart + window.position();
+	}
+
+	/**
+	 * Moves the cursor so the next call to next() reads the record at an offset previously given by eventOffset.
+	 * @param offset Offset of the record in the file.
+	 * @throws IOException If the file cannot be mapped.
+	 */
+	protected void seek(long offset) throws IOException {
+		if(offset >= windowStart && offset <= windowStart + window.limit())
+			window.position((int) (offset - windowStart));
+		else
+			this.mapWindow(offset);
+	}
+
+	/**
+	 * Finds the first game with an identifier.
+	 * @param wantedGameId Identifier of the game.
+	 * @return Offset of the game's GAME_STARTED record, or -1 if the log holds no such game.
+	 * @throws IOException If the file is corrupt.
+	 */
+	protected long findGame(long wantedGameId) throws IOException {
+		while(this.next())
+			if(eventType == GameEventLog.GAME_STARTED && gameId == wantedGameId)
+				return eventOffset;
+		return -1;
+	}
+
+	/**
+	 * Rebuilds both boards of a game by replaying its placements through GameBoard.addShip() and its missiles through GameBoard.fireMissile().
+	 * Ships are named after their type, as the log does not keep names.
+	 * @param gameOffset Offset of the game's GAME_STARTED record.
+	 * @param numMissiles Number of missiles to replay, counting both players'; later missiles are ignored.
+	 * @return The boards of the first and second player.
+	 * @throws IOException If there is no GAME_STARTED record at the offset or the file is corrupt.
+	 */
+	protected GameBoard[] rebuildBoards(long gameOffset, int numMissiles) throws IOException {
+		this.seek(gameOffset);
+		if(!(this.next()) || eventType != GameEventLog.GAME_STARTED)
+			throw new IOException("No game starts at offset " + gameOffset + ".");
+
+		long wantedGameId = gameId;
+		GameBoard[] boards = { new GameBoard(numRows, numColumns), new GameBoard(numRows, numColumns) };
+		int missilesReplayed = 0;
+
+		while(this.next()) {
+			if(gameId != wantedGameId)
+				continue;
+			if(eventType == GameEventLog.GAME_STARTED || eventType == GameEventLog.GAME_OVER)
+				//A later run's game with the same identifier, or the end of this one.
+				break;
+			if(eventType == GameEventLog.SHIP_PLACED)
+				boards[player].addShip(Ship.newShip(shipType, shipType.toString()), new Position(row, column), heading);
+			else if(eventType == GameEventLog.MISSILE_FIRED) {
+				if(missilesReplayed == numMissiles)
+					break;
+				boards[player].fireMissile(row, column);
+				missilesReplayed++;
+			}
+		}
+		return boards;
+	}
+
+	/**
+	 * Works out the length of the record at a position in the window.
+	 * @param position Position of the record's first byte.
+	 * @return Bytes in the record, or -1 if the window ends before the record does.
+	 * @throws IOException If the record's type is unknown.
+	 */
+	private int recordLengthAt(int position) throws IOException {
+		int available = window.limit() - position;
+		if(available < GameEventLog.RECORD_HEADER_LENGTH)
+			return -1;
+
+		int recordLength = GameEventLog.RECORD_HEADER_LENGTH;
+		switch (window.get(position)) {
+			case GameEventLog.GAME_STARTED:
+			case GameEventLog.MISSILE_FIRED:
+				recordLength += 2;
+				break;
+			case GameEventLog.SHIP_PLACED:
+				recordLength += 4;
+				break;
+			case GameEventLog.PLAYER_NAMED:
+			case GameEventLog.CHAT:
+			case GameEventLog.SESSION_STARTED:
+				if(available < recordLength + 2)
+					return -1;
+				recordLength += 2 + (window.getShort(position + recordLength) & 0xFFFF);
+				break;
+			case GameEventLog.GAME_OVER:
+			case GameEventLog.COMPUTER_JOINED:
+				break;
+			default:
+				throw new IOException("Unknown event type " + window.get(position) + " at offset " + (windowStart + position) + ".");
+		}
+		return available < recordLength ? -1 : recordLength;
+	}
+
+	/**
+	 * Maps the part of the file starting at an offset.
+	 * @param offset Offset of the first byte to map.
+	 * @throws IOException If the file cannot be mapped.
+	 */
+	private void mapWindow(long offset) throws IOException {
+		windowStart = offset;
+		window = logFile.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAX_WINDOW_SIZE, fileSize - offset));
+	}
+
+	/**
+	 * Closes the file. The mapping stays valid until it is garbage collected.
+	 * @throws IOException If the file cannot be closed.
+	 */
+	protected void close() throws IOException {
+		logFile.close();
+	}
+
+	/**
+	 * Summarises a log, or draws the boards of one game.
+	 * @param args Path of the log; optionally a game id, whose boards are drawn, and the number of missiles to replay (default all).
+	 * @throws IOException If the log cannot be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0) {
+			System.out.println("Usage: GameReplay <log> [game id [missiles]]");
+			return;
+		}
+		GameReplay replay = new GameReplay(Paths.get(args[0]));
+
+		if(args.length > 1) {
+			long wantedGameId = Long.parseLong(args[1]);
+			int numMissiles = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+			long gameOffset = replay.findGame(wantedGameId);
+			if(gameOffset < 0) {
+				System.out.println("Game " + wantedGameId + " is not in the log.");
+				return;
+			}
+			GameBoard[] boards = replay.rebuildBoards(gameOffset, numMissiles);
+			for(int board = 0; board < boards.length; board++)
+				System.out.println("Player " + board + "'s board:" + GameBoard.NEW_LINE_CHARACTER + boards[board].drawBoard());
+			replay.close();
+			return;
+		}
+
+		long events = 0, games = 0, finishedGames = 0, missiles = 0, chats = 0;
+		long startNanos = System.nanoTime();
+		while(replay.next()) {
+			events++;
+			switch (replay.eventType) {
+				case GameEventLog.GAME_STARTED:
+					games++;
+					break;
+				case GameEventLog.MISSILE_FIRED:
+					missiles++;
+					break;
+				case GameEventLog.CHAT:
+					chats++;
+					break;
+				case GameEventLog.GAME_OVER:
+					finishedGames++;
+					break;
+				default:
+			}
+		}
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		replay.close();
+
+		System.out.printf("%d events in %.3f s: %.0f events/s, %.1f MB/s%n", events, seconds, events / seconds, replay.fileSize / seconds / 1e6);
+		System.out.printf("%d games, %d finished; %d missiles (%.1f per game), %d chat messages%n", games, finishedGames, missiles, (double) missiles / Math.max(1, games), chats);
+	}
+}
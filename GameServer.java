@@ -0,0 +1,185 @@
+package battleship;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running server that accepts player connections and hands them to a PlayerLobby, which pairs them into independent games each run on its own GameManager.
+ * Uses blocking sockets with a reader thread and a writer thread per player, either a platform thread or a virtual thread; see SelectorGameServer for the non-blocking transport.
+ */
+public class GameServer {
+
+	/**
+	 * Default TCP port on which the server listens for players.
+	 */
+	protected static final int DEFAULT_PORT = 15527;
+
+	/**
+	 * Number of connections the operating system may queue while the accepting thread is busy.
+	 */
+	private static final int ACCEPT_BACKLOG = 1024;
+
+	/**
+	 * Socket listening for incoming connections.
+	 */
+	private ServerSocket connectionListener;
+
+	/**
+	 * Executor running a blocking reader loop and writer loop for every connected player.
+	 */
+	private ExecutorService gameExecutor;
+
+	/**
+	 * Lobby in which connected players choose a name and wait for an opponent.
+	 */
+	private PlayerLobby lobby;
+
+	/**
+	 * Creates a server listening on the specified port.
+	 * @param port TCP port on which to listen for players.
+	 * @throws IOException If the listening socket cannot be opened.
+	 */
+	protected GameServer(int port) throws IOException {
+		this(port, false);
+	}
+
+	/**
+	 * Creates a server listening on the specified port, optionally running each player's reader on its own virtual thread.
+	 * @param port TCP port on which to listen for players.
+	 * @param useVirtualThreads True to give each player a virtual thread rather than a platform thread.
+	 * @throws IOException If the listening socket cannot be opened.
+	 */
+	protected GameServer(int port, boolean useVirtualThreads) throws IOException {
+		connectionListener = new ServerSocket(port, ACCEPT_BACKLOG);
+
+		//Players spend most of their time blocked on input, so threads are created on demand rather than capped at the core count.
+		if(useVirtualThreads)
+			gameExecutor = newVirtualThreadExecutor();
+		else
+			gameExecutor = Executors.newCachedThreadPool();
+		lobby = new PlayerLobby();
+	}
+
+	/**
+	 * Creates an executor starting a new virtual thread for every task, so a player blocked in readLine() costs a small heap object rather than a platform thread.
+	 * Virtual threads need Java 21; the factory is looked up reflectively so the server still builds and runs on older JDKs, falling back to platform threads there.
+	 * @return Executor running each task on its own virtual thread, or a cached platform thread pool if virtual threads are unavailable.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException error) {
+			System.out.println("Virtual threads need Java 21 or later; using platform threads instead.");
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Accepts connections forever, admitting each player to the lobby and running a reader and a writer for them on the game executor.
+	 */
+	protected void acceptPlayers() {
+		while(!(connectionListener.isClosed())) {
+			try {
+				Socket playerSocket = connectionListener.accept();
+				ServerMetrics.connectionAccepted();
+				OutputStream socketOutput = playerSocket.getOutputStream();
+				StreamOutput playerOutput = new StreamOutput(socketOutput);
+				Client client = lobby.admitPlayer(new BufferedReader(new InputStreamReader(ServerMetrics.countingInput(new SocketInput(playerSocket)))), new PrintWriter(playerOutput));
+				client.setPlayerOutput(playerOutput);
+				//Only the connection's writer thread blocks on the socket, never the thread handling the player's game.
+				gameExecutor.execute(playerOutput::writeQueued);
+				//A spectator's reader thread writes the game to them instead, until it ends, once what the writer thread holds has gone out.
+				client.setFeedWriter(feed -> {
+					try {
+						playerOutput.awaitWritten();
+					}
+					catch(InterruptedException error) {
+						return;
+					}
+					feed.writeTo(socketOutput);
+				});
+				gameExecutor.execute(() -> {
+					client.readCommands();
+					//The writer thread closes the socket once everything written to the player has gone out.
+					playerOutput.close();
+					ServerMetrics.connectionClosed();
+				});
+			}
+			catch(IOException error) {
+				//Closing the listener during shutdown interrupts accept(); that is not worth reporting.
+				if(!(connectionListener.isClosed()))
+					System.out.println("Connection error: " + error + ".");
+			}
+		}
+	}
+
+	/**
+	 * Simple accessor method to return the lobby, so it can be configured before acceptPlayers() is called.
+	 * @return Lobby shared by every connection to this server.
+	 */
+	protected PlayerLobby getLobby() {
+		return lobby;
+	}
+
+	/**
+	 * Simple accessor method to return the port the server is listening on. Useful when the server was created on port 0.
+	 * @return Local port of the listening socket.
+	 */
+	protected int getPort() {
+		return connectionListener.getLocalPort();
+	}
+
+	/**
+	 * Stops accepting players and closes the listening socket. Games already in progress run to completion.
+	 */
+	protected void shutdown() {
+		try {
+			connectionListener.close();
+		}
+		catch(IOException error) {
+			System.out.println("Error closing listener: " + error + ".");
+		}
+		gameExecutor.shutdown();
+	}
+
+	/**
+	 * Input of a player's socket that shuts down only the input when closed, so a Client closing its reader stops the player's reader thread
+	 * without cutting off output the writer thread has yet to write.
+	 */
+	private static class SocketInput extends FilterInputStream {
+
+		/**
+		 * Socket the input is read from.
+		 */
+		private Socket playerSocket;
+
+		/**
+		 * Wraps the input of a player's socket.
+		 * @param playerSocket Socket to read from.
+		 * @throws IOException If the socket's input cannot be opened.
+		 */
+		private SocketInput(Socket playerSocket) throws IOException {
+			super(playerSocket.getInputStream());
+			this.playerSocket = playerSocket;
+		}
+
+		@Override
+		public void close() {
+			try {
+				playerSocket.shutdownInput();
+			}
+			catch(IOException error) {
+				//The writer thread has already closed the socket, or its input was already shut down.
+			}
+		}
+	}
+}
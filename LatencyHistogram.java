@@ -0,0 +1,123 @@
+package battleship;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations in nanoseconds, recorded from any number of threads at once. Each power of two is split into SUB_BUCKETS buckets,
+ * so a quantile read back is within a quarter of the true value; every bucket is a striped LongAdder, so recording costs a few nanoseconds and threads do not contend.
+ * Quantiles are read from the buckets as they stand while recording carries on, so they are approximate while the histogram is busy.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Bits of each value below its highest set bit that pick its bucket.
+	 */
+	private static final int SUB_BUCKET_BITS = 2;
+
+	/**
+	 * Buckets each power of two is split into.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Count of values recorded in each bucket, smallest values first.
+	 */
+	private LongAdder[] buckets;
+
+	/**
+	 * Sum of every value recorded.
+	 */
+	private LongAdder total;
+
+	/**
+	 * Creates an empty histogram.
+	 */
+	protected LatencyHistogram() {
+		buckets = new LongAdder[Long.SIZE << SUB_BUCKET_BITS];
+		for(int index = 0; index < buckets.length; index++)
+			buckets[index] = new LongAdder();
+		total = new LongAdder();
+	}
+
+	/**
+	 * Records a duration.
+	 * @param nanos Duration in nanoseconds; negative durations, from a clock read on two cores, count as 0.
+	 */
+	protected void record(long nanos) {
+		long value = Math.max(0, nanos);
+		buckets[bucketOf(value)].increment();
+		total.add(value);
+	}
+
+	/**
+	 * Simple accessor method to return the number of durations recorded.
+	 * @return Durations recorded.
+	 */
+	protected long getCount() {
+		long count = 0;
+		for(LongAdder bucket : buckets)
+			count += bucket.sum();
+		return count;
+	}
+
+	/**
+	 * Simple accessor method to return the sum of every duration recorded.
+	 * @return Total nanoseconds recorded.
+	 */
+	protected long getTotalNanos() {
+		return total.sum();
+	}
+
+	/**
+	 * Estimates a quantile of the durations recorded.
+	 * @param quantile Fraction of durations that should be no longer than the result, from 0 to 1.
+	 * @return Largest duration the bucket holding the quantile can hold, in nanoseconds; 0 if nothing has been recorded.
+	 */
+	protected long getQuantile(double quantile) {
+		long[] counts = new long[buckets.length];
+		long count = 0;
+		for(int index = 0; index < buckets.length; index++) {
+			counts[index] = buckets[index].sum();
+			count += counts[index];
+		}
+		if(count == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(quantile * count));
+		long seen = 0;
+		for(int index = 0; index < counts.length; index++) {
+			seen += counts[index];
+			if(seen >= rank)
+				return largestIn(index);
+		}
+		return largestIn(counts.length - 1);
+	}
+
+	/**
+	 * Finds the bucket a value is counted in.
+	 * @param value Value of at least 0.
+	 * @return Index of the bucket.
+	 */
+	private static int bucketOf(long value) {
+		if(value < SUB_BUCKETS)
+			return (int) value;
+		int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return ((highestBit - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) | subBucket;
+	}
+
+	/**
+	 * Finds the largest value a bucket counts.
+	 * @param index Index of the bucket.
+	 * @return Largest value counted in the bucket.
+	 */
+	private static long largestIn(int index) {
+		if(index < SUB_BUCKETS)
+			return index;
+		int highestBit = (index >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+		if(highestBit >= Long.SIZE - 1)
+			return Long.MAX_VALUE;
+		long smallest = (1L << highestBit) | ((long) (index & (SUB_BUCKETS - 1)) << (highestBit - SUB_BUCKET_BITS));
+		return smallest + (1L << (highestBit - SUB_BUCKET_BITS)) - 1;
+	}
+}
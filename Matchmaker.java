@@ -0,0 +1,269 @@
+package battleship;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Pairs players waiting for a game with opponents of similar rating. Players are queued by rating band, each band a lock-free queue of its own,
+ * so arrivals in different bands never contend and no lock is held while searching. A player arriving is paired at once with anyone waiting in their band.
+ * Otherwise they wait, and a thread of the matchmaker's own widens their search a band at a time, so that by the end of the wait budget they will accept anyone.
+ *
+ * Each queued player holds a ticket, which is taken by compare-and-set: whoever takes both tickets of a pair starts their game, and a player who leaves
+ * cancels theirs the same way, so every player is matched or cancelled exactly once. Taken tickets are unlinked from their band by the next search to pass them.
+ */
+public class Matchmaker implements Runnable {
+
+	/**
+	 * Rating points covered by each band.
+	 */
+	protected static final int BAND_WIDTH = 100;
+
+	/**
+	 * Number of bands. Ratings above the top band are queued in it.
+	 */
+	protected static final int NUM_BANDS = 32;
+
+	/**
+	 * Longest a player waits before being paired with anyone else waiting, whatever their ratings.
+	 */
+	protected static final long WAIT_BUDGET_MILLIS = 10000;
+
+	/**
+	 * Time between widening sweeps.
+	 */
+	private static final long SWEEP_INTERVAL_MILLIS = 50;
+
+	/**
+	 * Ticket states: waiting to be paired, held for a moment by its own player's search, or taken by a pairing or cancellation.
+	 */
+	private static final int WAITING = 0, HELD = 1, TAKEN = 2;
+
+	/**
+	 * A player's place in the queue.
+	 */
+	private static final class Ticket {
+
+		/**
+		 * Player waiting.
+		 */
+		final Client player;
+
+		/**
+		 * Band the player is queued in.
+		 */
+		final int band;
+
+		/**
+		 * System.nanoTime() when the player was queued.
+		 */
+		final long queuedNanos;
+
+		/**
+		 * WAITING, HELD or TAKEN.
+		 */
+		final AtomicInteger state;
+
+		/**
+		 * Creates a waiting ticket.
+		 * @param player Player waiting.
+		 * @param band Band the player is queued in.
+		 * @param queuedNanos System.nanoTime() when the player was queued.
+		 */
+		Ticket(Client player, int band, long queuedNanos) {
+			this.player = player;
+			this.band = band;
+			this.queuedNanos = queuedNanos;
+			this.state = new AtomicInteger(WAITING);
+		}
+	}
+
+	/**
+	 * Tickets of the players waiting in each band, oldest first.
+	 */
+	private ConcurrentLinkedQueue<Ticket>[] bands;
+
+	/**
+	 * Ticket of every player waiting, for cancelling.
+	 */
+	private ConcurrentHashMap<Client, Ticket> tickets;
+
+	/**
+	 * Called with each pair of players matched, the one who waited longer first, to start their game.
+	 */
+	private BiConsumer<Client, Client> matchHandler;
+
+	/**
+	 * Creates an empty matchmaker and starts the thread widening its searches.
+	 * @param matchHandler Called with each pair of players matched, the one who waited longer first; starts their game.
+	 */
+	@SuppressWarnings("unchecked")
+	protected Matchmaker(BiConsumer<Client, Client> matchHandler) {
+		this.matchHandler = matchHandler;
+		tickets = new ConcurrentHashMap<Client, Ticket>();
+		bands = (ConcurrentLinkedQueue<Ticket>[]) new ConcurrentLinkedQueue<?>[NUM_BANDS];
+		for(int band = 0; band < NUM_BANDS; band++)
+			bands[band] = new ConcurrentLinkedQueue<Ticket>();
+
+		Thread matchmakerThread = new Thread(this, "matchmaker");
+		matchmakerThread.setDaemon(true);
+		matchmakerThread.start();
+	}
+
+	/**
+	 * Finds a player an opponent: pairs them at once with someone waiting in their band, or tells them to wait and queues them.
+	 * @param player Player wanting a game.
+	 * @param rating Player's rating.
+	 */
+	protected void enqueue(Client player, int rating) {
+		Ticket ticket = new Ticket(player, Math.min(NUM_BANDS - 1, Math.max(0, rating / BAND_WIDTH)), System.nanoTime());
+
+		//Nobody can see the ticket yet, so only the partner's needs taking.
+		Ticket partner;
+		while((partner = this.findPartner(ticket, 0)) != null) {
+			if(partner.state.compareAndSet(WAITING, TAKEN)) {
+				ticket.state.set(TAKEN);
+				this.matched(partner, ticket);
+				return;
+			}
+		}
+
+		player.waitForGame();
+		tickets.put(player, ticket);
+		bands[ticket.band].add(ticket);
+		//Another player may have joined the band at the same moment, each searching before the other was queued; search again now this ticket can be found.
+		this.matchQueued(ticket, 0);
+	}
+
+	/**
+	 * Removes a player from the queue, unless they have been paired.
+	 * @param player Player leaving.
+	 * @return True if the player was waiting and has been removed; false if they were paired, or were never queued.
+	 */
+	protected boolean cancel(Client player) {
+		Ticket ticket = tickets.remove(player);
+		if(ticket == null)
+			return false;
+		while(true) {
+			if(ticket.state.compareAndSet(WAITING, TAKEN))
+				return true;
+			if(ticket.state.get() == TAKEN)
+				return false;
+			//Held by a search of the player's own, which lets go at once.
+			Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * Simple accessor method to return the number of players waiting for an opponent.
+	 * @return Number of players queued.
+	 */
+	protected int getQueuedCount() {
+		return tickets.size();
+	}
+
+	/**
+	 * Widening loop: every SWEEP_INTERVAL_MILLIS, searches again for every waiting player, as far from their band as the time they have waited allows.
+	 */
+	public void run() {
+		long waitBudgetNanos = TimeUnit.MILLISECONDS.toNanos(WAIT_BUDGET_MILLIS);
+		while(true) {
+			try {
+				Thread.sleep(SWEEP_INTERVAL_MILLIS);
+			}
+			catch(InterruptedException error) {
+				return;
+			}
+
+			long nowNanos = System.nanoTime();
+			for(ConcurrentLinkedQueue<Ticket> band : bands) {
+				Iterator<Ticket> waiting = band.iterator();
+				while(waiting.hasNext()) {
+					Ticket ticket = waiting.next();
+					if(ticket.state.get() == TAKEN) {
+						waiting.remove();
+						continue;
+					}
+					//One more band either side for every equal share of the budget waited; the whole range once it is spent.
+					long waitedNanos = nowNanos - ticket.queuedNanos;
+					int reach = waitedNanos >= waitBudgetNanos ? NUM_BANDS : (int) (waitedNanos * NUM_BANDS / waitBudgetNanos);
+					this.matchQueued(ticket, reach);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches for a partner for a queued player, holding their ticket while taking the partner's so nobody else can pair them meanwhile.
+	 * @param ticket Ticket of the queued player.
+	 * @param reach Bands either side of the player's own to search.
+	 */
+	private void matchQueued(Ticket ticket, int reach) {
+		Ticket partner;
+		while((partner = this.findPartner(ticket, reach)) != null) {
+			if(!(ticket.state.compareAndSet(WAITING, HELD)))
+				//Paired or cancelled by someone else, or being searched for by them.
+				return;
+			if(partner.state.compareAndSet(WAITING, TAKEN)) {
+				ticket.state.set(TAKEN);
+				this.matched(ticket.queuedNanos <= partner.queuedNanos ? ticket : partner, ticket.queuedNanos <= partner.queuedNanos ? partner : ticket);
+				return;
+			}
+			ticket.state.set(WAITING);
+		}
+	}
+
+	/**
+	 * Finds the nearest waiting player to a ticket's band, looking in its own band first and then outwards.
+	 * @param ticket Ticket of the player searching.
+	 * @param reach Bands either side of the player's own to search.
+	 * @return Oldest waiting ticket in the nearest band holding one, or null if there is none within reach.
+	 */
+	private Ticket findPartner(Ticket ticket, int reach) {
+		for(int distance = 0; distance <= reach; distance++) {
+			if(ticket.band - distance < 0 && ticket.band + distance >= NUM_BANDS)
+				return null;
+			Ticket partner = this.oldestWaiting(ticket.band - distance, ticket);
+			if(partner == null && distance > 0)
+				partner = this.oldestWaiting(ticket.band + distance, ticket);
+			if(partner != null)
+				return partner;
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the oldest waiting ticket in a band other than the searcher's, unlinking taken tickets passed on the way.
+	 * @param band Band to search; may be out of range, in which case there is nobody.
+	 * @param searcher Ticket of the player searching.
+	 * @return The oldest waiting ticket, or null if there is none.
+	 */
+	private Ticket oldestWaiting(int band, Ticket searcher) {
+		if(band < 0 || band >= NUM_BANDS)
+			return null;
+		Iterator<Ticket> waiting = bands[band].iterator();
+		while(waiting.hasNext()) {
+			Ticket ticket = waiting.next();
+			int state = ticket.state.get();
+			if(state == TAKEN)
+				waiting.remove();
+			else if(state == WAITING && ticket != searcher)
+				return ticket;
+		}
+		return null;
+	}
+
+	/**
+	 * Hands a pair whose tickets have both been taken to the match handler.
+	 * @param first Ticket of the player who waited longer.
+	 * @param second Ticket of the other player.
+	 */
+	private void matched(Ticket first, Ticket second) {
+		tickets.remove(first.player, first);
+		tickets.remove(second.player, second);
+		matchHandler.accept(first.player, second.player);
+	}
+}
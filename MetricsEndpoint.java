@@ -0,0 +1,169 @@
+package battleship;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP endpoint reporting the server's metrics as plain text, one "name{labels} value" line each, as Prometheus and curl both read them:
+ *   curl http://127.0.0.1:9100/metrics
+ * Reports the ServerMetrics counts and timings, the lobby's sessions, queue and games, chat and output counts, and the rate of each type of command
+ * since the previous report. Listens on the loopback interface only. Reports are built on the endpoint's own thread, so the game never waits on a scrape.
+ */
+public class MetricsEndpoint {
+
+	/**
+	 * Path the report is served on.
+	 */
+	protected static final String METRICS_PATH = "/metrics";
+
+	/**
+	 * Quantiles reported for each histogram.
+	 */
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	/**
+	 * Server answering requests.
+	 */
+	private HttpServer httpServer;
+
+	/**
+	 * Lobby whose sessions, queue and games are reported.
+	 */
+	private PlayerLobby lobby;
+
+	/**
+	 * System.nanoTime() of the previous report, or of the endpoint's creation before the first. Guarded by this endpoint's lock.
+	 */
+	private long previousReportNanos;
+
+	/**
+	 * Commands of each type handled as of the previous report, indexed by CommandDecoder constant. Guarded by this endpoint's lock.
+	 */
+	private long[] previousCommands;
+
+	/**
+	 * Creates the endpoint on a loopback port. It answers nothing until start() is called.
+	 * @param port Port to listen on, or 0 for any free port.
+	 * @param lobby Lobby whose sessions, queue and games are reported.
+	 * @throws IOException If the port cannot be bound.
+	 */
+	protected MetricsEndpoint(int port, PlayerLobby lobby) throws IOException {
+		this.lobby = lobby;
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.createContext(METRICS_PATH, this::serveReport);
+		previousReportNanos = System.nanoTime();
+		previousCommands = new long[ServerMetrics.COMMAND_LABELS.length];
+	}
+
+	/**
+	 * Starts answering requests, on a thread of the HTTP server's own.
+	 */
+	protected void start() {
+		httpServer.start();
+	}
+
+	/**
+	 * Stops answering requests and releases the port.
+	 */
+	protected void stop() {
+		httpServer.stop(0);
+	}
+
+	/**
+	 * Simple accessor method to return the port the endpoint is listening on. Useful when the endpoint was created on port 0.
+	 * @return Local port of the HTTP server.
+	 */
+	protected int getPort() {
+		return httpServer.getAddress().getPort();
+	}
+
+	/**
+	 * Answers a request with the report.
+	 * @param exchange Request and its response.
+	 * @throws IOException If the response cannot be written.
+	 */
+	private void serveReport(HttpExchange exchange) throws IOException {
+		byte[] reportBytes = this.report().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+		exchange.sendResponseHeaders(200, reportBytes.length);
+		try(OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(reportBytes);
+		}
+	}
+
+	/**
+	 * Builds the report of every metric as it stands.
+	 * @return One line per metric, each ending with a new line.
+	 */
+	protected synchronized String report() {
+		StringBuilder report = new StringBuilder(2048);
+		long nowNanos = System.nanoTime();
+		double secondsSincePrevious = Math.max(1, nowNanos - previousReportNanos) / 1e9;
+		previousReportNanos = nowNanos;
+
+		long accepted = ServerMetrics.getConnectionsAccepted();
+		appendLine(report, "battleship_connections_accepted_total", accepted);
+		appendLine(report, "battleship_connections_open", accepted - ServerMetrics.getConnectionsClosed());
+		appendLine(report, "battleship_sessions", lobby.getSessionCount());
+		appendLine(report, "battleship_sessions_detached", lobby.getDetachedSessionCount());
+		appendLine(report, "battleship_players_queued", lobby.getQueuedPlayerCount());
+		appendLine(report, "battleship_games_live", lobby.getLiveGameCount());
+
+		for(int command = 0; command < ServerMetrics.COMMAND_LABELS.length; command++) {
+			long handled = ServerMetrics.getCommandsHandled(command);
+			String labels = "{type=\"" + ServerMetrics.COMMAND_LABELS[command] + "\"}";
+			appendLine(report, "battleship_commands_total" + labels, handled);
+			report.append("battleship_commands_per_second").append(labels).append(' ')
+					.append(String.format(Locale.ROOT, "%.2f", (handled - previousCommands[command]) / secondsSincePrevious)).append('\n');
+			previousCommands[command] = handled;
+		}
+
+		appendLine(report, "battleship_placements_rejected_total", ServerMetrics.getPlacementsRejected());
+		appendLine(report, "battleship_bytes_received_total", ServerMetrics.getBytesReceived());
+		appendLine(report, "battleship_bytes_sent_total", ServerMetrics.getBytesSent());
+		appendLine(report, "battleship_output_queued_total", ChannelConnection.getOutputQueued());
+		appendLine(report, "battleship_channel_writes_total", ChannelConnection.getChannelWrites());
+		appendLine(report, "battleship_chat_messages_queued", ChatOutbox.getMessagesQueued());
+		appendLine(report, "battleship_chat_messages_dropped_total", ChatOutbox.getMessagesDropped());
+		appendLine(report, "battleship_chat_messages_rate_limited_total", ChatOutbox.getMessagesRateLimited());
+		appendLine(report, "battleship_handler_errors_total", ServerMetrics.getHandlerErrors());
+
+		appendHistogram(report, "battleship_fire_missile_nanoseconds", ServerMetrics.getFireMissileLatency(), TimeUnit.NANOSECONDS);
+		appendHistogram(report, "battleship_game_duration_seconds", ServerMetrics.getGameDuration(), TimeUnit.SECONDS);
+		return report.toString();
+	}
+
+	/**
+	 * Appends one metric to the report.
+	 * @param report Report being built.
+	 * @param name Name of the metric, with any labels.
+	 * @param value Value of the metric.
+	 */
+	private static void appendLine(StringBuilder report, String name, long value) {
+		report.append(name).append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * Appends a histogram to the report as quantiles, a count and a sum, in the unit given.
+	 * @param report Report being built.
+	 * @param name Name of the metric.
+	 * @param histogram Histogram of nanosecond durations.
+	 * @param unit Unit the metric is reported in.
+	 */
+	private static void appendHistogram(StringBuilder report, String name, LatencyHistogram histogram, TimeUnit unit) {
+		double nanosPerUnit = unit.toNanos(1);
+		for(double quantile : QUANTILES)
+			report.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+					.append(String.format(Locale.ROOT, "%.3f", histogram.getQuantile(quantile) / nanosPerUnit)).append('\n');
+		appendLine(report, name + "_count", histogram.getCount());
+		report.append(name).append("_sum ").append(String.format(Locale.ROOT, "%.3f", histogram.getTotalNanos() / nanosPerUnit)).append('\n');
+	}
+}
@@ -0,0 +1,152 @@
+package battleship;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every distinct legal placement of a ship of one length on an empty board of one size, held in primitive arrays.
+ * Placements follow the bounds GameBoard.addShip() enforces, so they are exactly the sets of cells a ship can occupy; headings that cover the same cells appear once.
+ * Cells are numbered row * numColumns + column, and each placement's cells are also kept as a bitmask with the same numbering, as BitBoard uses.
+ * Indexes are immutable and shared: use forShip() rather than the constructor.
+ */
+public class PlacementIndex {
+
+	/**
+	 * Indexes already built, keyed by board size and ship length.
+	 */
+	private static final ConcurrentHashMap<Long, PlacementIndex> INDEXES = new ConcurrentHashMap<Long, PlacementIndex>();
+
+	/**
+	 * Number of rows on the board.
+	 */
+	protected final int numRows;
+
+	/**
+	 * Number of columns on the board.
+	 */
+	protected final int numColumns;
+
+	/**
+	 * Number of cells each placement covers.
+	 */
+	protected final int shipLength;
+
+	/**
+	 * Number of placements in the index.
+	 */
+	protected final int numPlacements;
+
+	/**
+	 * Lowest numbered cell covered by each placement.
+	 */
+	protected final int[] firstCell;
+
+	/**
+	 * Difference between the numbers of consecutive cells of each placement: 1 across a row, numColumns down a column.
+	 */
+	protected final int[] cellStep;
+
+	/**
+	 * Stern position and heading that make GameBoard.addShip() cover each placement's cells.
+	 */
+	protected final int[] sternRow, sternColumn;
+	protected final HEADING[] heading;
+
+	/**
+	 * Number of longs in the bitmask of one placement.
+	 */
+	protected final int numWords;
+
+	/**
+	 * Cells covered by each placement, one bit per cell: placement p's mask is cellMask[p * numWords] to cellMask[p * numWords + numWords - 1].
+	 */
+	protected final long[] cellMask;
+
+	/**
+	 * For each cell, the placements covering it.
+	 */
+	protected final int[][] placementsCoveringCell;
+
+	/**
+	 * Returns the index for a ship length and board size, building it the first time it is asked for.
+	 * @param numRows Number of rows on the board.
+	 * @param numColumns Number of columns on the board.
+	 * @param shipLength Number of cells the ship covers.
+	 * @return The index.
+	 */
+	protected static PlacementIndex forShip(int numRows, int numColumns, int shipLength) {
+		long key = ((long) numRows << 40) | ((long) numColumns << 20) | shipLength;
+		return INDEXES.computeIfAbsent(key, unused -> new PlacementIndex(numRows, numColumns, shipLength));
+	}
+
+	/**
+	 * Enumerates the placements of a ship on an empty board.
+	 * @param numRows Number of rows on the board.
+	 * @param numColumns Number of columns on the board.
+	 * @param shipLength Number of cells the ship covers.
+	 */
+	private PlacementIndex(int numRows, int numColumns, int shipLength) {
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.shipLength = shipLength;
+
+		//GameBoard.addShip() keeps EAST and SOUTH ships clear of the last column and row; a WEST ship covers the same cells as some EAST ship,
+		//and a NORTH ship only reaches cells no SOUTH ship can when its stern is on the last row.
+		int eastPerRow = Math.max(0, numColumns - shipLength);
+		int southPerColumn = Math.max(0, numRows - shipLength);
+		int northPerColumn = numRows - 1 - shipLength >= 0 ? 1 : 0;
+		numPlacements = numRows * eastPerRow + numColumns * (southPerColumn + northPerColumn);
+
+		firstCell = new int[numPlacements];
+		cellStep = new int[numPlacements];
+		sternRow = new int[numPlacements];
+		sternColumn = new int[numPlacements];
+		heading = new HEADING[numPlacements];
+		numWords = (numRows * numColumns + Long.SIZE - 1) / Long.SIZE;
+		cellMask = new long[numPlacements * numWords];
+
+		int placement = 0;
+		for(int row = 0; row < numRows; row++)
+			for(int column = 0; column < eastPerRow; column++)
+				this.addPlacement(placement++, row, column, HEADING.EAST, row * numColumns + column, 1);
+		for(int column = 0; column < numColumns; column++) {
+			for(int row = 0; row < southPerColumn; row++)
+				this.addPlacement(placement++, row, column, HEADING.SOUTH, row * numColumns + column, numColumns);
+			if(northPerColumn > 0)
+				this.addPlacement(placement++, numRows - 1, column, HEADING.NORTH, (numRows - shipLength) * numColumns + column, numColumns);
+		}
+
+		//Set each placement's bits and invert the placements into a list per cell.
+		int[] placementCount = new int[numRows * numColumns];
+		for(placement = 0; placement < numPlacements; placement++)
+			for(int cell = firstCell[placement], remaining = shipLength; remaining > 0; cell += cellStep[placement], remaining--) {
+				cellMask[placement * numWords + (cell >>> 6)] |= 1L << cell;
+				placementCount[cell]++;
+			}
+
+		placementsCoveringCell = new int[numRows * numColumns][];
+		for(int cell = 0; cell < placementCount.length; cell++) {
+			placementsCoveringCell[cell] = new int[placementCount[cell]];
+			placementCount[cell] = 0;
+		}
+		for(placement = 0; placement < numPlacements; placement++)
+			for(int cell = firstCell[placement], remaining = shipLength; remaining > 0; cell += cellStep[placement], remaining--)
+				placementsCoveringCell[cell][placementCount[cell]++] = placement;
+	}
+
+	/**
+	 * Records one placement.
+	 * @param placement Number of the placement.
+	 * @param row Row of the stern.
+	 * @param column Column of the stern.
+	 * @param shipHeading Heading given to GameBoard.addShip().
+	 * @param lowestCell Lowest numbered cell covered.
+	 * @param step Difference between the numbers of consecutive cells.
+	 */
+	private void addPlacement(int placement, int row, int column, HEADING shipHeading, int lowestCell, int step) {
+		sternRow[placement] = row;
+		sternColumn[placement] = column;
+		heading[placement] = shipHeading;
+		firstCell[placement] = lowestCell;
+		cellStep[placement] = step;
+	}
+}
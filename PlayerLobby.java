@@ -0,0 +1,393 @@
+package battleship;
+
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where players wait between connecting and joining a game, and where their sessions are kept. Each player chooses a name first and is given a session token;
+ * the lobby then queues them with its Matchmaker to be paired with a player of similar rating, or gives them a computer opponent, and hands both to a new GameManager.
+ * Games between two players move their ratings once decided.
+ *
+ * A player whose connection drops keeps their game for the grace period: their boards are kept and their output discarded, and their opponent may play on.
+ * Answering the name prompt of a new connection with RESUME_COMMAND and the token resumes the session, with a single catch-up of what changed meanwhile.
+ * The same works for games recovered after a restart, as tokens are kept in the event log. A thread of the lobby's own evicts sessions left detached past
+ * the grace period, ending their games so the memory they hold is freed.
+ *
+ * Answering the name prompt with WATCH_COMMAND and a game's number instead makes the connection a spectator of that game. Shared by every connection of a server.
+ */
+public class PlayerLobby implements Runnable {
+
+	/**
+	 * Word starting the reply of a player resuming a session, in place of their name.
+	 */
+	protected static final String RESUME_COMMAND = "RESUME";
+
+	/**
+	 * Word starting the reply of a connection wanting to watch a game, in place of a name.
+	 */
+	protected static final String WATCH_COMMAND = "WATCH";
+
+	/**
+	 * Grace period used unless setGracePeriod() is called.
+	 */
+	protected static final long DEFAULT_GRACE_PERIOD_SECONDS = 120;
+
+	/**
+	 * Time between sweeps for sessions past the grace period.
+	 */
+	private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * Random bytes in each session token.
+	 */
+	private static final int TOKEN_LENGTH = 16;
+
+	/**
+	 * Number of games started, including those started before a restart. Used to number new games.
+	 */
+	private AtomicLong gamesStarted;
+
+	/**
+	 * Queue in which named players wait to be paired with an opponent of similar rating.
+	 */
+	private Matchmaker matchmaker;
+
+	/**
+	 * Rating of every player who has finished a game against another player.
+	 */
+	private PlayerRatings ratings;
+
+	/**
+	 * When set, every player is given a computer opponent as soon as they have chosen a name.
+	 */
+	private boolean computerOpponents;
+
+	/**
+	 * Log recording every game's events, null if games are not logged.
+	 */
+	private GameEventLog eventLog;
+
+	/**
+	 * Source of session tokens.
+	 */
+	private SecureRandom tokenSource;
+
+	/**
+	 * Every player with a session, keyed by token, from choosing a name until their game ends.
+	 */
+	private ConcurrentHashMap<String, Client> sessions;
+
+	/**
+	 * Players whose connection has been lost and who have not yet resumed, keyed by token. Swept by the lobby's thread.
+	 */
+	private ConcurrentHashMap<String, Client> detachedSessions;
+
+	/**
+	 * Every game not yet decided, keyed by number, for spectators to find.
+	 */
+	private ConcurrentHashMap<Long, GameManager> liveGames;
+
+	/**
+	 * Longest a session may stay detached before its game is ended.
+	 */
+	private volatile long gracePeriodNanos;
+
+	/**
+	 * Creates an empty lobby and starts the thread evicting detached sessions.
+	 */
+	protected PlayerLobby() {
+		gamesStarted = new AtomicLong();
+		tokenSource = new SecureRandom();
+		sessions = new ConcurrentHashMap<String, Client>();
+		detachedSessions = new ConcurrentHashMap<String, Client>();
+		liveGames = new ConcurrentHashMap<Long, GameManager>();
+		gracePeriodNanos = TimeUnit.SECONDS.toNanos(DEFAULT_GRACE_PERIOD_SECONDS);
+		ratings = new PlayerRatings();
+		matchmaker = new Matchmaker(this::startGame);
+
+		Thread sweeperThread = new Thread(this, "session-sweeper");
+		sweeperThread.setDaemon(true);
+		sweeperThread.start();
+	}
+
+	/**
+	 * Creates the client for a newly connected player and asks for their name.
+	 * @param playerInput Input stream from the player, or null if the transport delivers lines to the client itself.
+	 * @param outputToPlayer Output stream to the player.
+	 * @return The new player's client.
+	 */
+	protected Client admitPlayer(BufferedReader playerInput, PrintWriter outputToPlayer) {
+		Client client = new Client(playerInput, outputToPlayer, this);
+		GameManager.promptForName(client);
+		return client;
+	}
+
+	/**
+	 * Called by a client once its player has chosen a name. Gives the player a session, then starts a game against the computer,
+	 * or queues the player to be paired with another.
+	 * @param namedPlayer Player who has chosen a name.
+	 */
+	protected void playerNamed(Client namedPlayer) {
+		byte[] tokenBytes = new byte[TOKEN_LENGTH];
+		tokenSource.nextBytes(tokenBytes);
+		String token = HexFormat.of().formatHex(tokenBytes);
+		namedPlayer.startSession(this, token);
+		sessions.put(token, namedPlayer);
+		if(namedPlayer.binaryProtocol != null)
+			namedPlayer.binaryProtocol.sendText(BinaryProtocol.SESSION, token);
+		else
+			namedPlayer.clientWriter.println("Your session is " + token + ". If you are disconnected, reconnect within " + TimeUnit.NANOSECONDS.toSeconds(gracePeriodNanos)
+					+ " seconds and reply to the name prompt with " + RESUME_COMMAND + " " + token + " to carry on.");
+
+		if(computerOpponents) {
+			GameManager gameManager = new GameManager(gamesStarted.incrementAndGet(), eventLog);
+			gameManager.setGameOverListener(this::gameOver);
+			gameManager.addClient(namedPlayer);
+			gameManager.addComputerPlayer();
+			liveGames.put(gameManager.getGameId(), gameManager);
+			gameManager.submit(gameManager::startGame);
+			return;
+		}
+
+		matchmaker.enqueue(namedPlayer, ratings.ratingOf(namedPlayer.getPlayerName()));
+	}
+
+	/**
+	 * Called by the matchmaker with each pair of players it has matched. Hands both to a fresh game manager, which rates them once the game is decided.
+	 * @param firstPlayer Player who waited longer, who plays first.
+	 * @param secondPlayer Other player.
+	 */
+	private void startGame(Client firstPlayer, Client secondPlayer) {
+		GameManager gameManager = new GameManager(gamesStarted.incrementAndGet(), eventLog);
+		gameManager.setGameOverListener(this::gameOver);
+		gameManager.addClient(firstPlayer);
+		gameManager.addClient(secondPlayer);
+		liveGames.put(gameManager.getGameId(), gameManager);
+		gameManager.submit(gameManager::startGame);
+	}
+
+	/**
+	 * Called by every game the lobby starts or restores once it is decided. Games between two players move both ratings.
+	 * @param winner Player who won the game.
+	 * @param loser Player who lost the game.
+	 */
+	private void gameOver(Client winner, Client loser) {
+		liveGames.remove(winner.getGameManager().getGameId());
+		if(!(winner instanceof ComputerClient) && !(loser instanceof ComputerClient))
+			ratings.gameOver(winner, loser);
+	}
+
+	/**
+	 * Called by a client whose connection has been lost before it joined a game, so it is no longer offered an opponent.
+	 * @param departedPlayer Player who disconnected.
+	 * @return True if the player had not been paired; false if they were paired meanwhile and their game manager must be told instead.
+	 */
+	protected boolean playerLeft(Client departedPlayer) {
+		if(departedPlayer.hasGame())
+			return false;
+		//A player who is still choosing a name was never queued.
+		if(departedPlayer.isWaitingForGame() && !(matchmaker.cancel(departedPlayer)))
+			return false;
+		departedPlayer.disconnect();
+		return true;
+	}
+
+	/**
+	 * Called by a client in a game whose connection has been lost. Keeps the player's session for the grace period and tells their opponent.
+	 * @param detachedPlayer Player who disconnected.
+	 * @param lostWriter Writer of the connection that was lost.
+	 * @return True if the session is kept; false if there is no grace period, and the game manager must be told instead.
+	 */
+	protected boolean sessionDetached(Client detachedPlayer, PrintWriter lostWriter) {
+		if(gracePeriodNanos <= 0)
+			return false;
+		if(!(detachedPlayer.detach(lostWriter)))
+			//Resumed on another connection, or the game ended, meanwhile.
+			return true;
+		detachedSessions.put(detachedPlayer.getSessionToken(), detachedPlayer);
+
+		long graceSeconds = TimeUnit.NANOSECONDS.toSeconds(gracePeriodNanos);
+		System.out.println("Game " + detachedPlayer.getGameManager().getGameId() + ": " + detachedPlayer.getPlayerName() + " disconnected; keeping their game for " + graceSeconds + " s.");
+		Client opponent = detachedPlayer.getGameManager().getOpponent(detachedPlayer);
+		if(opponent.binaryProtocol == null) {
+			opponent.clientWriter.println(detachedPlayer.getPlayerName().trim() + " has lost their connection. They have " + graceSeconds + " seconds to reconnect.");
+			opponent.clientWriter.flush();
+		}
+		return true;
+	}
+
+	/**
+	 * Called by a client whose game has ended, or who left before it began, so their session can no longer be resumed.
+	 * @param finishedPlayer Player whose session has ended.
+	 */
+	protected void sessionEnded(Client finishedPlayer) {
+		sessions.remove(finishedPlayer.getSessionToken(), finishedPlayer);
+		detachedSessions.remove(finishedPlayer.getSessionToken(), finishedPlayer);
+	}
+
+	/**
+	 * Hands a newly connected player's connection to the session named in their reply to the name prompt, if the reply asks to resume one.
+	 * A session whose old connection is still open is taken over, and the old connection closed.
+	 * @param returningPlayer Client of the newly connected player.
+	 * @param reply Player's reply to the name prompt.
+	 * @return False if the reply is an ordinary name; true if it was a request to resume, whether or not the session was found.
+	 */
+	protected boolean resumePlayer(Client returningPlayer, String reply) {
+		StringTokenizer resumeRequest = new StringTokenizer(reply);
+		if(!(resumeRequest.hasMoreTokens()) || !(resumeRequest.nextToken().equalsIgnoreCase(RESUME_COMMAND)))
+			return false;
+
+		Client session = resumeRequest.hasMoreTokens() ? sessions.get(resumeRequest.nextToken()) : null;
+		if(session != null && session.hasGame()) {
+			detachedSessions.remove(session.getSessionToken(), session);
+			//The handover must be complete before the transport delivers the player's next line, which goes to the session.
+			if(session.getGameManager().submitAndWait(() -> session.adoptConnection(returningPlayer)))
+				return true;
+		}
+
+		returningPlayer.sendNotice("There is no game to resume for that session. Reply with " + RESUME_COMMAND + " <session> to resume a game, or just your name to start a new one.");
+		GameManager.promptForName(returningPlayer);
+		return true;
+	}
+
+	/**
+	 * Makes a newly connected player a spectator of the game named in their reply to the name prompt, if the reply asks to watch one.
+	 * @param spectator Client of the newly connected player.
+	 * @param reply Player's reply to the name prompt.
+	 * @return False if the reply is an ordinary name; true if it was a request to watch, whether or not the game was found.
+	 */
+	protected boolean watchGame(Client spectator, String reply) {
+		StringTokenizer watchRequest = new StringTokenizer(reply);
+		if(!(watchRequest.hasMoreTokens()) || !(watchRequest.nextToken().equalsIgnoreCase(WATCH_COMMAND)))
+			return false;
+
+		GameManager gameManager = null;
+		if(watchRequest.hasMoreTokens()) {
+			try {
+				gameManager = liveGames.get(Long.parseLong(watchRequest.nextToken()));
+			}
+			catch(NumberFormatException error) {
+				//Not a game number; reported below.
+			}
+		}
+		if(gameManager != null && spectator.watchGame(gameManager))
+			return true;
+
+		spectator.sendNotice("There is no game to watch by that number. Reply with " + WATCH_COMMAND + " <game> to watch a game, or just your name to play.");
+		GameManager.promptForName(spectator);
+		return true;
+	}
+
+	/**
+	 * Rebuilds every unfinished game found by a recovery. Its players' sessions start detached, so each game lasts the grace period unless its players resume it.
+	 * New games are numbered after the recovered ones. Must be called before players are admitted.
+	 * @param recovery Recovery that has loaded the games.
+	 */
+	protected void restoreGames(GameRecovery recovery) {
+		int gamesRestored = 0;
+		for(GameRecovery.RecoveredGame recoveredGame : recovery.unfinishedGames()) {
+			GameManager gameManager = GameManager.restore(recoveredGame, eventLog);
+			if(gameManager == null) {
+				System.out.println("Game " + recoveredGame.gameId + " could not be recovered.");
+				continue;
+			}
+			gameManager.setGameOverListener(this::gameOver);
+			liveGames.put(gameManager.getGameId(), gameManager);
+			for(int player = 0; player < 2; player++) {
+				if(recoveredGame.computerPlayer[player])
+					continue;
+				Client client = gameManager.getGameClients().get(player);
+				client.startSession(this, recoveredGame.sessionTokens[player]);
+				sessions.put(client.getSessionToken(), client);
+				if(client.detach(client.clientWriter))
+					detachedSessions.put(client.getSessionToken(), client);
+			}
+			gamesRestored++;
+		}
+		gamesStarted.set(Math.max(gamesStarted.get(), recovery.getLastGameId()));
+
+		if(gamesRestored > 0)
+			System.out.println(gamesRestored + " games recovered. Players resume them by replying to the name prompt with " + RESUME_COMMAND + " <session>.");
+	}
+
+	/**
+	 * Sweeper loop: every SWEEP_INTERVAL_MILLIS, ends the game of every session detached for longer than the grace period.
+	 */
+	public void run() {
+		while(true) {
+			try {
+				Thread.sleep(SWEEP_INTERVAL_MILLIS);
+			}
+			catch(InterruptedException error) {
+				return;
+			}
+
+			long nowNanos = System.nanoTime();
+			for(Client session : detachedSessions.values())
+				if(session.detachedFor(nowNanos) > gracePeriodNanos && detachedSessions.remove(session.getSessionToken(), session))
+					session.evict();
+		}
+	}
+
+	/**
+	 * Simple accessor method to return the number of players with a session, connected or not.
+	 * @return Number of sessions.
+	 */
+	protected int getSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * Simple accessor method to return the number of players whose connection has been lost and who have not yet resumed.
+	 * @return Number of detached sessions.
+	 */
+	protected int getDetachedSessionCount() {
+		return detachedSessions.size();
+	}
+
+	/**
+	 * Simple accessor method to return the number of games not yet decided.
+	 * @return Number of games spectators may watch.
+	 */
+	protected int getLiveGameCount() {
+		return liveGames.size();
+	}
+
+	/**
+	 * Simple accessor method to return the number of players waiting for an opponent.
+	 * @return Number of players queued by the matchmaker.
+	 */
+	protected int getQueuedPlayerCount() {
+		return matchmaker.getQueuedCount();
+	}
+
+	/**
+	 * Sets whether players are given a computer opponent rather than paired with each other. Must be called before players are admitted.
+	 * @param computerOpponents True to give every player a computer opponent.
+	 */
+	protected void setComputerOpponents(boolean computerOpponents) {
+		this.computerOpponents = computerOpponents;
+	}
+
+	/**
+	 * Sets the log recording every game's events. Must be called before players are admitted or games restored.
+	 * @param eventLog Log to record games in, or null for none.
+	 */
+	protected void setEventLog(GameEventLog eventLog) {
+		this.eventLog = eventLog;
+	}
+
+	/**
+	 * Sets how long a player whose connection is lost keeps their game. Zero ends the game as soon as the connection is lost.
+	 * @param gracePeriodMillis Grace period in milliseconds.
+	 */
+	protected void setGracePeriod(long gracePeriodMillis) {
+		this.gracePeriodNanos = TimeUnit.MILLISECONDS.toNanos(gracePeriodMillis);
+	}
+}
@@ -0,0 +1,36 @@
+package battleship;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A player's connection as their game writes to it, implemented by each transport alongside the PrintWriter it hands the player's Client.
+ * While the game handles a message it holds both players' output, so whatever one turn sends a player, however many times their writer is flushed,
+ * leaves in a single write once the turn ends. Fixed text encoded once, such as the menu, is written from the same shared buffer to every player.
+ * Output written through the player's writer and through this interface arrives in the order it was written, provided the writer is flushed in between.
+ */
+public interface PlayerOutput {
+
+	/**
+	 * Holds back output from now on: flushes queue it but nothing is written to the player until release() is called.
+	 * Called by the player's game as it starts handling a message.
+	 */
+	void hold();
+
+	/**
+	 * Stops holding back output and writes whatever was flushed while it was held, in a single write where the transport allows.
+	 * Called by the player's game once done with the messages in hand.
+	 */
+	void release();
+
+	/**
+	 * Writes a frame shared by many connections after the output already flushed. The frame is not copied where the transport can write it as it is.
+	 * @param frame Read-only buffer holding the encoded text; its position and limit are left untouched.
+	 */
+	void writeShared(ByteBuffer frame);
+
+	/**
+	 * Reports how many bytes have been queued for the player and not yet handed to the operating system.
+	 * @return Bytes waiting to be written.
+	 */
+	int getQueuedBytes();
+}
@@ -0,0 +1,58 @@
+package battleship;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Elo rating of every player who has finished a game against another person, keyed by name, for the matchmaker to pair players of similar skill.
+ * Players start at DEFAULT_RATING; games against the computer are not rated. Ratings are kept in memory for the life of the server.
+ */
+public class PlayerRatings {
+
+	/**
+	 * Rating of a player who has not yet finished a rated game.
+	 */
+	protected static final int DEFAULT_RATING = 1500;
+
+	/**
+	 * Most points a single game can move a rating.
+	 */
+	private static final int K_FACTOR = 32;
+
+	/**
+	 * Rating of every player who has finished a rated game, keyed by name without surrounding spaces.
+	 */
+	private ConcurrentHashMap<String, Integer> ratings;
+
+	/**
+	 * Creates an empty table; every player starts at DEFAULT_RATING.
+	 */
+	protected PlayerRatings() {
+		ratings = new ConcurrentHashMap<String, Integer>();
+	}
+
+	/**
+	 * Simple accessor method to return a player's rating.
+	 * @param playerName Name of the player.
+	 * @return The player's rating, DEFAULT_RATING if they have not finished a rated game.
+	 */
+	protected int ratingOf(String playerName) {
+		return ratings.getOrDefault(playerName.trim(), DEFAULT_RATING);
+	}
+
+	/**
+	 * Moves both players' ratings after a game: the winner gains what the loser loses, more so the less likely the win was.
+	 * @param winner Player who won the game.
+	 * @param loser Player who lost the game.
+	 */
+	protected void gameOver(Client winner, Client loser) {
+		String winnerName = winner.getPlayerName().trim();
+		String loserName = loser.getPlayerName().trim();
+		if(winnerName.equals(loserName))
+			return;
+
+		double expectedWin = 1 / (1 + Math.pow(10, (this.ratingOf(loserName) - this.ratingOf(winnerName)) / 400.0));
+		int points = (int) Math.round(K_FACTOR * (1 - expectedWin));
+		ratings.compute(winnerName, (name, rating) -> (rating == null ? DEFAULT_RATING : rating) + points);
+		ratings.compute(loserName, (name, rating) -> Math.max(0, (rating == null ? DEFAULT_RATING : rating) - points));
+	}
+}
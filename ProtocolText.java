@@ -0,0 +1,155 @@
+package battleship;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.function.Function;
+
+/**
+ * A piece of the text protocol that never changes, such as the menu or a ship placement prompt, encoded once when the server starts.
+ * Every player whose transport has a PlayerOutput is written the same read-only direct buffer, so sending it costs no concatenation, encoding or copying per player;
+ * a player without one, such as the computer, is printed the text instead. Send with Client.printFixed().
+ */
+public class ProtocolText {
+
+	/**
+	 * Character set used to encode the text, matching the writers of both transports.
+	 */
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	private static final String NEW_LINE_CHARACTER = System.getProperty("line.separator");
+
+	/**
+	 * Line printed above the menu before each command.
+	 */
+	protected static final ProtocolText DIVIDER = new ProtocolText("------------------------" + NEW_LINE_CHARACTER);
+
+	/**
+	 * Simple textual menu printed for the user before each command.
+	 */
+	protected static final ProtocolText MENU = new ProtocolText(
+			//The player will use "F" to specify "Fire", followed by the row and column number to attack.
+			"To fire a missile, use F, followed by the row and column to attack." + NEW_LINE_CHARACTER
+			+ "Example: F 2 2" + NEW_LINE_CHARACTER
+			//To talk trash to their opponent, the player will use "C", followed by the message they wish to send.
+			+ "To send a message to your opponent, use C followed by your message." + NEW_LINE_CHARACTER
+			+ "Example: C Let's play!" + NEW_LINE_CHARACTER
+			//"U" switches between full boards after every command and only the cells that changed; "D" redraws both boards.
+			+ "To receive only the cells that change after each command, use U. Use U again for full boards, or D to redraw them once." + NEW_LINE_CHARACTER);
+
+	/**
+	 * Prompt for the command of a player whose turn it is.
+	 */
+	protected static final ProtocolText COMMAND_PROMPT = new ProtocolText("Waiting for next command." + NEW_LINE_CHARACTER);
+
+	/**
+	 * Reply to a command that could not be read.
+	 */
+	protected static final ProtocolText MALFORMED_COMMAND = new ProtocolText("Malformed command, ignoring." + NEW_LINE_CHARACTER + NEW_LINE_CHARACTER);
+
+	/**
+	 * Reply to a player firing out of turn.
+	 */
+	protected static final ProtocolText NOT_YOUR_TURN = new ProtocolText("It is not your turn." + NEW_LINE_CHARACTER + NEW_LINE_CHARACTER);
+
+	/**
+	 * Reply to a player with a fleet in place sending a command before their opponent has placed theirs.
+	 */
+	protected static final ProtocolText OPPONENT_NOT_READY = new ProtocolText("Your opponent is still placing their ships. Please wait." + NEW_LINE_CHARACTER);
+
+	/**
+	 * Reply to a ship placement whose coordinates are not numbers.
+	 */
+	protected static final ProtocolText COORDINATES_NOT_INTS = new ProtocolText("The coordinates you specified could not be parsed as ints. Please try again." + NEW_LINE_CHARACTER);
+
+	/**
+	 * Instructions on how to place each type of ship, indexed by SHIPTYPES ordinal.
+	 */
+	private static final ProtocolText[] SHIP_PROMPTS = forEachShipType(shipType ->
+			NEW_LINE_CHARACTER + "Place your " + shipType + " on the board." + NEW_LINE_CHARACTER + NEW_LINE_CHARACTER
+			+ "Specify name followed by stern position and ship direction." + NEW_LINE_CHARACTER + NEW_LINE_CHARACTER
+			+ "Example: Boaty McBoatface 2 3 EAST" + NEW_LINE_CHARACTER + NEW_LINE_CHARACTER
+			+ "If placement is invalid, you will be asked to place ship again." + NEW_LINE_CHARACTER + NEW_LINE_CHARACTER
+			+ "To place the rest of your fleet at random, use " + Client.AUTO_PLACE_COMMAND + "." + NEW_LINE_CHARACTER + NEW_LINE_CHARACTER);
+
+	/**
+	 * Reply to a rejected placement of each type of ship, indexed by SHIPTYPES ordinal.
+	 */
+	private static final ProtocolText[] SHIP_REJECTIONS = forEachShipType(shipType ->
+			"There was a problem adding the " + shipType + " to the board at the location specified. Please try again." + NEW_LINE_CHARACTER);
+
+	/**
+	 * The text, printed to players without a PlayerOutput.
+	 */
+	private String text;
+
+	/**
+	 * The text encoded, shared by every player and never written to.
+	 */
+	private ByteBuffer frame;
+
+	/**
+	 * Encodes a piece of fixed text.
+	 * @param text Text to send, including its line separators.
+	 */
+	protected ProtocolText(String text) {
+		this.text = text;
+		this.frame = encode(text);
+	}
+
+	/**
+	 * Simple accessor method to return the text.
+	 * @return Text as printed to players.
+	 */
+	protected String getText() {
+		return this.text;
+	}
+
+	/**
+	 * Simple accessor method to return the encoded text.
+	 * @return Read-only direct buffer holding the text; writers take their own view of it.
+	 */
+	protected ByteBuffer getFrame() {
+		return this.frame;
+	}
+
+	/**
+	 * Returns the instructions on how to place a type of ship.
+	 * @param shipType Type of ship to be placed.
+	 * @return Prompt for the ship.
+	 */
+	protected static ProtocolText shipPrompt(SHIPTYPES shipType) {
+		return SHIP_PROMPTS[shipType.ordinal()];
+	}
+
+	/**
+	 * Returns the reply to a rejected placement of a type of ship.
+	 * @param shipType Type of ship that could not be placed.
+	 * @return Reply asking the player to try again.
+	 */
+	protected static ProtocolText shipRejection(SHIPTYPES shipType) {
+		return SHIP_REJECTIONS[shipType.ordinal()];
+	}
+
+	/**
+	 * Encodes text into a frame many connections can share.
+	 * @param text Text to encode.
+	 * @return Read-only direct buffer holding the text, so the non-blocking transport writes it without copying.
+	 */
+	protected static ByteBuffer encode(String text) {
+		byte[] textBytes = text.getBytes(CHARSET);
+		return ByteBuffer.allocateDirect(textBytes.length).put(textBytes).flip().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Encodes a piece of text for every type of ship.
+	 * @param textForShip Builds the text for a type of ship.
+	 * @return Encoded text, indexed by SHIPTYPES ordinal.
+	 */
+	private static ProtocolText[] forEachShipType(Function<SHIPTYPES, String> textForShip) {
+		SHIPTYPES[] shipTypes = SHIPTYPES.values();
+		ProtocolText[] shipTexts = new ProtocolText[shipTypes.length];
+		for(SHIPTYPES shipType : shipTypes)
+			shipTexts[shipType.ordinal()] = new ProtocolText(textForShip.apply(shipType));
+		return shipTexts;
+	}
+}
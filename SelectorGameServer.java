@@ -0,0 +1,110 @@
+package battleship;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Long-running server using the non-blocking transport: every player connection is served by one of a small, fixed number of SelectorLoops.
+ * Speaks the same line-based protocol as GameServer, so players cannot tell which transport they are connected to.
+ */
+public class SelectorGameServer {
+
+	/**
+	 * Number of connections the operating system may queue while the accepting thread is busy.
+	 */
+	private static final int ACCEPT_BACKLOG = 1024;
+
+	/**
+	 * Channel listening for incoming connections.
+	 */
+	private ServerSocketChannel connectionListener;
+
+	/**
+	 * Event loops serving player connections. New connections are spread across them in turn.
+	 */
+	private SelectorLoop[] selectorLoops;
+
+	/**
+	 * Index of the loop which will receive the next connection. Only touched by the accepting thread.
+	 */
+	private int nextLoop;
+
+	/**
+	 * Lobby in which connected players choose a name and wait for an opponent.
+	 */
+	private PlayerLobby lobby;
+
+	/**
+	 * Creates a server listening on the specified port and starts its event loops.
+	 * @param port TCP port on which to listen for players.
+	 * @param numLoops Number of event loop threads serving player connections.
+	 * @throws IOException If the listening channel or a selector cannot be opened.
+	 */
+	protected SelectorGameServer(int port, int numLoops) throws IOException {
+		connectionListener = ServerSocketChannel.open();
+		connectionListener.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+
+		selectorLoops = new SelectorLoop[Math.max(1, numLoops)];
+		for(int index = 0; index < selectorLoops.length; index++) {
+			selectorLoops[index] = new SelectorLoop("selector-" + index);
+			selectorLoops[index].start();
+		}
+		lobby = new PlayerLobby();
+	}
+
+	/**
+	 * Accepts connections forever, admitting each player to the lobby and routing their connection's input to their client.
+	 */
+	protected void acceptPlayers() {
+		while(connectionListener.isOpen()) {
+			try {
+				SocketChannel playerChannel = connectionListener.accept();
+				playerChannel.configureBlocking(false);
+				ServerMetrics.connectionAccepted();
+
+				ChannelConnection playerConnection = new ChannelConnection(playerChannel, selectorLoops[nextLoop]);
+				nextLoop = (nextLoop + 1) % selectorLoops.length;
+				playerConnection.register();
+				playerConnection.attachClient(lobby.admitPlayer(null, playerConnection.getWriter()));
+			}
+			catch(IOException error) {
+				//Closing the listener during shutdown interrupts accept(); that is not worth reporting.
+				if(connectionListener.isOpen())
+					System.out.println("Connection error: " + error + ".");
+			}
+		}
+	}
+
+	/**
+	 * Simple accessor method to return the lobby, so it can be configured before acceptPlayers() is called.
+	 * @return Lobby shared by every connection to this server.
+	 */
+	protected PlayerLobby getLobby() {
+		return lobby;
+	}
+
+	/**
+	 * Simple accessor method to return the port the server is listening on. Useful when the server was created on port 0.
+	 * @return Local port of the listening channel.
+	 * @throws IOException If the listening channel has been closed.
+	 */
+	protected int getPort() throws IOException {
+		return ((InetSocketAddress) connectionListener.getLocalAddress()).getPort();
+	}
+
+	/**
+	 * Stops accepting players and stops the event loops.
+	 */
+	protected void shutdown() {
+		try {
+			connectionListener.close();
+		}
+		catch(IOException error) {
+			System.out.println("Error closing listener: " + error + ".");
+		}
+		for(SelectorLoop selectorLoop : selectorLoops)
+			selectorLoop.shutdown();
+	}
+}
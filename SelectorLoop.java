@@ -0,0 +1,139 @@
+package battleship;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Event loop owning one Selector. Every connection registered with the loop has all of its reads and writes performed on the loop's thread.
+ * Other threads hand work to the loop through execute().
+ */
+public class SelectorLoop implements Runnable {
+
+	/**
+	 * Selector watching every connection owned by this loop.
+	 */
+	private Selector selector;
+
+	/**
+	 * Tasks submitted from other threads, run by the loop thread between selects.
+	 */
+	private ConcurrentLinkedQueue<Runnable> pendingTasks;
+
+	/**
+	 * Thread running this loop.
+	 */
+	private Thread loopThread;
+
+	/**
+	 * Creates a loop with its own selector. The loop does nothing until start() is called.
+	 * @param loopName Name given to the loop thread.
+	 * @throws IOException If the selector cannot be opened.
+	 */
+	protected SelectorLoop(String loopName) throws IOException {
+		selector = Selector.open();
+		pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+		loopThread = new Thread(this, loopName);
+	}
+
+	/**
+	 * Starts the loop thread.
+	 */
+	protected void start() {
+		loopThread.start();
+	}
+
+	/**
+	 * Determines whether the calling thread is this loop's thread.
+	 * @return True when called from the loop thread.
+	 */
+	protected boolean inLoop() {
+		return Thread.currentThread() == loopThread;
+	}
+
+	/**
+	 * Runs a task on the loop thread: immediately if called from the loop, otherwise after the selector is woken up.
+	 * @param task Task to run.
+	 */
+	protected void execute(Runnable task) {
+		if(inLoop()) {
+			task.run();
+			return;
+		}
+		pendingTasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Registers a connection with this loop's selector so its input is read and its output written by the loop.
+	 * @param connection Connection to register.
+	 */
+	protected void register(ChannelConnection connection) {
+		execute(() -> connection.register(selector));
+	}
+
+	/**
+	 * Selects ready connections and services them until the selector is closed.
+	 */
+	public void run() {
+		while(selector.isOpen()) {
+			try {
+				selector.select();
+
+				//Run work handed over by other threads before servicing ready channels.
+				Runnable task;
+				while((task = pendingTasks.poll()) != null)
+					this.runTask(task);
+
+				Iterator<SelectionKey> readyKeys = selector.selectedKeys().iterator();
+				while(readyKeys.hasNext()) {
+					SelectionKey readyKey = readyKeys.next();
+					readyKeys.remove();
+
+					//An earlier connection in this batch may have closed this one.
+					if(readyKey.isValid())
+						((ChannelConnection) readyKey.attachment()).handleReady(readyKey);
+				}
+			}
+			catch(ClosedSelectorException error) {
+				return;
+			}
+			catch(IOException error) {
+				System.out.println("Selector error: " + error + ".");
+			}
+		}
+	}
+
+	/**
+	 * Runs a task handed over by another thread. Called on the loop thread.
+	 * @param task Task to run.
+	 */
+	private void runTask(Runnable task) {
+		try {
+			task.run();
+		}
+		catch(RuntimeException error) {
+			//A bug in one connection's task must not stop the loop serving everyone else.
+			System.out.println("Error running selector task: " + error + ".");
+			ServerMetrics.handlerFailed();
+		}
+	}
+
+	/**
+	 * Closes the selector, which stops the loop. Connections still registered are abandoned.
+	 */
+	protected void shutdown() {
+		//Close on the loop thread so the selector is not closed in the middle of servicing ready keys.
+		execute(() -> {
+			try {
+				selector.close();
+			}
+			catch(IOException error) {
+				System.out.println("Error closing selector: " + error + ".");
+			}
+		});
+	}
+}
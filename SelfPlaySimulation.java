@@ -0,0 +1,233 @@
+package battleship;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline harness playing computer-vs-computer games as fast as the machine allows, for tuning strategies and load testing the game engine without sockets.
+ * Each game places two random fleets with a FleetGenerator, which adds them through GameBoard.addShip(),
+ * then the players take turns choosing shots with a DensityTargeter and firing them with GameBoard.fireMissile() until one board has no ships remaining.
+ * Games are split evenly across one worker per thread. Each worker owns its boards, targeters, random number generator and tally, so workers share nothing until the tallies are merged at the end.
+ */
+public class SelfPlaySimulation {
+
+	/**
+	 * Number of bars in the histogram of shots to win.
+	 */
+	private static final int HISTOGRAM_BARS = 20;
+
+	/**
+	 * Width in characters of the longest histogram bar.
+	 */
+	private static final int BAR_WIDTH = 50;
+
+	/**
+	 * Rows and columns of the square boards.
+	 */
+	private int boardSize;
+
+	/**
+	 * Seed of the first worker's random number generator; each later worker adds its index.
+	 */
+	private long seed;
+
+	/**
+	 * Creates a harness playing on square boards.
+	 * @param boardSize Rows and columns of each board.
+	 * @param seed Seed for the workers' random number generators, so a run can be repeated.
+	 */
+	protected SelfPlaySimulation(int boardSize, long seed) {
+		this.boardSize = boardSize;
+		this.seed = seed;
+	}
+
+	/**
+	 * Plays games split evenly across a number of threads and merges their tallies.
+	 * @param numGames Number of games to play.
+	 * @param numThreads Number of worker threads.
+	 * @return Tally of every game played.
+	 * @throws InterruptedException If interrupted while waiting for the workers.
+	 * @throws ExecutionException If a worker fails.
+	 */
+	protected Tally run(long numGames, int numThreads) throws InterruptedException, ExecutionException {
+		ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+		try {
+			ArrayList<Future<Tally>> results = new ArrayList<Future<Tally>>();
+			for(int worker = 0; worker < numThreads; worker++) {
+				//Spread the remainder over the first workers.
+				long workerGames = numGames / numThreads + (worker < numGames % numThreads ? 1 : 0);
+				long workerSeed = seed + worker;
+				results.add(workers.submit(() -> this.playGames(workerGames, new Random(workerSeed))));
+			}
+
+			Tally total = new Tally(boardSize * boardSize);
+			for(Future<Tally> result : results)
+				total.add(result.get());
+			return total;
+		}
+		finally {
+			workers.shutdown();
+		}
+	}
+
+	/**
+	 * Plays games on one thread, reusing the same boards and targeters for every game.
+	 * @param numGames Number of games to play.
+	 * @param random This worker's random number generator, used for fleets and by both targeters.
+	 * @return Tally of the games played.
+	 */
+	private Tally playGames(long numGames, Random random) {
+		Tally tally = new Tally(boardSize * boardSize);
+		GameBoard[] boards = { new GameBoard(boardSize, boardSize), new GameBoard(boardSize, boardSize) };
+		DensityTargeter[] targeters = { new DensityTargeter(boardSize, boardSize, random), new DensityTargeter(boardSize, boardSize, random) };
+		FleetGenerator fleetGenerator = new FleetGenerator(boardSize, boardSize, random);
+		int[] shotsFired = new int[2];
+
+		for(long game = 0; game < numGames; game++) {
+			for(int player = 0; player < 2; player++) {
+				boards[player].clear();
+				fleetGenerator.placeShips(boards[player], 0);
+				targeters[player].reset();
+				shotsFired[player] = 0;
+			}
+
+			//Player 0 moves first; players alternate until the shooter sinks the last ship on the other board.
+			int shooter = 0;
+			while(true) {
+				GameBoard targetBoard = boards[1 - shooter];
+				DensityTargeter targeter = targeters[shooter];
+				int cell = targeter.nextShot();
+				int row = targeter.rowOf(cell);
+				int column = targeter.columnOf(cell);
+				targeter.shotResult(row, column, targetBoard.fireMissile(row, column));
+				shotsFired[shooter]++;
+
+				if(!(targetBoard.hasShipsRemaining()))
+					break;
+				shooter = 1 - shooter;
+			}
+			tally.addGame(shooter, shotsFired[shooter]);
+		}
+		return tally;
+	}
+
+	/**
+	 * Runs the harness and prints games per second, the average shots to win and a histogram of shots to win.
+	 * @param args Optional number of games (default 100000), number of threads (default one per processor), board size (default 10) and seed (default random).
+	 * @throws Exception If a worker fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		long numGames = args.length > 0 ? Long.parseLong(args[0]) : 100000;
+		int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int boardSize = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : new Random().nextLong();
+
+		System.out.println("Playing " + numGames + " games on " + boardSize + "x" + boardSize + " boards with " + numThreads + " threads, seed " + seed + ".");
+		long startNanos = System.nanoTime();
+		Tally tally = new SelfPlaySimulation(boardSize, seed).run(numGames, numThreads);
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+		System.out.printf("%d games in %.2f s: %.0f games/s%n", tally.games, seconds, tally.games / seconds);
+		System.out.printf("Average shots to win: %.2f; first player won %.1f%% of games%n", tally.averageShotsToWin(), 100.0 * tally.firstPlayerWins / Math.max(1, tally.games));
+		tally.printHistogram();
+	}
+
+	/**
+	 * Results of a number of games. Each worker fills its own, so tallies need no locking.
+	 */
+	protected static class Tally {
+
+		/**
+		 * Number of games played.
+		 */
+		protected long games;
+
+		/**
+		 * Number of games won by the player who moved first.
+		 */
+		protected long firstPlayerWins;
+
+		/**
+		 * Sum over all games of the shots the winner fired.
+		 */
+		protected long totalShotsToWin;
+
+		/**
+		 * Number of games won in each number of shots, indexed by shots fired.
+		 */
+		protected long[] gamesWonInShots;
+
+		/**
+		 * Creates an empty tally.
+		 * @param numCells Number of cells on a board, the most shots a game can take to win.
+		 */
+		protected Tally(int numCells) {
+			gamesWonInShots = new long[numCells + 1];
+		}
+
+		/**
+		 * Records one game.
+		 * @param winner 0 if the first player won, 1 otherwise.
+		 * @param shotsToWin Shots the winner fired.
+		 */
+		protected void addGame(int winner, int shotsToWin) {
+			games++;
+			if(winner == 0)
+				firstPlayerWins++;
+			totalShotsToWin += shotsToWin;
+			gamesWonInShots[shotsToWin]++;
+		}
+
+		/**
+		 * Adds the games of another tally to this one.
+		 * @param other Tally to add.
+		 */
+		protected void add(Tally other) {
+			games += other.games;
+			firstPlayerWins += other.firstPlayerWins;
+			totalShotsToWin += other.totalShotsToWin;
+			for(int shots = 0; shots < gamesWonInShots.length; shots++)
+				gamesWonInShots[shots] += other.gamesWonInShots[shots];
+		}
+
+		/**
+		 * Returns the average number of shots the winner fired.
+		 * @return Average shots to win, 0 if no games were played.
+		 */
+		protected double averageShotsToWin() {
+			return games == 0 ? 0 : (double) totalShotsToWin / games;
+		}
+
+		/**
+		 * Prints the distribution of shots to win as a text histogram, grouping shot counts so that it spans at most HISTOGRAM_BARS bars.
+		 */
+		protected void printHistogram() {
+			int fewestShots = 0;
+			while(fewestShots < gamesWonInShots.length - 1 && gamesWonInShots[fewestShots] == 0)
+				fewestShots++;
+			int mostShots = gamesWonInShots.length - 1;
+			while(mostShots > fewestShots && gamesWonInShots[mostShots] == 0)
+				mostShots--;
+
+			int barSpan = Math.max(1, (mostShots - fewestShots + HISTOGRAM_BARS) / HISTOGRAM_BARS);
+			long[] barGames = new long[(mostShots - fewestShots) / barSpan + 1];
+			long mostBarGames = 1;
+			for(int shots = fewestShots; shots <= mostShots; shots++) {
+				int bar = (shots - fewestShots) / barSpan;
+				barGames[bar] += gamesWonInShots[shots];
+				mostBarGames = Math.max(mostBarGames, barGames[bar]);
+			}
+
+			System.out.println("Shots to win:");
+			for(int bar = 0; bar < barGames.length; bar++) {
+				int firstShots = fewestShots + bar * barSpan;
+				String label = barSpan == 1 ? String.valueOf(firstShots) : firstShots + "-" + (firstShots + barSpan - 1);
+				System.out.printf("%9s %10d %s%n", label, barGames[bar], "#".repeat((int) (BAR_WIDTH * barGames[bar] / mostBarGames)));
+			}
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package battleship;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and timings kept across the whole server, for MetricsEndpoint to report. Every count is a striped LongAdder and every timing a LatencyHistogram,
+ * so recording from the game, transport and lobby threads costs a few nanoseconds and never makes them wait on each other. Counts start at zero when the server starts.
+ */
+public class ServerMetrics {
+
+	/**
+	 * Label of each type of game command, indexed by the CommandDecoder constant for it.
+	 */
+	protected static final String[] COMMAND_LABELS = { "blank", "F", "C", "D", "U", "unknown" };
+
+	/**
+	 * Connections accepted by either transport.
+	 */
+	private static final LongAdder CONNECTIONS_ACCEPTED = new LongAdder();
+
+	/**
+	 * Connections closed, by the player or the server.
+	 */
+	private static final LongAdder CONNECTIONS_CLOSED = new LongAdder();
+
+	/**
+	 * Game commands handled, text or binary, indexed by the CommandDecoder constant for their type.
+	 */
+	private static final LongAdder[] COMMANDS = new LongAdder[COMMAND_LABELS.length];
+
+	/**
+	 * Ships the board refused to place, because they were off the board or overlapped another ship.
+	 */
+	private static final LongAdder PLACEMENTS_REJECTED = new LongAdder();
+
+	/**
+	 * Bytes read from players.
+	 */
+	private static final LongAdder BYTES_RECEIVED = new LongAdder();
+
+	/**
+	 * Bytes written to players and spectators.
+	 */
+	private static final LongAdder BYTES_SENT = new LongAdder();
+
+	/**
+	 * Messages or connections whose handling failed with an unexpected exception.
+	 */
+	private static final LongAdder HANDLER_ERRORS = new LongAdder();
+
+	/**
+	 * Time for GameBoard.fireMissile() to land each missile a player fires.
+	 */
+	private static final LatencyHistogram FIRE_MISSILE_LATENCY = new LatencyHistogram();
+
+	/**
+	 * Time from both fleets being placed to a winner, for every game decided.
+	 */
+	private static final LatencyHistogram GAME_DURATION = new LatencyHistogram();
+
+	static {
+		for(int index = 0; index < COMMANDS.length; index++)
+			COMMANDS[index] = new LongAdder();
+	}
+
+	/**
+	 * Counts a connection accepted.
+	 */
+	protected static void connectionAccepted() {
+		CONNECTIONS_ACCEPTED.increment();
+	}
+
+	/**
+	 * Counts a connection closed.
+	 */
+	protected static void connectionClosed() {
+		CONNECTIONS_CLOSED.increment();
+	}
+
+	/**
+	 * Counts a game command handled.
+	 * @param command CommandDecoder constant for the type of command.
+	 */
+	protected static void commandHandled(int command) {
+		COMMANDS[command].increment();
+	}
+
+	/**
+	 * Counts a ship the board refused to place.
+	 */
+	protected static void placementRejected() {
+		PLACEMENTS_REJECTED.increment();
+	}
+
+	/**
+	 * Counts bytes read from a player.
+	 * @param byteCount Bytes read.
+	 */
+	protected static void bytesReceived(long byteCount) {
+		BYTES_RECEIVED.add(byteCount);
+	}
+
+	/**
+	 * Counts bytes written to a player or spectator.
+	 * @param byteCount Bytes written.
+	 */
+	protected static void bytesSent(long byteCount) {
+		BYTES_SENT.add(byteCount);
+	}
+
+	/**
+	 * Counts a message or connection whose handling failed with an unexpected exception; the failure itself is still printed where it happened.
+	 */
+	protected static void handlerFailed() {
+		HANDLER_ERRORS.increment();
+	}
+
+	/**
+	 * Records how long a missile took to land.
+	 * @param nanos Time taken by GameBoard.fireMissile().
+	 */
+	protected static void missileFired(long nanos) {
+		FIRE_MISSILE_LATENCY.record(nanos);
+	}
+
+	/**
+	 * Records how long a game was played for.
+	 * @param nanos Time from both fleets being placed to a winner.
+	 */
+	protected static void gamePlayed(long nanos) {
+		GAME_DURATION.record(nanos);
+	}
+
+	/**
+	 * Wraps a player's input stream so the bytes read from it are counted, for a transport reading through streams.
+	 * @param playerInput Stream from the player's socket.
+	 * @return Stream counting what is read from it.
+	 */
+	protected static InputStream countingInput(InputStream playerInput) {
+		return new CountingInputStream(playerInput);
+	}
+
+	/**
+	 * Simple accessor method to return the number of connections accepted.
+	 * @return Connections accepted since the server started.
+	 */
+	protected static long getConnectionsAccepted() {
+		return CONNECTIONS_ACCEPTED.sum();
+	}
+
+	/**
+	 * Simple accessor method to return the number of connections closed.
+	 * @return Connections closed since the server started.
+	 */
+	protected static long getConnectionsClosed() {
+		return CONNECTIONS_CLOSED.sum();
+	}
+
+	/**
+	 * Simple accessor method to return the number of game commands of one type handled.
+	 * @param command CommandDecoder constant for the type of command.
+	 * @return Commands of the type handled since the server started.
+	 */
+	protected static long getCommandsHandled(int command) {
+		return COMMANDS[command].sum();
+	}
+
+	/**
+	 * Simple accessor method to return the number of ships the board refused to place.
+	 * @return Placements rejected since the server started.
+	 */
+	protected static long getPlacementsRejected() {
+		return PLACEMENTS_REJECTED.sum();
+	}
+
+	/**
+	 * Simple accessor method to return the number of bytes read from players.
+	 * @return Bytes received since the server started.
+	 */
+	protected static long getBytesReceived() {
+		return BYTES_RECEIVED.sum();
+	}
+
+	/**
+	 * Simple accessor method to return the number of bytes written to players and spectators.
+	 * @return Bytes sent since the server started.
+	 */
+	protected static long getBytesSent() {
+		return BYTES_SENT.sum();
+	}
+
+	/**
+	 * Simple accessor method to return the number of messages or connections whose handling failed.
+	 * @return Handler errors since the server started.
+	 */
+	protected static long getHandlerErrors() {
+		return HANDLER_ERRORS.sum();
+	}
+
+	/**
+	 * Simple accessor method to return the distribution of the time taken to land a missile.
+	 * @return Histogram of GameBoard.fireMissile() times.
+	 */
+	protected static LatencyHistogram getFireMissileLatency() {
+		return FIRE_MISSILE_LATENCY;
+	}
+
+	/**
+	 * Simple accessor method to return the distribution of the time games were played for.
+	 * @return Histogram of game durations.
+	 */
+	protected static LatencyHistogram getGameDuration() {
+		return GAME_DURATION;
+	}
+
+	/**
+	 * Stream counting the bytes read from a player's socket.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		/**
+		 * Wraps a player's input stream.
+		 * @param playerInput Stream to count reads from.
+		 */
+		private CountingInputStream(InputStream playerInput) {
+			super(playerInput);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int inputByte = super.read();
+			if(inputByte >= 0)
+				BYTES_RECEIVED.increment();
+			return inputByte;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int bytesRead = super.read(buffer, offset, length);
+			if(bytesRead > 0)
+				BYTES_RECEIVED.add(bytesRead);
+			return bytesRead;
+		}
+	}
+}
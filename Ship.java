@@ -29,6 +29,11 @@ abstract public class Ship {
 	 */
 	protected SHIPTYPES type;
 	
+	/**
+	 * Notified when the ship's last hit is taken; set by the board the ship is placed on.
+	 */
+	private ShipSunkListener sinkListener;
+	
 	/**
 	 * Simple constructor to set the ship's name to the string specified.
 	 * Array list of cells may be set through setPosition() method.
@@ -38,6 +43,27 @@ abstract public class Ship {
 		this.shipName = shipName;
 	}
 	
+	/**
+	 * Creates a ship of the given type.
+	 * @param shipType Type of ship to create.
+	 * @param shipName Name of the new ship.
+	 * @return The new ship.
+	 */
+	protected static Ship newShip(SHIPTYPES shipType, String shipName) {
+		switch (shipType) {
+			case BATTLESHIP:
+				return new Battleship(shipName);
+			case CARRIER:
+				return new Carrier(shipName);
+			case DESTROYER:
+				return new Destroyer(shipName);
+			case CRUISER:
+				return new Cruiser(shipName);
+			default:
+				return new Submarine(shipName);
+		}
+	}
+	
 	/**
 	 * Abstract class to display the appropriate character representing the ship based on ship's status.
 	 * @param isHit Boolean specifying whether or not the cell has been attacked.
@@ -88,8 +114,21 @@ abstract public class Ship {
 	 * Simple method used to decrement the hitsRemaining field as destroyer takes damage.
 	 */
 	protected void missileStrike() {
-		if(this.hitsRemaining > 0)
+		if(this.hitsRemaining > 0) {
 			hitsRemaining--;
+			
+			//That was the last hit the ship could take; let the board know it has sunk.
+			if(this.hitsRemaining == 0 && sinkListener != null)
+				sinkListener.shipSunk(this);
+		}
+	}
+	
+	/**
+	 * Sets the listener to be notified when this ship sinks, replacing any previous listener.
+	 * @param sinkListener Listener to notify, or null for none.
+	 */
+	protected void setSinkListener(ShipSunkListener sinkListener) {
+		this.sinkListener = sinkListener;
 	}
 	
 	/**
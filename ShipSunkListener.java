@@ -0,0 +1,14 @@
+package battleship;
+
+/**
+ * Receives notice when a ship has been sunk.
+ * Boards listen to their own ships and pass the notice on to anyone who has subscribed to the board.
+ */
+public interface ShipSunkListener {
+
+	/**
+	 * Called once, as the missile strike that sinks the ship is processed.
+	 * @param sunkShip Ship that has just been sunk.
+	 */
+	void shipSunk(Ship sunkShip);
+}
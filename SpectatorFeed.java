@@ -0,0 +1,197 @@
+package battleship;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+/**
+ * Frames on their way to one spectator. A game's GameBroadcast queues the same read-only frame on every feed, and the spectator's transport writes each
+ * from its own view of the frame, so nothing is copied per spectator. A feed holds at most MAX_QUEUED_FRAMES: a spectator who falls that far behind
+ * loses the frames they have not been sent and is sent the whole of both boards instead, so a slow spectator never holds up the game.
+ * Frames are queued on the game's thread and taken on the transport's; both hold the feed's lock only to move a frame.
+ */
+public class SpectatorFeed {
+
+	/**
+	 * Most frames queued for a spectator before those not yet sent are dropped for a single frame of both boards.
+	 */
+	protected static final int MAX_QUEUED_FRAMES = 32;
+
+	/**
+	 * Bytes copied at a time by writeTo().
+	 */
+	private static final int COPY_BUFFER_SIZE = 4096;
+
+	/**
+	 * Frames queued and not yet taken by the transport, oldest first. Guarded by this feed's lock.
+	 */
+	private ArrayDeque<ByteBuffer> frames;
+
+	/**
+	 * Set once the transport has been told of frames and has not yet found the feed empty, so it is told only once. Guarded by this feed's lock.
+	 */
+	private boolean writePending;
+
+	/**
+	 * Set once the game has ended or the spectator has gone. Frames already queued are still taken. Guarded by this feed's lock.
+	 */
+	private boolean closed;
+
+	/**
+	 * Frames dropped because the spectator had fallen behind. Guarded by this feed's lock.
+	 */
+	private long framesDropped;
+
+	/**
+	 * Called once frames are queued on an empty feed, to have the transport write them; null for a transport whose thread waits in writeTo() instead.
+	 * Guarded by this feed's lock.
+	 */
+	private Runnable frameListener;
+
+	/**
+	 * Creates an empty feed.
+	 */
+	protected SpectatorFeed() {
+		frames = new ArrayDeque<ByteBuffer>(MAX_QUEUED_FRAMES);
+	}
+
+	/**
+	 * Sets what to call, on the game's thread, when frames are queued for a transport that has taken every frame before them.
+	 * The transport must then call nextFrame() until it returns null, as frames queued before the listener was set are not announced.
+	 * @param frameListener Callback having the transport write the feed's frames.
+	 */
+	protected synchronized void setFrameListener(Runnable frameListener) {
+		this.frameListener = frameListener;
+	}
+
+	/**
+	 * Queues a frame for the spectator. A spectator with MAX_QUEUED_FRAMES already waiting loses them, and the whole of both boards is queued in place of the frame.
+	 * @param frame Read-only frame shared by every spectator of the game.
+	 * @param keyframe Supplies a frame of both boards, including the change the frame carries; only called if the spectator has fallen behind.
+	 * @return False if the feed is closed, so the broadcast can forget it.
+	 */
+	protected boolean offer(ByteBuffer frame, Supplier<ByteBuffer> keyframe) {
+		Runnable listener;
+		synchronized(this) {
+			if(closed)
+				return false;
+			if(frames.size() >= MAX_QUEUED_FRAMES) {
+				framesDropped += frames.size();
+				frames.clear();
+				frames.add(keyframe.get());
+			}
+			else
+				frames.add(frame);
+
+			if(frameListener == null) {
+				this.notifyAll();
+				return true;
+			}
+			if(writePending)
+				return true;
+			writePending = true;
+			listener = frameListener;
+		}
+		listener.run();
+		return true;
+	}
+
+	/**
+	 * Takes the next frame without waiting. Called by the transport once told of frames, until it returns null.
+	 * @return The spectator's own view of the next frame, or null if none is queued.
+	 */
+	protected synchronized ByteBuffer nextFrame() {
+		ByteBuffer frame = frames.poll();
+		if(frame == null) {
+			writePending = false;
+			return null;
+		}
+		return frame.duplicate();
+	}
+
+	/**
+	 * Writes frames to a blocking stream as they are queued, until the feed is closed and empty or the stream fails, then closes the stream.
+	 * Used by the blocking transport, on the spectator's own thread.
+	 * @param output Stream to the spectator.
+	 */
+	protected void writeTo(OutputStream output) {
+		byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+		try {
+			ByteBuffer frame;
+			while((frame = this.awaitFrame()) != null) {
+				//Streams only take arrays; frames are direct so the non-blocking transport can write them as they are.
+				while(frame.hasRemaining()) {
+					int length = Math.min(frame.remaining(), copyBuffer.length);
+					frame.get(copyBuffer, 0, length);
+					output.write(copyBuffer, 0, length);
+					ServerMetrics.bytesSent(length);
+				}
+				output.flush();
+			}
+		}
+		catch(IOException error) {
+			//Spectator went away; their transport reports the lost connection.
+		}
+		catch(InterruptedException error) {
+			//Server shutting down.
+		}
+		this.close();
+		try {
+			output.close();
+		}
+		catch(IOException error) {
+			System.out.println("Error closing connection: " + error + ".");
+		}
+	}
+
+	/**
+	 * Blocks until a frame is queued or the feed is closed and empty.
+	 * @return The spectator's own view of the next frame, or null once the feed is closed and empty.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	private synchronized ByteBuffer awaitFrame() throws InterruptedException {
+		while(frames.isEmpty() && !(closed))
+			this.wait();
+		ByteBuffer frame = frames.poll();
+		return frame == null ? null : frame.duplicate();
+	}
+
+	/**
+	 * Closes the feed. The transport still writes the frames already queued, then closes the spectator's connection.
+	 */
+	protected void close() {
+		Runnable listener;
+		synchronized(this) {
+			if(closed)
+				return;
+			closed = true;
+			if(frameListener == null) {
+				this.notifyAll();
+				return;
+			}
+			if(writePending)
+				return;
+			writePending = true;
+			listener = frameListener;
+		}
+		listener.run();
+	}
+
+	/**
+	 * Reports whether the feed has been closed.
+	 * @return True once the game has ended or the spectator has gone.
+	 */
+	protected synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Simple accessor method to return the number of frames the spectator has lost by falling behind.
+	 * @return Frames dropped.
+	 */
+	protected synchronized long getFramesDropped() {
+		return framesDropped;
+	}
+}
@@ -0,0 +1,261 @@
+package battleship;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * One player's output on the blocking transport: the stream under the PrintWriter handed to their Client.
+ * Bytes collect in a buffer and are handed to the connection's own writer thread, running writeQueued(), when the writer is flushed,
+ * or once the player's game releases its hold at the end of a turn. Only that thread blocks on the socket, so a player who stops reading
+ * stalls their own connection and never the thread handling their game.
+ */
+public class StreamOutput extends OutputStream implements PlayerOutput {
+
+	/**
+	 * Initial size of each of the two buffers, enough for a turn's boards and messages. Bytes beyond it are handed to the writer thread regardless of flushes.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Most bytes that may wait for a player who is not reading before they are disconnected. Chat stops being delivered long before, at Client's backlog limit.
+	 */
+	private static final int MAX_QUEUED_BYTES = 1024 * 1024;
+
+	/**
+	 * Stream to the player's socket, written only by the writer thread.
+	 */
+	private OutputStream socketOutput;
+
+	/**
+	 * Bytes written and not yet taken by the writer thread. Guarded by this stream's lock.
+	 */
+	private byte[] queuedBytes;
+
+	/**
+	 * Number of bytes at the start of queuedBytes. Guarded by this stream's lock.
+	 */
+	private int queuedLength;
+
+	/**
+	 * Number of bytes the writer thread has taken and is writing to the socket. Guarded by this stream's lock.
+	 */
+	private int writingLength;
+
+	/**
+	 * Set once the writer thread may take the queued bytes. Guarded by this stream's lock.
+	 */
+	private boolean writeReady;
+
+	/**
+	 * Set while the player's game holds back output. Guarded by this stream's lock.
+	 */
+	private boolean held;
+
+	/**
+	 * Set once the writer has been flushed while output was held, so release() hands the bytes over. Guarded by this stream's lock.
+	 */
+	private boolean flushPending;
+
+	/**
+	 * Set once the stream has been closed; the writer thread writes what is queued, then closes the socket. Guarded by this stream's lock.
+	 */
+	private boolean closeRequested;
+
+	/**
+	 * Set once the socket has failed or been closed, after which output is discarded. Guarded by this stream's lock.
+	 */
+	private boolean failed;
+
+	/**
+	 * Creates the output for a player's socket. Nothing reaches the socket until writeQueued() is running on a thread of its own.
+	 * @param socketOutput Stream to the player's socket.
+	 */
+	protected StreamOutput(OutputStream socketOutput) {
+		this.socketOutput = socketOutput;
+		queuedBytes = new byte[BUFFER_SIZE];
+	}
+
+	@Override
+	public void write(int outputByte) {
+		synchronized(this) {
+			if(failed || !(this.reserve(1)))
+				return;
+			queuedBytes[queuedLength++] = (byte) outputByte;
+			this.queued();
+		}
+		ServerMetrics.bytesSent(1);
+	}
+
+	@Override
+	public void write(byte[] outputBytes, int offset, int length) {
+		synchronized(this) {
+			if(failed || !(this.reserve(length)))
+				return;
+			System.arraycopy(outputBytes, offset, queuedBytes, queuedLength, length);
+			queuedLength += length;
+			this.queued();
+		}
+		ServerMetrics.bytesSent(length);
+	}
+
+	@Override
+	public synchronized void flush() {
+		if(held) {
+			flushPending = true;
+			return;
+		}
+		this.handOver();
+	}
+
+	@Override
+	public synchronized void close() {
+		//Whatever is still queued goes out before the writer thread closes the socket.
+		closeRequested = true;
+		this.notifyAll();
+	}
+
+	public synchronized void hold() {
+		held = true;
+	}
+
+	public synchronized void release() {
+		held = false;
+		if(!(flushPending))
+			return;
+		flushPending = false;
+		this.handOver();
+	}
+
+	public void writeShared(ByteBuffer frame) {
+		//Streams only take arrays, so the frame is copied into the queue.
+		ByteBuffer frameView = frame.duplicate();
+		synchronized(this) {
+			int length = frameView.remaining();
+			if(failed || !(this.reserve(length)))
+				return;
+			frameView.get(queuedBytes, queuedLength, length);
+			queuedLength += length;
+			ServerMetrics.bytesSent(length);
+			//Sent now, or with the rest of the turn if output is held.
+			this.flush();
+		}
+	}
+
+	public synchronized int getQueuedBytes() {
+		return queuedLength + writingLength;
+	}
+
+	/**
+	 * Writes queued bytes to the socket as they are handed over, until the stream is closed and everything queued is written or the socket fails,
+	 * then closes the socket. Run by the transport on the connection's own thread, for as long as the connection is open.
+	 */
+	protected void writeQueued() {
+		byte[] writingBytes = new byte[BUFFER_SIZE];
+		try {
+			while(true) {
+				int length;
+				synchronized(this) {
+					while(!(writeReady) && !(closeRequested))
+						this.wait();
+					if(queuedLength == 0) {
+						writeReady = false;
+						if(closeRequested)
+							break;
+						continue;
+					}
+					//Swap buffers so the game keeps writing into one while this thread writes the other.
+					byte[] takenBytes = queuedBytes;
+					queuedBytes = writingBytes;
+					if(queuedBytes.length < BUFFER_SIZE)
+						queuedBytes = new byte[BUFFER_SIZE];
+					writingBytes = takenBytes;
+					length = queuedLength;
+					writingLength = length;
+					queuedLength = 0;
+					writeReady = false;
+				}
+				socketOutput.write(writingBytes, 0, length);
+				socketOutput.flush();
+				synchronized(this) {
+					writingLength = 0;
+					this.notifyAll();
+				}
+			}
+		}
+		catch(IOException error) {
+			//Player went away; their reader thread reports the lost connection.
+		}
+		catch(InterruptedException error) {
+			//Server shutting down.
+		}
+		synchronized(this) {
+			failed = true;
+			queuedLength = 0;
+			writingLength = 0;
+			this.notifyAll();
+		}
+		try {
+			socketOutput.close();
+		}
+		catch(IOException error) {
+			System.out.println("Error closing connection: " + error + ".");
+		}
+	}
+
+	/**
+	 * Blocks until everything written so far has reached the socket, or the socket has failed, so the caller can then write to the socket itself.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	protected synchronized void awaitWritten() throws InterruptedException {
+		this.handOver();
+		while(queuedLength + writingLength > 0 && !(failed))
+			this.wait();
+	}
+
+	/**
+	 * Makes room in the queue for more bytes, doubling its size as often as needed, or disconnects the player if they have fallen MAX_QUEUED_BYTES behind.
+	 * Called holding this stream's lock.
+	 * @param length Bytes about to be queued.
+	 * @return False if the player was disconnected and the bytes must be discarded.
+	 */
+	private boolean reserve(int length) {
+		if(queuedLength + writingLength + length > MAX_QUEUED_BYTES) {
+			//Closing the socket wakes the writer thread if it is blocked, and the reader thread then reports the lost connection.
+			failed = true;
+			queuedLength = 0;
+			this.notifyAll();
+			try {
+				socketOutput.close();
+			}
+			catch(IOException error) {
+				System.out.println("Error closing connection: " + error + ".");
+			}
+			return false;
+		}
+		if(queuedLength + length <= queuedBytes.length)
+			return true;
+		byte[] largerBytes = new byte[Math.max(queuedBytes.length * 2, queuedLength + length)];
+		System.arraycopy(queuedBytes, 0, largerBytes, 0, queuedLength);
+		queuedBytes = largerBytes;
+		return true;
+	}
+
+	/**
+	 * Hands a full buffer's worth of bytes to the writer thread without waiting for a flush, as a buffered stream would write it. Called holding this stream's lock.
+	 */
+	private void queued() {
+		if(queuedLength >= BUFFER_SIZE)
+			this.handOver();
+	}
+
+	/**
+	 * Lets the writer thread take everything queued. Called holding this stream's lock.
+	 */
+	private void handOver() {
+		if(queuedLength == 0 || writeReady)
+			return;
+		writeReady = true;
+		this.notifyAll();
+	}
+}
@@ -0,0 +1,54 @@
+package battleship;
+
+/**
+ * Token bucket limiting how often something may happen: up to its capacity at once, then at its refill rate on average.
+ * Not thread-safe; each bucket belongs to one player and is only used while their game handles a message.
+ */
+public class TokenBucket {
+
+	/**
+	 * Most tokens the bucket holds, and so the longest burst allowed.
+	 */
+	private double capacity;
+
+	/**
+	 * Tokens added per nanosecond.
+	 */
+	private double refillPerNano;
+
+	/**
+	 * Tokens in the bucket at lastRefillNanos.
+	 */
+	private double tokens;
+
+	/**
+	 * System.nanoTime() when tokens was last brought up to date.
+	 */
+	private long lastRefillNanos;
+
+	/**
+	 * Creates a full bucket.
+	 * @param capacity Most tokens the bucket holds.
+	 * @param refillPerSecond Tokens added each second, up to the capacity.
+	 */
+	protected TokenBucket(int capacity, double refillPerSecond) {
+		this.capacity = capacity;
+		this.refillPerNano = refillPerSecond / 1e9;
+		this.tokens = capacity;
+		this.lastRefillNanos = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token if there is one.
+	 * @param nowNanos Current System.nanoTime().
+	 * @return True if a token was taken; false if the bucket is empty, and whatever it limits should not happen.
+	 */
+	protected boolean tryTake(long nowNanos) {
+		tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * refillPerNano);
+		lastRefillNanos = nowNanos;
+		if(tokens < 1)
+			return false;
+		tokens--;
+		return true;
+	}
+}
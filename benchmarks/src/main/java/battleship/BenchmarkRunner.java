@@ -0,0 +1,35 @@
+package battleship;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line and always attaches the GC profiler, so every run reports allocation rate next to throughput.
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Runs the benchmarks selected on the command line.
+	 * @param args JMH command line arguments, e.g. a benchmark name pattern or -p boardSize=10.
+	 * @throws Exception If JMH cannot parse the arguments or a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+
+		//Listing and help requests have nothing to profile; let JMH's own launcher handle them.
+		if(commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams() || commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()) {
+			Main.main(args);
+			return;
+		}
+
+		Options options = new OptionsBuilder()
+			.parent(commandLine)
+			.addProfiler(GCProfiler.class)
+			.build();
+		new Runner(options).run();
+	}
+}
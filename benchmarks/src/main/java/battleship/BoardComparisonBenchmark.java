@@ -0,0 +1,137 @@
+package battleship;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares GameBoard with the bitset-backed BitBoard on the same operations.
+ * The new* benchmarks' gc.alloc.rate.norm is the memory footprint of an empty board.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardComparisonBenchmark {
+
+	/**
+	 * Rows and columns of the square boards under test.
+	 */
+	@Param({"10", "20"})
+	public int boardSize;
+
+	/**
+	 * Grid board reused by the placement and firing benchmarks.
+	 */
+	private GameBoard gameBoard;
+
+	/**
+	 * Bitset board reused by the placement and firing benchmarks.
+	 */
+	private BitBoard bitBoard;
+
+	/**
+	 * One ship of each type, placed by the fleet benchmarks.
+	 */
+	private Ship[] fleet;
+
+	/**
+	 * Stern of each ship in the fleet: one ship per row from column 0.
+	 */
+	private Position[] sternPositions;
+
+	/**
+	 * Every cell of the board; firing benchmarks cycle through them.
+	 */
+	private Position[] allPositions;
+
+	/**
+	 * Index of the next cell to attack.
+	 */
+	private int nextTarget;
+
+	/**
+	 * Creates both boards with the same fleet and the positions used by the benchmarks.
+	 */
+	@Setup(Level.Trial)
+	public void createBoards() {
+		fleet = new Ship[] { new Battleship("Battleship"), new Carrier("Carrier"), new Destroyer("Destroyer"), new Cruiser("Cruiser"), new Submarine("Submarine") };
+		sternPositions = new Position[fleet.length];
+		for(int row = 0; row < fleet.length; row++)
+			sternPositions[row] = new Position(row, 0);
+
+		allPositions = new Position[boardSize * boardSize];
+		for(int cell = 0; cell < allPositions.length; cell++)
+			allPositions[cell] = new Position(cell / boardSize, cell % boardSize);
+
+		gameBoard = new GameBoard(boardSize, boardSize);
+		bitBoard = new BitBoard(boardSize, boardSize);
+		for(int index = 0; index < fleet.length; index++) {
+			gameBoard.addShip(fleet[index], sternPositions[index], HEADING.EAST);
+			bitBoard.addShip(fleet[index], sternPositions[index], HEADING.EAST);
+		}
+	}
+
+	@Benchmark
+	public GameBoard newGameBoard() {
+		return new GameBoard(boardSize, boardSize);
+	}
+
+	@Benchmark
+	public BitBoard newBitBoard() {
+		return new BitBoard(boardSize, boardSize);
+	}
+
+	@Benchmark
+	public boolean placeFleetGameBoard() {
+		gameBoard.clear();
+		boolean allPlaced = true;
+		for(int index = 0; index < fleet.length; index++)
+			allPlaced &= gameBoard.addShip(fleet[index], sternPositions[index], HEADING.EAST);
+		return allPlaced;
+	}
+
+	@Benchmark
+	public boolean placeFleetBitBoard() {
+		bitBoard.clear();
+		boolean allPlaced = true;
+		for(int index = 0; index < fleet.length; index++)
+			allPlaced &= bitBoard.addShip(fleet[index], sternPositions[index], HEADING.EAST);
+		return allPlaced;
+	}
+
+	@Benchmark
+	public Ship fireMissileGameBoard() {
+		nextTarget = (nextTarget + 1) % allPositions.length;
+		return gameBoard.fireMissile(allPositions[nextTarget]);
+	}
+
+	@Benchmark
+	public Ship fireMissileBitBoard() {
+		nextTarget = (nextTarget + 1) % allPositions.length;
+		return bitBoard.fireMissile(allPositions[nextTarget]);
+	}
+
+	@Benchmark
+	public boolean hasShipsRemainingGameBoard() {
+		return gameBoard.hasShipsRemaining();
+	}
+
+	@Benchmark
+	public boolean hasShipsRemainingBitBoard() {
+		return bitBoard.hasShipsRemaining();
+	}
+}
@@ -0,0 +1,108 @@
+package battleship;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of a player's fire command, from the text coordinates through the opponent's board to the reply written back to the player,
+ * and of drawing both boards to the player after each command.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClientBenchmark {
+
+	/**
+	 * Rows and columns of both players' boards.
+	 */
+	@Param({"10", "20", "40"})
+	public int boardSize;
+
+	/**
+	 * Player issuing fire commands. Output goes to a writer that discards it.
+	 */
+	private Client shooter;
+
+	/**
+	 * Player being fired upon, whose boards are drawn by the drawBoards benchmark.
+	 */
+	private Client target;
+
+	/**
+	 * Every cell on the board, for firing at the target's board directly.
+	 */
+	private Position[] targetPositions;
+
+	/**
+	 * Row of every cell on the board as the player would type it.
+	 */
+	private String[] rowNumbers;
+
+	/**
+	 * Column of every cell on the board as the player would type it.
+	 */
+	private String[] columnNumbers;
+
+	/**
+	 * Index of the next cell to attack.
+	 */
+	private int nextTarget;
+
+	/**
+	 * Creates a two-player game whose target has the standard fleet, and the text coordinates of every cell.
+	 */
+	@Setup(Level.Trial)
+	public void createGame() {
+		GameManager gameManager = new GameManager(0);
+		PrintWriter discardedOutput = new PrintWriter(Writer.nullWriter());
+
+		shooter = new Client(null, discardedOutput, gameManager, boardSize, boardSize);
+		target = new Client(null, discardedOutput, gameManager, boardSize, boardSize);
+		gameManager.getGameClients().add(shooter);
+		gameManager.getGameClients().add(target);
+
+		Ship[] fleet = { new Battleship("Battleship"), new Carrier("Carrier"), new Destroyer("Destroyer"), new Cruiser("Cruiser"), new Submarine("Submarine") };
+		for(int row = 0; row < fleet.length; row++)
+			target.getClientGameBoard().addShip(fleet[row], new Position(row, 0), HEADING.EAST);
+
+		rowNumbers = new String[boardSize * boardSize];
+		columnNumbers = new String[boardSize * boardSize];
+		targetPositions = new Position[boardSize * boardSize];
+		for(int cell = 0; cell < rowNumbers.length; cell++) {
+			rowNumbers[cell] = Integer.toString(cell / boardSize);
+			columnNumbers[cell] = Integer.toString(cell % boardSize);
+			targetPositions[cell] = new Position(cell / boardSize, cell % boardSize);
+		}
+	}
+
+	@Benchmark
+	public boolean processFireCommand() {
+		nextTarget = (nextTarget + 1) % rowNumbers.length;
+		return shooter.processFireCommand(rowNumbers[nextTarget], columnNumbers[nextTarget]);
+	}
+
+	@Benchmark
+	public void drawBoards() {
+		//Land a shot on the target's board so one row must be redrawn, as after a real fire command.
+		nextTarget = (nextTarget + 1) % targetPositions.length;
+		target.getClientGameBoard().fireMissile(targetPositions[nextTarget]);
+		target.drawBoards();
+	}
+}
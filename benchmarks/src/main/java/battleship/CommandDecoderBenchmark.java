@@ -0,0 +1,90 @@
+package battleship;
+
+import java.nio.charset.Charset;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of reading one game command, comparing the StringTokenizer parsing the game loop used to do with CommandDecoder.
+ * gc.alloc.rate.norm is the garbage left by each command; decodeBytes should leave none for fire commands.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandDecoderBenchmark {
+
+	/**
+	 * Command line under test.
+	 */
+	@Param({"F 3 7", "C good game, well played"})
+	public String commandLine;
+
+	/**
+	 * The command line as the transport receives it.
+	 */
+	private byte[] commandBytes;
+
+	/**
+	 * Decoder reused for every command, as each Client does.
+	 */
+	private CommandDecoder commandDecoder;
+
+	@Setup(Level.Trial)
+	public void encodeCommand() {
+		commandBytes = commandLine.getBytes(Charset.defaultCharset());
+		commandDecoder = new CommandDecoder();
+	}
+
+	/**
+	 * The previous parsing: a String for the line, a StringTokenizer and its tokens, coordinates parsed twice and a Position for the shot.
+	 */
+	@Benchmark
+	public void stringTokenizer(Blackhole blackhole) {
+		String line = new String(commandBytes, Charset.defaultCharset());
+		StringTokenizer nextCommand = new StringTokenizer(line, " ");
+		String userCommand = nextCommand.nextToken();
+
+		if(userCommand.equals("F")) {
+			String rowNumber = nextCommand.nextToken();
+			String columnNumber = nextCommand.nextToken();
+			blackhole.consume(new Position(Integer.valueOf(rowNumber).intValue(), Integer.valueOf(columnNumber).intValue()));
+			blackhole.consume(Integer.parseInt(rowNumber) + Integer.parseInt(columnNumber));
+			return;
+		}
+
+		String message = "";
+		while(nextCommand.hasMoreTokens())
+			message += nextCommand.nextToken();
+		blackhole.consume(message);
+	}
+
+	/**
+	 * The decoder reading straight from the received bytes, as on the non-blocking transport. Chat still creates the message String.
+	 */
+	@Benchmark
+	public void decodeBytes(Blackhole blackhole) {
+		commandDecoder.decode(commandBytes, 0, commandBytes.length);
+		if(commandDecoder.command == CommandDecoder.FIRE) {
+			blackhole.consume(commandDecoder.row + commandDecoder.column);
+			return;
+		}
+		blackhole.consume(commandDecoder.message(Charset.defaultCharset()));
+	}
+}
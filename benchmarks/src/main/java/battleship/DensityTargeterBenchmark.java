@@ -0,0 +1,98 @@
+package battleship;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time the computer opponent takes to sink a randomly placed fleet, choosing every shot with a DensityTargeter.
+ * Each operation is a whole game; the average number of shots per game is printed at the end of each trial, so time per shot is the score divided by it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DensityTargeterBenchmark {
+
+	/**
+	 * Rows and columns of the square board under test.
+	 */
+	@Param({"10", "20", "40"})
+	public int boardSize;
+
+	/**
+	 * Places fleets and breaks the targeter's ties.
+	 */
+	private Random random;
+
+	/**
+	 * Places a random fleet for each game.
+	 */
+	private FleetGenerator fleetGenerator;
+
+	/**
+	 * Board holding the fleet for the next game.
+	 */
+	private GameBoard fleetBoard;
+
+	/**
+	 * Games played and shots fired during the trial, for the shots per game figure.
+	 */
+	private long gamesPlayed, shotsFired;
+
+	@Setup(Level.Trial)
+	public void createGenerators() {
+		random = new Random(12345);
+		fleetGenerator = new FleetGenerator(boardSize, boardSize, random);
+	}
+
+	/**
+	 * Places a new fleet for each game, outside the measured time.
+	 */
+	@Setup(Level.Invocation)
+	public void placeFleet() {
+		fleetBoard = new GameBoard(boardSize, boardSize);
+		fleetGenerator.placeShips(fleetBoard, 0);
+	}
+
+	@TearDown(Level.Trial)
+	public void reportShots() {
+		System.out.println();
+		System.out.println(boardSize + "x" + boardSize + ": " + (shotsFired / Math.max(1, gamesPlayed)) + " shots per game");
+	}
+
+	/**
+	 * Plays one game: a new targeter chooses shots at the fleet until every ship is sunk.
+	 * @return Shots fired.
+	 */
+	@Benchmark
+	public int playGame() {
+		DensityTargeter targeter = new DensityTargeter(boardSize, boardSize, random);
+		int shots = 0;
+		while(fleetBoard.hasShipsRemaining()) {
+			int cell = targeter.nextShot();
+			int row = targeter.rowOf(cell);
+			int column = targeter.columnOf(cell);
+			targeter.shotResult(row, column, fleetBoard.fireMissile(row, column));
+			shots++;
+		}
+		gamesPlayed++;
+		shotsFired += shots;
+		return shots;
+	}
+}
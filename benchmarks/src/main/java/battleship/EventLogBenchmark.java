@@ -0,0 +1,104 @@
+package battleship;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost to a game thread of recording a missile in a GameEventLog, and records per second GameReplay reads back from a mapped log.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventLogBenchmark {
+
+	/**
+	 * Missiles written to the log read by the replay benchmark.
+	 */
+	private static final int LOGGED_MISSILES = 1_000_000;
+
+	/**
+	 * Log recorded into, and the file it writes to.
+	 */
+	private GameEventLog eventLog;
+	private Path logPath;
+
+	/**
+	 * Listener the log gives a board, as a game's boards use it.
+	 */
+	private BoardListener boardRecorder;
+
+	/**
+	 * Log of LOGGED_MISSILES missiles, read by the replay benchmark.
+	 */
+	private Path replayPath;
+
+	/**
+	 * Cell of the next missile recorded.
+	 */
+	private int nextCell;
+
+	@Setup(Level.Trial)
+	public void openLogs() throws IOException {
+		logPath = Files.createTempFile("battleship", ".log");
+		eventLog = new GameEventLog(logPath);
+		boardRecorder = eventLog.boardRecorder(1, 0);
+
+		replayPath = Files.createTempFile("battleship-replay", ".log");
+		GameEventLog replayLog = new GameEventLog(replayPath);
+		replayLog.gameStarted(1, 10, 10);
+		BoardListener replayRecorder = replayLog.boardRecorder(1, 0);
+		for(int missile = 0; missile < LOGGED_MISSILES; missile++)
+			replayRecorder.missileFired(missile / 10 % 10, missile % 10, null);
+		replayLog.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteLogs() throws IOException {
+		eventLog.close();
+		Files.delete(logPath);
+		Files.delete(replayPath);
+	}
+
+	/**
+	 * Records one missile, as GameBoard.fireMissile() does when the game is logged.
+	 */
+	@Benchmark
+	public void recordMissile() {
+		int cell = nextCell++ % 100;
+		boardRecorder.missileFired(cell / 10, cell % 10, null);
+	}
+
+	/**
+	 * Maps the log of LOGGED_MISSILES missiles and reads every record.
+	 * @return Records read.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public long replayLog() throws IOException {
+		GameReplay replay = new GameReplay(replayPath);
+		long records = 0;
+		while(replay.next())
+			records++;
+		replay.close();
+		return records;
+	}
+}
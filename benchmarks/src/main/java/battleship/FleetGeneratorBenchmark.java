@@ -0,0 +1,90 @@
+package battleship;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Random fleets generated per second, comparing FleetGenerator with trying random stern positions and headings until GameBoard.addShip() accepts each ship.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FleetGeneratorBenchmark {
+
+	/**
+	 * Rows and columns of the square board under test.
+	 */
+	@Param({"10", "20", "40"})
+	public int boardSize;
+
+	/**
+	 * Source of randomness for every approach.
+	 */
+	private Random random;
+
+	/**
+	 * Generator under test.
+	 */
+	private FleetGenerator fleetGenerator;
+
+	/**
+	 * Board cleared and refilled by the benchmarks that place ships.
+	 */
+	private GameBoard board;
+
+	@Setup(Level.Trial)
+	public void createGenerator() {
+		random = new Random(12345);
+		fleetGenerator = new FleetGenerator(boardSize, boardSize, random);
+		board = new GameBoard(boardSize, boardSize);
+	}
+
+	/**
+	 * Draws a fleet's placements without touching a board, as simulations needing only the cells can.
+	 */
+	@Benchmark
+	public int[] sampleFleet() {
+		return fleetGenerator.sampleFleet();
+	}
+
+	/**
+	 * Draws a fleet and adds it to a board with GameBoard.addShip().
+	 */
+	@Benchmark
+	public GameBoard placeFleet() {
+		board.clear();
+		fleetGenerator.placeShips(board, 0);
+		return board;
+	}
+
+	/**
+	 * The previous approach: random stern positions and headings tried until the board accepts each ship.
+	 */
+	@Benchmark
+	public GameBoard addShipRetries() {
+		board.clear();
+		HEADING[] headings = HEADING.values();
+		for(SHIPTYPES shipType : SHIPTYPES.values()) {
+			Ship ship = Ship.newShip(shipType, shipType.toString());
+			while(!(board.addShip(ship, new Position(random.nextInt(boardSize), random.nextInt(boardSize)), headings[random.nextInt(headings.length)])))
+				;
+		}
+		return board;
+	}
+}
@@ -0,0 +1,90 @@
+package battleship;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for FleetSolver to count every fleet consistent with a 10x10 board partway through a game, on every processor and on the calling thread alone.
+ * The board's shots are chosen by a DensityTargeter, as the computer opponent would fire them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FleetSolverBenchmark {
+
+	/**
+	 * Rows and columns of the board.
+	 */
+	private static final int BOARD_SIZE = 10;
+
+	/**
+	 * Shots fired at the board before it is solved.
+	 */
+	@Param({"15", "20", "30"})
+	public int shotsFired;
+
+	/**
+	 * Board holding a fleet and the shots fired at it.
+	 */
+	private GameBoard board;
+
+	/**
+	 * Solver splitting each search across every processor.
+	 */
+	private FleetSolver parallelSolver;
+
+	/**
+	 * Solver searching on the calling thread.
+	 */
+	private FleetSolver singleThreadSolver;
+
+	@Setup(Level.Trial)
+	public void fireShots() {
+		Random random = new Random(12345);
+		board = new GameBoard(BOARD_SIZE, BOARD_SIZE);
+		new FleetGenerator(BOARD_SIZE, BOARD_SIZE, random).placeShips(board, 0);
+
+		DensityTargeter targeter = new DensityTargeter(BOARD_SIZE, BOARD_SIZE, random);
+		for(int shot = 0; shot < shotsFired && board.hasShipsRemaining(); shot++) {
+			int cell = targeter.nextShot();
+			int row = targeter.rowOf(cell);
+			int column = targeter.columnOf(cell);
+			targeter.shotResult(row, column, board.fireMissile(row, column));
+		}
+
+		parallelSolver = new FleetSolver(BOARD_SIZE, BOARD_SIZE);
+		singleThreadSolver = new FleetSolver(BOARD_SIZE, BOARD_SIZE, 1);
+	}
+
+	/**
+	 * Solves the board with the search split across every processor.
+	 */
+	@Benchmark
+	public FleetSolver.Solution solveParallel() throws Exception {
+		return parallelSolver.solve(board);
+	}
+
+	/**
+	 * Solves the board on the benchmark thread alone.
+	 */
+	@Benchmark
+	public FleetSolver.Solution solveSingleThread() throws Exception {
+		return singleThreadSolver.solve(board);
+	}
+}
@@ -0,0 +1,190 @@
+package battleship;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of GameBoard's hot paths: ship placement, missile strikes, the end-of-game check and rendering.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBoardBenchmark {
+
+	/**
+	 * Rows and columns of the square board under test.
+	 */
+	@Param({"10", "20", "40"})
+	public int boardSize;
+
+	/**
+	 * Board holding the standard fleet, used by every benchmark except addShip.
+	 */
+	private GameBoard fleetBoard;
+
+	/**
+	 * Cells covered by the fleet; hit benchmarks cycle through them.
+	 */
+	private Position[] shipPositions;
+
+	/**
+	 * Empty cells on the bottom row; miss benchmarks cycle through them.
+	 */
+	private Position[] emptyPositions;
+
+	/**
+	 * Cell attacked over and over by the repeat benchmark.
+	 */
+	private Position repeatedPosition;
+
+	/**
+	 * Index of the next cell to attack.
+	 */
+	private int nextTarget;
+
+	/**
+	 * Builds a board with one of each ship laid EAST along the top rows.
+	 */
+	@Setup(Level.Trial)
+	public void placeFleet() {
+		fleetBoard = newFleetBoard(boardSize);
+
+		int numShipCells = 0;
+		for(Ship ship : fleetBoard.boardShips)
+			numShipCells += ship.getLength();
+
+		shipPositions = new Position[numShipCells];
+		int index = 0;
+		for(int row = 0; row < fleetBoard.boardShips.size(); row++)
+			for(int column = 0; column < fleetBoard.boardShips.get(row).getLength(); column++)
+				shipPositions[index++] = new Position(row, column);
+
+		emptyPositions = new Position[boardSize];
+		for(int column = 0; column < boardSize; column++)
+			emptyPositions[column] = new Position(boardSize - 1, column);
+
+		repeatedPosition = new Position(0, 0);
+		fleetBoard.fireMissile(repeatedPosition);
+	}
+
+	@Benchmark
+	public Ship fireMissileHit() {
+		nextTarget = (nextTarget + 1) % shipPositions.length;
+		return fleetBoard.fireMissile(shipPositions[nextTarget]);
+	}
+
+	@Benchmark
+	public Ship fireMissileMiss() {
+		nextTarget = (nextTarget + 1) % emptyPositions.length;
+		return fleetBoard.fireMissile(emptyPositions[nextTarget]);
+	}
+
+	@Benchmark
+	public Ship fireMissileRepeat() {
+		return fleetBoard.fireMissile(repeatedPosition);
+	}
+
+	@Benchmark
+	public boolean hasShipsRemaining() {
+		return fleetBoard.hasShipsRemaining();
+	}
+
+	@Benchmark
+	public StringBuilder drawBoard() {
+		return fleetBoard.drawBoard();
+	}
+
+	@Benchmark
+	public boolean addShip(PlacementState placement) {
+		return placement.emptyBoard.addShip(placement.carrier, placement.sternPosition, placement.heading);
+	}
+
+	/**
+	 * Empty board and a carrier positioned so it fits on the board for the heading under test.
+	 */
+	@State(Scope.Thread)
+	public static class PlacementState {
+
+		/**
+		 * Direction in which the carrier is placed.
+		 */
+		@Param({"NORTH", "SOUTH", "EAST", "WEST"})
+		public HEADING heading;
+
+		/**
+		 * Board the carrier is added to; cleared before every call.
+		 */
+		private GameBoard emptyBoard;
+
+		/**
+		 * Ship being placed.
+		 */
+		private Ship carrier;
+
+		/**
+		 * Stern position from which the carrier fits in the chosen heading.
+		 */
+		private Position sternPosition;
+
+		/**
+		 * Creates the board and picks a stern against the edge the ship points away from.
+		 * @param benchmark Enclosing benchmark, supplying the board size.
+		 */
+		@Setup(Level.Trial)
+		public void createBoard(GameBoardBenchmark benchmark) {
+			int boardSize = benchmark.boardSize;
+			emptyBoard = new GameBoard(boardSize, boardSize);
+			carrier = new Carrier("Benchmark");
+
+			switch (heading) {
+				case NORTH:
+					sternPosition = new Position(boardSize - 1, boardSize / 2);
+					break;
+				case SOUTH:
+					sternPosition = new Position(0, boardSize / 2);
+					break;
+				case EAST:
+					sternPosition = new Position(boardSize / 2, 0);
+					break;
+				default:
+					sternPosition = new Position(boardSize / 2, boardSize - 1);
+			}
+		}
+
+		/**
+		 * Empties the board so every call places the carrier on a clear board. Clearing does not allocate and is not timed.
+		 */
+		@Setup(Level.Invocation)
+		public void clearBoard() {
+			emptyBoard.clear();
+		}
+	}
+
+	/**
+	 * Builds a board with one of each ship type laid EAST from column 0, one ship per row.
+	 * @param boardSize Rows and columns of the board; at least 10.
+	 * @return Board holding the fleet.
+	 */
+	static GameBoard newFleetBoard(int boardSize) {
+		GameBoard board = new GameBoard(boardSize, boardSize);
+		Ship[] fleet = { new Battleship("Battleship"), new Carrier("Carrier"), new Destroyer("Destroyer"), new Cruiser("Cruiser"), new Submarine("Submarine") };
+		for(int row = 0; row < fleet.length; row++)
+			board.addShip(fleet[row], new Position(row, 0), HEADING.EAST);
+		return board;
+	}
+}
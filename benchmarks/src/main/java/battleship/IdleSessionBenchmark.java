@@ -0,0 +1,146 @@
+package battleship;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * Load test measuring what idle sessions cost the server: CPU, threads and memory while many players sit at the command prompt.
+ * Starts an in-process server on the chosen transport, connects the requested number of games, places every fleet and then samples the process while nobody sends a command.
+ * Run it once per transport with the same game count to compare them, e.g. "10000 5 blocking" against "10000 5 virtual" on Java 21.
+ */
+public class IdleSessionBenchmark {
+
+	/**
+	 * Lines each simulated player sends to get from the name prompt to the command prompt.
+	 */
+	private static final String[] PLAYER_SETUP = {
+		"Idle Player",
+		"Battleship 0 0 EAST",
+		"Carrier 1 0 EAST",
+		"Destroyer 2 0 EAST",
+		"Cruiser 3 0 EAST",
+		"Submarine 4 0 EAST"
+	};
+
+	/**
+	 * Runs the load test.
+	 * @param args Optional number of concurrent games (default 500), sampling period in seconds (default 5) and transport ("blocking", "virtual" or "nio").
+	 * @throws Exception If the server cannot be started or players cannot connect.
+	 */
+	public static void main(String[] args) throws Exception {
+		int numGames = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int sampleSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		String transport = args.length > 2 ? args[2].toLowerCase() : "blocking";
+
+		//Baseline before any server state exists.
+		long baselineHeap = usedHeapAfterGc();
+		long baselineResident = residentSetSize();
+		int baselineThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+		//Start whichever transport was asked for on a free port.
+		int port;
+		Runnable acceptLoop;
+		Runnable shutdown;
+		if(transport.equals("nio")) {
+			SelectorGameServer selectorServer = new SelectorGameServer(0, Runtime.getRuntime().availableProcessors());
+			port = selectorServer.getPort();
+			acceptLoop = selectorServer::acceptPlayers;
+			shutdown = selectorServer::shutdown;
+		}
+		else {
+			GameServer gameServer = new GameServer(0, transport.equals("virtual"));
+			port = gameServer.getPort();
+			acceptLoop = gameServer::acceptPlayers;
+			shutdown = gameServer::shutdown;
+		}
+		Thread acceptThread = new Thread(acceptLoop, "accept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+
+		//Connect two players per game and send everything needed to reach the command prompt.
+		long connectStart = System.nanoTime();
+		ArrayList<Socket> playerSockets = new ArrayList<Socket>();
+		for(int index = 0; index < numGames * 2; index++)
+			playerSockets.add(connectIdlePlayer(port));
+		long connectNanos = System.nanoTime() - connectStart;
+
+		//Give every game time to finish placement and reach the command prompt.
+		Thread.sleep(2000);
+
+		com.sun.management.OperatingSystemMXBean osBean = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+		long startCpu = osBean.getProcessCpuTime();
+		long startWall = System.nanoTime();
+		Thread.sleep(sampleSeconds * 1000L);
+		long cpuNanos = osBean.getProcessCpuTime() - startCpu;
+		long wallNanos = System.nanoTime() - startWall;
+
+		//Memory held by the sessions. Both ends of every connection live in this process, so the figures include the test's own sockets.
+		long sessionHeap = usedHeapAfterGc() - baselineHeap;
+		long finalResident = residentSetSize();
+
+		System.out.println("Transport:             " + transport);
+		System.out.println("Idle games:            " + numGames);
+		System.out.println("Idle players:          " + playerSockets.size());
+		System.out.printf("Connect rate:          %.0f players/s%n", playerSockets.size() / (connectNanos / 1e9));
+		System.out.println("Platform threads used: " + (ManagementFactory.getThreadMXBean().getThreadCount() - baselineThreads));
+		System.out.printf("Cores busy while idle: %.3f%n", (double) cpuNanos / wallNanos);
+		System.out.printf("Heap per game:         %.1f KiB%n", sessionHeap / 1024.0 / numGames);
+		if(baselineResident > 0 && finalResident > 0)
+			System.out.printf("Resident per game:     %.1f KiB%n", (finalResident - baselineResident) / 1024.0 / numGames);
+
+		for(Socket playerSocket : playerSockets)
+			playerSocket.close();
+		shutdown.run();
+	}
+
+	/**
+	 * Connects one player and sends its name and fleet placement without reading any of the server's output.
+	 * @param port Port the server is listening on.
+	 * @return Connected socket, left open so the player stays in the game.
+	 * @throws IOException If the connection fails.
+	 */
+	private static Socket connectIdlePlayer(int port) throws IOException {
+		Socket playerSocket = new Socket("localhost", port);
+		PrintWriter playerWriter = new PrintWriter(playerSocket.getOutputStream());
+		for(String line : PLAYER_SETUP)
+			playerWriter.println(line);
+		playerWriter.flush();
+		return playerSocket;
+	}
+
+	/**
+	 * Collects garbage and reports the heap still in use.
+	 * @return Bytes of heap in use after a full collection.
+	 * @throws InterruptedException If interrupted while letting the collector settle.
+	 */
+	private static long usedHeapAfterGc() throws InterruptedException {
+		for(int pass = 0; pass < 3; pass++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Reads the process's resident set size, which includes thread stacks and other native memory the heap figure misses.
+	 * @return Resident bytes, or 0 where /proc is not available or cannot be opened.
+	 */
+	private static long residentSetSize() {
+		Path statusFile = Paths.get("/proc/self/status");
+		try {
+			for(String line : Files.readAllLines(statusFile))
+				if(line.startsWith("VmRSS:"))
+					return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+		}
+		catch(IOException | NumberFormatException error) {
+			//Not on Linux; resident memory is simply not reported.
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,107 @@
+package battleship;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for the Matchmaker to queue a player, or pair them with one already waiting, on one thread and with eight threads queueing players at once.
+ * Ratings are spread around the starting rating as a busy server's would be, so about half the calls pair a player and the rest leave one waiting.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchmakerBenchmark {
+
+	/**
+	 * Matchmaker shared by every benchmark thread. Pairs are dropped rather than given a game.
+	 */
+	@State(Scope.Benchmark)
+	public static class SharedQueue {
+
+		/**
+		 * Matchmaker being measured.
+		 */
+		protected Matchmaker matchmaker;
+
+		@Setup(Level.Trial)
+		public void createMatchmaker() {
+			matchmaker = new Matchmaker((firstPlayer, secondPlayer) -> { });
+		}
+	}
+
+	/**
+	 * Players queued by one benchmark thread, reused in turn; each has long been paired by the time it comes round again.
+	 */
+	@State(Scope.Thread)
+	public static class Arrivals {
+
+		/**
+		 * Players created per thread.
+		 */
+		private static final int NUM_PLAYERS = 1 << 14;
+
+		/**
+		 * Players, whose output is discarded.
+		 */
+		protected Client[] players;
+
+		/**
+		 * Rating of each player.
+		 */
+		protected int[] ratings;
+
+		/**
+		 * Index of the next player to queue.
+		 */
+		protected int nextPlayer;
+
+		@Setup(Level.Trial)
+		public void createPlayers() {
+			Random random = new Random(12345);
+			PrintWriter discardedOutput = new PrintWriter(Writer.nullWriter());
+			players = new Client[NUM_PLAYERS];
+			ratings = new int[NUM_PLAYERS];
+			for(int player = 0; player < NUM_PLAYERS; player++) {
+				players[player] = new Client(null, discardedOutput, (GameManager) null, 10, 10);
+				ratings[player] = (int) Math.max(0, PlayerRatings.DEFAULT_RATING + random.nextGaussian() * 300);
+			}
+		}
+	}
+
+	/**
+	 * Queues the next player on a single thread.
+	 */
+	@Benchmark
+	@Threads(1)
+	public void enqueue(SharedQueue queue, Arrivals arrivals) {
+		int player = arrivals.nextPlayer++ & (Arrivals.NUM_PLAYERS - 1);
+		queue.matchmaker.enqueue(arrivals.players[player], arrivals.ratings[player]);
+	}
+
+	/**
+	 * Queues the next player with eight threads queueing at once.
+	 */
+	@Benchmark
+	@Threads(8)
+	public void enqueueContended(SharedQueue queue, Arrivals arrivals) {
+		int player = arrivals.nextPlayer++ & (Arrivals.NUM_PLAYERS - 1);
+		queue.matchmaker.enqueue(arrivals.players[player], arrivals.ratings[player]);
+	}
+}
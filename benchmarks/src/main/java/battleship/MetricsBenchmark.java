@@ -0,0 +1,87 @@
+package battleship;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of recording on the game's hot path: counting a command and recording a fireMissile() time, on one thread and with eight threads recording at once,
+ * as the selector loops and mailbox pool do. Contended times staying close to the single-threaded ones shows the striped counters are not contended.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+	/**
+	 * Durations recorded by one benchmark thread, spread over several buckets as real missile times are.
+	 */
+	@State(Scope.Thread)
+	public static class Durations {
+
+		/**
+		 * Durations recorded in turn.
+		 */
+		private static final long[] NANOS = { 900, 1100, 1300, 1700, 2500, 4100, 900, 33000 };
+
+		/**
+		 * Index of the next duration to record.
+		 */
+		protected int nextDuration;
+
+		/**
+		 * Returns the next duration to record.
+		 * @return Duration in nanoseconds.
+		 */
+		protected long next() {
+			return NANOS[nextDuration++ & (NANOS.length - 1)];
+		}
+	}
+
+	/**
+	 * Counts a fire command on a single thread.
+	 */
+	@Benchmark
+	@Threads(1)
+	public void countCommand() {
+		ServerMetrics.commandHandled(CommandDecoder.FIRE);
+	}
+
+	/**
+	 * Counts a fire command with eight threads counting at once.
+	 */
+	@Benchmark
+	@Threads(8)
+	public void countCommandContended() {
+		ServerMetrics.commandHandled(CommandDecoder.FIRE);
+	}
+
+	/**
+	 * Records a missile time on a single thread.
+	 */
+	@Benchmark
+	@Threads(1)
+	public void recordMissile(Durations durations) {
+		ServerMetrics.missileFired(durations.next());
+	}
+
+	/**
+	 * Records a missile time with eight threads recording at once.
+	 */
+	@Benchmark
+	@Threads(8)
+	public void recordMissileContended(Durations durations) {
+		ServerMetrics.missileFired(durations.next());
+	}
+}
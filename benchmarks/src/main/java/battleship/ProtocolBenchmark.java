@@ -0,0 +1,179 @@
+package battleship;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fire commands handled per second for each wire format, from the bytes received to the bytes of every reply, as the non-blocking transport does it.
+ * "text" is the default text protocol, "textChanges" the text protocol after the U command, and "binary" the binary protocol.
+ * As on the non-blocking transport, text players write fixed text such as the menu from ProtocolText's shared frames; "textPrinted" is the default text protocol
+ * with that text printed and encoded on every command instead, as for a player without a PlayerOutput.
+ * The two players fire in turn, so each command's replies include prompting the other player. Bytes sent per command are printed at the end of each trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+
+	/**
+	 * Wire format under test.
+	 */
+	@Param({"text", "textPrinted", "textChanges", "binary"})
+	public String protocol;
+
+	/**
+	 * Both players, who send fire commands in turn.
+	 */
+	private Client[] players;
+
+	/**
+	 * Output of both players, counted and discarded.
+	 */
+	private CountingOutputStream playerOutput;
+
+	/**
+	 * Writer both players use for text, encoding into playerOutput as the transports do.
+	 */
+	private PrintWriter playerWriter;
+
+	/**
+	 * Each fire command as the player sends it, line terminator or length prefix included. All miss, so the game never ends.
+	 */
+	private byte[][] fireCommands;
+
+	/**
+	 * Index of the next command to send.
+	 */
+	private int nextCommand;
+
+	/**
+	 * Commands handled during the trial, for the bytes per command figure.
+	 */
+	private long commandsHandled;
+
+	/**
+	 * Creates a game in progress whose players both use the protocol under test, with fleets in the top half of each board.
+	 */
+	@Setup(Level.Trial)
+	public void createGame() {
+		GameManager gameManager = new GameManager(0);
+		playerOutput = new CountingOutputStream();
+		playerWriter = new PrintWriter(new OutputStreamWriter(playerOutput, Charset.defaultCharset()));
+
+		players = new Client[] { gameManager.addPlayer(null, playerWriter), gameManager.addPlayer(null, playerWriter) };
+
+		Ship[][] fleets = {
+			{ new Battleship("Battleship"), new Carrier("Carrier"), new Destroyer("Destroyer"), new Cruiser("Cruiser"), new Submarine("Submarine") },
+			{ new Battleship("Battleship"), new Carrier("Carrier"), new Destroyer("Destroyer"), new Cruiser("Cruiser"), new Submarine("Submarine") }
+		};
+		for(int player = 0; player < 2; player++) {
+			Client client = players[player];
+			for(int row = 0; row < fleets[player].length; row++)
+				client.getClientGameBoard().addShip(fleets[player][row], new Position(row, 0), HEADING.EAST);
+			client.setPlayerName("Player " + player);
+			if(protocol.equals("binary"))
+				client.useBinaryProtocol(playerOutput);
+			else if(!(protocol.equals("textPrinted")))
+				client.setPlayerOutput(playerOutput);
+			//Starts the game once both fleets are ready, with the first player to fire.
+			client.fleetReady();
+		}
+		if(protocol.equals("textChanges"))
+			for(Client client : players)
+				client.processLine("U");
+
+		//Every cell of the empty bottom half of either board.
+		fireCommands = new byte[50][];
+		for(int cell = 0; cell < fireCommands.length; cell++) {
+			int row = 5 + cell / 10;
+			int column = cell % 10;
+			if(protocol.equals("binary"))
+				fireCommands[cell] = new byte[] { 0, 3, BinaryProtocol.FIRE, (byte) row, (byte) column };
+			else
+				fireCommands[cell] = ("F " + row + " " + column + "\n").getBytes(Charset.defaultCharset());
+		}
+		playerWriter.flush();
+		playerOutput.byteCount = 0;
+	}
+
+	@TearDown(Level.Trial)
+	public void reportBytes() {
+		System.out.println();
+		System.out.println(protocol + ": " + (playerOutput.byteCount / Math.max(1, commandsHandled)) + " bytes sent per fire command");
+	}
+
+	@Benchmark
+	public void fireCommand() {
+		nextCommand = (nextCommand + 1) % fireCommands.length;
+		byte[] command = fireCommands[nextCommand];
+		Client shooter = players[(int) (commandsHandled & 1)];
+		commandsHandled++;
+
+		if(protocol.equals("binary")) {
+			//Skip the length prefix, as ChannelConnection does.
+			shooter.processFrame(ByteBuffer.wrap(command, 2, command.length - 2));
+			return;
+		}
+		//Game commands are decoded straight from the received bytes, as ChannelConnection does.
+		shooter.processCommand(command, 0, command.length - 1);
+		playerWriter.flush();
+	}
+
+	/**
+	 * Stream that counts and discards everything written to it, including the shared frames written to it as a player's output.
+	 */
+	private static class CountingOutputStream extends OutputStream implements PlayerOutput {
+
+		/**
+		 * Bytes written since the count was last reset.
+		 */
+		private long byteCount;
+
+		@Override
+		public void write(int outputByte) {
+			byteCount++;
+		}
+
+		@Override
+		public void write(byte[] outputBytes, int offset, int length) {
+			byteCount += length;
+		}
+
+		public void hold() {
+			//Output is discarded as it is written.
+		}
+
+		public void release() {
+			//Output is discarded as it is written.
+		}
+
+		public void writeShared(ByteBuffer frame) {
+			byteCount += frame.remaining();
+		}
+
+		public int getQueuedBytes() {
+			return 0;
+		}
+	}
+}
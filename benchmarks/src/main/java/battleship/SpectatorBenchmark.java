@@ -0,0 +1,121 @@
+package battleship;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time for a game to send one shot to its spectators, with spectators keeping up and with every spectator stalled.
+ * Divide the score by the spectator count for the cost per spectator; the cost of encoding the shot is shared by all of them.
+ * Spectators keeping up take each frame as their transport would, so their share of the score includes the transport's side.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpectatorBenchmark {
+
+	/**
+	 * Number of spectators watching the game.
+	 */
+	@Param({"1", "100", "10000"})
+	public int spectators;
+
+	/**
+	 * Board the shots land on; its owner's opponent fires them.
+	 */
+	private GameBoard targetBoard;
+
+	/**
+	 * Feeds of the spectators, taken from after each shot.
+	 */
+	private SpectatorFeed[] feeds;
+
+	/**
+	 * Feeds of a second game's spectators, which never take a frame, so every shot drops their queue for both boards once they have fallen behind.
+	 */
+	private SpectatorFeed[] stalledFeeds;
+
+	/**
+	 * Board of the second game.
+	 */
+	private GameBoard stalledBoard;
+
+	/**
+	 * Cell of the next shot.
+	 */
+	private int nextCell;
+
+	@Setup(Level.Trial)
+	public void createGames() {
+		feeds = new SpectatorFeed[spectators];
+		stalledFeeds = new SpectatorFeed[spectators];
+		targetBoard = this.createGame(1, feeds);
+		stalledBoard = this.createGame(2, stalledFeeds);
+	}
+
+	/**
+	 * Creates a game with both fleets placed at random and a spectator for every feed given.
+	 * @param gameId Identifier of the game.
+	 * @param gameFeeds Array to fill with the feeds of the game's spectators.
+	 * @return Board of the second player, which the shots are fired at.
+	 */
+	private GameBoard createGame(long gameId, SpectatorFeed[] gameFeeds) {
+		PrintWriter discardedOutput = new PrintWriter(Writer.nullWriter());
+		GameManager gameManager = new GameManager(gameId);
+		Random random = new Random(12345);
+		for(int player = 0; player < 2; player++) {
+			Client client = new Client(null, discardedOutput, (GameManager) null, 10, 10);
+			client.setPlayerName("Player " + player);
+			gameManager.addClient(client);
+			new FleetGenerator(10, 10, random).placeShips(client.getClientGameBoard(), 0);
+		}
+		for(int spectator = 0; spectator < gameFeeds.length; spectator++) {
+			gameFeeds[spectator] = new SpectatorFeed();
+			gameFeeds[spectator].setFrameListener(() -> { });
+			gameManager.addSpectator(gameFeeds[spectator]);
+		}
+		return gameManager.getGameClients().get(1).getClientGameBoard();
+	}
+
+	/**
+	 * Fires at the next cell and has every spectator take the frame, as a transport would on being told of it.
+	 */
+	@Benchmark
+	public void spectatorsKeepingUp(Blackhole blackhole) {
+		int cell = nextCell++ % 100;
+		targetBoard.fireMissile(cell / 10, cell % 10);
+		for(SpectatorFeed feed : feeds) {
+			ByteBuffer frame;
+			while((frame = feed.nextFrame()) != null)
+				blackhole.consume(frame);
+		}
+	}
+
+	/**
+	 * Fires at the next cell of a game whose spectators have all stopped reading.
+	 */
+	@Benchmark
+	public void spectatorsStalled() {
+		int cell = nextCell++ % 100;
+		stalledBoard.fireMissile(cell / 10, cell % 10);
+	}
+}
@@ -0,0 +1,144 @@
+package battleship;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test counting the writes the server makes per turn. Starts an in-process server on the chosen transport and plays the requested number of games
+ * to the end over real sockets, every player firing at each cell in turn as soon as they are asked for a command.
+ * On the non-blocking transport it reports how many times per fire command output was queued, each a write of its own had the game not held output until
+ * the end of its turn, against the writes actually made, each one system call. On either transport it reports how many reads per fire command the players needed,
+ * which follows the number of TCP segments they were sent.
+ */
+public class WriteBatchingBenchmark {
+
+	/**
+	 * Prompt after which a player fires.
+	 */
+	private static final String COMMAND_PROMPT = "Waiting for next command.";
+
+	/**
+	 * Reads by every player that returned data, roughly one per burst of segments received.
+	 */
+	private static final LongAdder PLAYER_READS = new LongAdder();
+
+	/**
+	 * Fire commands sent by every player.
+	 */
+	private static final LongAdder FIRE_COMMANDS = new LongAdder();
+
+	/**
+	 * Runs the load test.
+	 * @param args Optional number of concurrent games (default 100) and transport ("nio" or "blocking", default "nio").
+	 * @throws Exception If the server cannot be started or players cannot connect.
+	 */
+	public static void main(String[] args) throws Exception {
+		int numGames = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		String transport = args.length > 1 ? args[1].toLowerCase() : "nio";
+
+		int port;
+		Runnable acceptLoop;
+		Runnable shutdown;
+		if(transport.equals("nio")) {
+			SelectorGameServer selectorServer = new SelectorGameServer(0, Runtime.getRuntime().availableProcessors());
+			port = selectorServer.getPort();
+			acceptLoop = selectorServer::acceptPlayers;
+			shutdown = selectorServer::shutdown;
+		}
+		else {
+			GameServer gameServer = new GameServer(0, false);
+			port = gameServer.getPort();
+			acceptLoop = gameServer::acceptPlayers;
+			shutdown = gameServer::shutdown;
+		}
+		Thread acceptThread = new Thread(acceptLoop, "accept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+
+		long startQueued = ChannelConnection.getOutputQueued();
+		long startWrites = ChannelConnection.getChannelWrites();
+		long startTime = System.nanoTime();
+
+		//Two players per game, each on its own thread, connected in order so consecutive players are paired.
+		ArrayList<Thread> playerThreads = new ArrayList<Thread>();
+		for(int index = 0; index < numGames * 2; index++) {
+			Socket playerSocket = new Socket("localhost", port);
+			Thread playerThread = new Thread(() -> playGame(playerSocket, "Player " + playerThreads.size()));
+			playerThreads.add(playerThread);
+			playerThread.start();
+		}
+		for(Thread playerThread : playerThreads)
+			playerThread.join();
+
+		long elapsedNanos = System.nanoTime() - startTime;
+		double fireCommands = Math.max(1, FIRE_COMMANDS.sum());
+		System.out.println("Transport:                     " + transport);
+		System.out.println("Games played:                  " + numGames);
+		System.out.println("Fire commands:                 " + FIRE_COMMANDS.sum());
+		System.out.printf("Elapsed:                       %.2f s%n", elapsedNanos / 1e9);
+		if(transport.equals("nio")) {
+			System.out.printf("Output queued per command:     %.2f (writes without batching)%n", (ChannelConnection.getOutputQueued() - startQueued) / fireCommands);
+			System.out.printf("Channel writes per command:    %.2f%n", (ChannelConnection.getChannelWrites() - startWrites) / fireCommands);
+		}
+		System.out.printf("Player reads per command:      %.2f%n", PLAYER_READS.sum() / fireCommands);
+		shutdown.run();
+	}
+
+	/**
+	 * Plays one player's side of a game: names the player, places their fleet at random and fires at each cell in turn whenever asked, until the server closes the connection.
+	 * @param playerSocket Socket connected to the server.
+	 * @param playerName Name to play under.
+	 */
+	private static void playGame(Socket playerSocket, String playerName) {
+		try(Socket socket = playerSocket) {
+			BufferedReader playerReader = new BufferedReader(new InputStreamReader(new CountingInputStream(socket.getInputStream())));
+			PrintWriter playerWriter = new PrintWriter(socket.getOutputStream());
+			playerWriter.println(playerName);
+			playerWriter.println(Client.AUTO_PLACE_COMMAND);
+			playerWriter.flush();
+
+			int nextCell = 0;
+			String line;
+			while((line = playerReader.readLine()) != null) {
+				if(!(line.equals(COMMAND_PROMPT)) || nextCell >= 100)
+					continue;
+				playerWriter.println("F " + nextCell / 10 + " " + nextCell % 10);
+				playerWriter.flush();
+				nextCell++;
+				FIRE_COMMANDS.increment();
+			}
+		}
+		catch(IOException error) {
+			System.out.println(playerName + ": " + error + ".");
+		}
+	}
+
+	/**
+	 * Stream counting the reads from a player's socket that return data.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		/**
+		 * Wraps a socket's input stream.
+		 * @param socketInput Stream to count reads from.
+		 */
+		private CountingInputStream(InputStream socketInput) {
+			super(socketInput);
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int bytesRead = super.read(buffer, offset, length);
+			if(bytesRead > 0)
+				PLAYER_READS.increment();
+			return bytesRead;
+		}
+	}
+}